@@ -0,0 +1,119 @@
+/*
+ * Copyright 2016 Mapillary AB, Sweden
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mapillary;
+
+import com.mapillary.perf.CorpusGenerator;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import org.apache.commons.imaging.ImageReadException;
+import org.apache.commons.imaging.Imaging;
+import org.apache.commons.imaging.formats.jpeg.JpegImageMetadata;
+
+/**
+ * A reproducible corpus of small geotagged JPEG photos for benchmarks, made
+ * by the {@link CorpusGenerator} with its default track and no defects. Every
+ * photo holds the same tiny image, because benchmarks of the meta data paths
+ * must not be dominated by decoding. The same seed always gives the same
+ * corpus.
+ *
+ * @author <a href="mailto:Jacob%20Wisor%20&lt;GITNE@noreply.users.github.com&gt;?subject=[com.mapillary.BenchmarkCorpus]%20mkseq">Jacob Wisor</a>
+ */
+final class BenchmarkCorpus {
+    /**
+     * The seed of all benchmark corpora.
+     */
+    static final long SEED = 0x6D6B736571L;
+
+    private BenchmarkCorpus() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Creates a corpus in a new temporary directory.
+     *
+     * @param count the count of photos
+     * @param seed the seed of the GPS track
+     * @return the photo files in track order
+     * @throws IOException if a photo cannot be written
+     */
+    static final File[] create(
+        final int count,
+        final long seed) throws IOException {
+        final CorpusGenerator.Options options = new CorpusGenerator.Options();
+        options.width = 64;
+        options.height = 48;
+        options.seed = seed;
+        return new CorpusGenerator(options).generate(
+            Files.createTempDirectory("mkseq-bench").toFile(),
+            count
+        );
+    }
+
+    /**
+     * Reads the JPEG meta data of a corpus.
+     *
+     * @param files the photo files of the corpus
+     * @return the JPEG meta data in the order of {@code files}
+     * @throws IOException if a photo cannot be read
+     */
+    static final JpegImageMetadata[] readMetadata(
+        final File[] files) throws IOException {
+        final JpegImageMetadata[] jpegImageMetadatas =
+            new JpegImageMetadata[files.length];
+        try {
+            for (int i = files.length - 1; i >= 0; i--)
+                jpegImageMetadatas[i] =
+                    (JpegImageMetadata)Imaging.getMetadata(files[i]);
+        } catch (ImageReadException e) {
+            throw new IOException(e);
+        }
+        return jpegImageMetadatas;
+    }
+
+    /**
+     * Deletes a corpus and its directory.
+     *
+     * @param files the photo files of the corpus
+     */
+    static final void delete(final File[] files) {
+        if (files.length <= 0)
+            return;
+        for (final File file : files)
+            file.delete();
+        files[0].getParentFile().delete();
+    }
+
+    /**
+     * Creates a print stream discarding anything printed.
+     *
+     * @return a new print stream
+     */
+    static final PrintStream newNullPrintStream() {
+        return new PrintStream(new OutputStream() {
+            @Override
+            public final void write(final int b) {}
+
+            @Override
+            public final void write(
+                final byte[] b,
+                final int off,
+                final int len) {}
+        });
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2016 Mapillary AB, Sweden
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mapillary;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.imaging.common.RationalNumber;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the conversions between EXIF and GPS date time stamps and
+ * dates, which run once or more per photo.
+ *
+ * @author <a href="mailto:Jacob%20Wisor%20&lt;GITNE@noreply.users.github.com&gt;?subject=[com.mapillary.DateTimeBenchmark]%20mkseq">Jacob Wisor</a>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class DateTimeBenchmark {
+    private static final String EXIF_DATE_TIME = "2016:10:27 10:00:00";
+    private static final String GPS_DATE = "2016:10:27";
+    private static final RationalNumber[] GPS_TIME = {
+        RationalNumber.valueOf(10.0),
+        RationalNumber.valueOf(0.0),
+        RationalNumber.valueOf(0.5)
+    };
+
+    private long millis = 1477562400000L;
+
+    @Benchmark
+    public Date exifDateTimeToDate() {
+        return Sequencer.exifDateTimeToDate(DateTimeBenchmark.EXIF_DATE_TIME);
+    }
+
+    @Benchmark
+    public Date gpsDateTimeToDate() {
+        return Sequencer.gpsDateTimeToDate(
+            DateTimeBenchmark.GPS_DATE,
+            DateTimeBenchmark.GPS_TIME
+        );
+    }
+
+    @Benchmark
+    public RationalNumber[] millisToGPSTime() {
+        // Vary the time stamp, so that no result can be cached
+        return Sequencer.millisToGPSTime(this.millis += 2000L);
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2016 Mapillary AB, Sweden
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mapillary;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.imaging.ImageReadException;
+import org.apache.commons.imaging.formats.jpeg.JpegImageMetadata;
+import org.apache.commons.imaging.formats.tiff.TiffImageMetadata;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the geometry computed per photo: the direction between two
+ * GPS points and the average point over the nodes smoothed over.
+ *
+ * @author <a href="mailto:Jacob%20Wisor%20&lt;GITNE@noreply.users.github.com&gt;?subject=[com.mapillary.GeometryBenchmark]%20mkseq">Jacob Wisor</a>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class GeometryBenchmark {
+    /**
+     * The count of points to average, the nodes smoothed over.
+     */
+    @Param({"5", "11", "101"})
+    public int nodes;
+
+    private TiffImageMetadata.GPSInfo[] gpsInfos;
+    private int i;
+
+    @Setup
+    public void setUp() throws IOException, ImageReadException {
+        final File[] files = BenchmarkCorpus.create(
+            this.nodes,
+            BenchmarkCorpus.SEED
+        );
+        try {
+            final JpegImageMetadata[] jpegImageMetadatas =
+                BenchmarkCorpus.readMetadata(files);
+            this.gpsInfos = new TiffImageMetadata.GPSInfo[files.length];
+            for (int i = files.length - 1; i >= 0; i--)
+                this.gpsInfos[i] = jpegImageMetadatas[i].getExif().getGPS();
+        } finally {
+            BenchmarkCorpus.delete(files);
+        }
+    }
+
+    @Benchmark
+    public double getDirection() {
+        // Walk along the track, so that no result can be cached
+        final int i = this.i;
+        this.i = i + 2 < this.gpsInfos.length ? i + 1 : 0;
+        return Sequencer.getDirection(this.gpsInfos[i], this.gpsInfos[i + 1]);
+    }
+
+    @Benchmark
+    public TiffImageMetadata.GPSInfo getAveragePoint() {
+        return Sequencer.getAveragePoint(this.gpsInfos);
+    }
+}
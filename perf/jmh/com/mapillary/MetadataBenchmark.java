@@ -0,0 +1,136 @@
+/*
+ * Copyright 2016 Mapillary AB, Sweden
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mapillary;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.imaging.ImageReadException;
+import org.apache.commons.imaging.ImageWriteException;
+import org.apache.commons.imaging.Imaging;
+import org.apache.commons.imaging.common.ImageMetadata;
+import org.apache.commons.imaging.formats.jpeg.JpegImageMetadata;
+import org.apache.commons.imaging.formats.jpeg.exif.ExifRewriter;
+import org.apache.commons.imaging.formats.tiff.write.TiffOutputSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of reading and writing the meta data of single photos: reading
+ * the date time stamp sorted by, parsing all meta data, and rewriting the
+ * EXIF meta data as the pipeline does. Each invocation takes the next photo
+ * of a corpus, so that file system caching is the same for all invocations.
+ *
+ * @author <a href="mailto:Jacob%20Wisor%20&lt;GITNE@noreply.users.github.com&gt;?subject=[com.mapillary.MetadataBenchmark]%20mkseq">Jacob Wisor</a>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class MetadataBenchmark {
+    private static final int COUNT = 256;
+
+    private File[] files;
+    private byte[][] bytes;
+    private TiffOutputSet[] outputSets;
+    private int i;
+
+    @Setup
+    public void setUp() throws IOException, ImageWriteException {
+        this.files = BenchmarkCorpus.create(
+            MetadataBenchmark.COUNT,
+            BenchmarkCorpus.SEED
+        );
+        final JpegImageMetadata[] jpegImageMetadatas =
+            BenchmarkCorpus.readMetadata(this.files);
+        this.bytes = new byte[this.files.length][];
+        this.outputSets = new TiffOutputSet[this.files.length];
+        for (int i = this.files.length - 1; i >= 0; i--) {
+            this.bytes[i] = Files.readAllBytes(this.files[i].toPath());
+            this.outputSets[i] = jpegImageMetadatas[i].getExif().getOutputSet();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchmarkCorpus.delete(this.files);
+    }
+
+    private final int next() {
+        final int i = this.i;
+        this.i = i + 1 < this.files.length ? i + 1 : 0;
+        return i;
+    }
+
+    @Benchmark
+    public Date getImageFileDate() {
+        return ExifDateTimeComparator.getImageFileDate(
+            this.files[this.next()],
+            true
+        );
+    }
+
+    @Benchmark
+    public ImageMetadata getMetadata() throws IOException, ImageReadException {
+        return Imaging.getMetadata(this.files[this.next()]);
+    }
+
+    @Benchmark
+    public byte[] updateExifMetadataLossy() throws
+        IOException,
+        ImageReadException,
+        ImageWriteException {
+        final int i = this.next();
+        final ByteArrayOutputStream baos =
+            new ByteArrayOutputStream(this.bytes[i].length + 0x10000);
+        new ExifRewriter().updateExifMetadataLossy(
+            this.bytes[i],
+            baos,
+            this.outputSets[i]
+        );
+        return baos.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] updateExifMetadataLossless() throws
+        IOException,
+        ImageReadException,
+        ImageWriteException {
+        final int i = this.next();
+        final ByteArrayOutputStream baos =
+            new ByteArrayOutputStream(this.bytes[i].length + 0x10000);
+        new ExifRewriter().updateExifMetadataLossless(
+            this.bytes[i],
+            baos,
+            this.outputSets[i]
+        );
+        return baos.toByteArray();
+    }
+}
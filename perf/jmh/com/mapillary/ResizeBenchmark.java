@@ -0,0 +1,136 @@
+/*
+ * Copyright 2016 Mapillary AB, Sweden
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mapillary;
+
+import com.mapillary.perf.CorpusGenerator;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.imaging.ImageReadException;
+import org.apache.commons.imaging.Imaging;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of resizing a decoded photo to 2048x1536, by Java 2D as
+ * {@code mkseq} did before, and by the {@link Scaler} on its scalar and on
+ * its fastest kernel. The fastest kernel is the vectorized one only if the
+ * benchmark runs with the {@code jdk.incubator.vector} module, for example
+ * with:
+ *
+ * <pre>
+ * ant -Djmh.args="ResizeBenchmark -jvmArgsAppend --add-modules=jdk.incubator.vector" jmh
+ * </pre>
+ *
+ * @author <a href="mailto:Jacob%20Wisor%20&lt;GITNE@noreply.users.github.com&gt;?subject=[com.mapillary.ResizeBenchmark]%20mkseq">Jacob Wisor</a>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class ResizeBenchmark {
+    /**
+     * The dimensions of the photo.
+     */
+    @Param({"2560x1920", "4000x3000"})
+    public String size;
+
+    private BufferedImage input, output;
+    private int width, height;
+
+    @Setup
+    public void setUp() throws IOException, ImageReadException {
+        final CorpusGenerator.Options options = new CorpusGenerator.Options();
+        final int x = this.size.indexOf('x');
+        options.width = Integer.parseInt(this.size.substring(0, x));
+        options.height = Integer.parseInt(this.size.substring(x + 1));
+        options.seed = BenchmarkCorpus.SEED;
+        final File[] files = new CorpusGenerator(options).generate(
+            Files.createTempDirectory("mkseq-bench").toFile(),
+            1
+        );
+        try {
+            // Decode like the pipeline does
+            this.input = Imaging.getBufferedImage(
+                Files.readAllBytes(files[0].toPath()),
+                new HashMap<String, Object>()
+            );
+        } finally {
+            BenchmarkCorpus.delete(files);
+        }
+        this.output = new BufferedImage(
+            this.input.getColorModel(),
+            this.input.getColorModel().createCompatibleWritableRaster(
+                2048,
+                1536
+            ),
+            this.input.isAlphaPremultiplied(),
+            null
+        );
+        this.width = Math.min(this.input.getWidth(), 2048);
+        this.height = Math.min(this.input.getHeight(), 1536);
+    }
+
+    @Benchmark
+    public BufferedImage drawImage() {
+        final Graphics2D graphics2d = this.output.createGraphics();
+        graphics2d.setRenderingHint(
+            RenderingHints.KEY_INTERPOLATION,
+            RenderingHints.VALUE_INTERPOLATION_BICUBIC
+        );
+        graphics2d.setRenderingHint(
+            RenderingHints.KEY_DITHERING,
+            RenderingHints.VALUE_DITHER_DISABLE
+        );
+        graphics2d.setRenderingHint(
+            RenderingHints.KEY_ANTIALIASING,
+            RenderingHints.VALUE_ANTIALIAS_OFF
+        );
+        graphics2d.drawImage(this.input, 0, 0, this.width, this.height, null);
+        graphics2d.dispose();
+        return this.output;
+    }
+
+    @Benchmark
+    public BufferedImage scaleScalar() {
+        if (!Scaler.scale(this.input, this.output, this.width, this.height, Scaler.SCALAR))
+            throw new IllegalStateException("Unsupported raster");
+        return this.output;
+    }
+
+    @Benchmark
+    public BufferedImage scale() {
+        if (!Scaler.scale(this.input, this.output, this.width, this.height))
+            throw new IllegalStateException("Unsupported raster");
+        return this.output;
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2016 Mapillary AB, Sweden
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mapillary;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.imaging.formats.jpeg.JpegImageMetadata;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks of whole sequence passes: sorting photos into sequence, and the
+ * smoothing and direction loop of {@code processFiles} with the final meta
+ * data of each photo discarded instead of written.
+ *
+ * @author <a href="mailto:Jacob%20Wisor%20&lt;GITNE@noreply.users.github.com&gt;?subject=[com.mapillary.SequenceBenchmark]%20mkseq">Jacob Wisor</a>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class SequenceBenchmark {
+    /**
+     * The count of photos of the sequence.
+     */
+    @Param({"1000"})
+    public int count;
+
+    /**
+     * The count of nodes smoothed over.
+     */
+    @Param({"5", "11"})
+    public int nodes;
+
+    private File[] files, shuffledFiles;
+    private JpegImageMetadata[] jpegImageMetadatas;
+    private File outputDir;
+    private Sequencer sequencer;
+
+    @Setup
+    public void setUp() throws IOException {
+        this.files = BenchmarkCorpus.create(this.count, BenchmarkCorpus.SEED);
+        this.jpegImageMetadatas = BenchmarkCorpus.readMetadata(this.files);
+        final List<File> list = Arrays.asList(this.files.clone());
+        Collections.shuffle(list, new Random(BenchmarkCorpus.SEED));
+        this.shuffledFiles = list.toArray(new File[list.size()]);
+        this.outputDir = Files.createTempDirectory("mkseq-bench-out").toFile();
+        final PrintStream nul = BenchmarkCorpus.newNullPrintStream();
+        this.sequencer = new Sequencer(nul, nul, this.outputDir, false);
+        final String[] args = new String[this.files.length + 4];
+        args[0] = "-s";
+        args[1] = Integer.toString(this.nodes);
+        args[2] = "-n";
+        for (int i = this.files.length - 1; i >= 0; i--)
+            args[i + 3] = this.files[i].getAbsolutePath();
+        args[args.length - 1] = this.outputDir.getAbsolutePath();
+        this.sequencer.processCommandLineArguments(args);
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchmarkCorpus.delete(this.files);
+        this.outputDir.delete();
+    }
+
+    @Benchmark
+    public File[] sort() {
+        final File[] files = this.shuffledFiles.clone();
+        ExifDateTimeComparator.sort(files, true);
+        return files;
+    }
+
+    @Benchmark
+    public void processFiles(final Blackhole blackhole) throws Exception {
+        this.sequencer.processFiles(
+            this.files,
+            this.jpegImageMetadatas,
+            0,
+            this.files.length,
+            (source, outputSet) -> blackhole.consume(outputSet)
+        );
+    }
+}
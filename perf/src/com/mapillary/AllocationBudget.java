@@ -0,0 +1,293 @@
+/*
+ * Copyright 2016 Mapillary AB, Sweden
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mapillary;
+
+import com.mapillary.perf.CorpusGenerator;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import org.apache.commons.imaging.ImageReadException;
+import org.apache.commons.imaging.ImageWriteException;
+import org.apache.commons.imaging.Imaging;
+import org.apache.commons.imaging.formats.jpeg.JpegImageMetadata;
+
+/**
+ * Checks the heap allocations per photo of metadata only runs against a
+ * budget. A synthetic sequence is generated by the {@link CorpusGenerator},
+ * and then its photos are sorted, their meta data is read, and the sequence
+ * is processed by {@code processFiles} with the final meta data of each photo
+ * discarded instead of written, that is without decoding or writing any
+ * image. Each of these stages is warmed up first, so that the just in time
+ * compiler has settled, and then the least bytes allocated by all threads
+ * over several measured passes are taken. All threads are counted, since
+ * sorting reads meta data on the common fork join pool, of which the
+ * current thread runs only a varying share.<br>
+ * The budget file is a properties file of the options and the count of
+ * photos of the sequence, and of the budget of each stage in bytes per
+ * photo. The check fails and exits with status 1 if any stage exceeds its
+ * budget, so that regressions in the churn of {@code RationalNumber},
+ * {@code GPSInfo}, or {@code Calendar} objects fail the build.
+ *
+ * @author <a href="mailto:Jacob%20Wisor%20&lt;GITNE@noreply.users.github.com&gt;?subject=[com.mapillary.AllocationBudget]%20mkseq">Jacob Wisor</a>
+ */
+public final class AllocationBudget {
+    private static final String[] STAGES = {"sort", "metadata", "sequence"};
+
+    private final com.sun.management.ThreadMXBean threadMXBean;
+    private final File[] files;
+    private final Sequencer sequencer;
+    private int submitted;
+
+    private AllocationBudget(
+        final com.sun.management.ThreadMXBean threadMXBean,
+        final File[] files,
+        final String options,
+        final File outputDir) {
+        this.threadMXBean = threadMXBean;
+        this.files = files;
+        final PrintStream nul = new PrintStream(new OutputStream() {
+            @Override
+            public final void write(final int b) {}
+
+            @Override
+            public final void write(
+                final byte[] b,
+                final int off,
+                final int len) {}
+        });
+        this.sequencer = new Sequencer(nul, nul, outputDir, false);
+        final String[] optionArgs = options.trim().isEmpty() ?
+            new String[0] :
+            options.trim().split("\\s+");
+        final String[] args =
+            new String[optionArgs.length + files.length + 1];
+        System.arraycopy(optionArgs, 0, args, 0, optionArgs.length);
+        for (int i = files.length - 1; i >= 0; i--)
+            args[optionArgs.length + i] = files[i].getAbsolutePath();
+        args[args.length - 1] = outputDir.getAbsolutePath();
+        this.sequencer.processCommandLineArguments(args);
+    }
+
+    /**
+     * Runs a stage once.
+     *
+     * @param stage the index of the stage in {@link #STAGES}
+     * @param jpegImageMetadatas the meta data of the sequence, for the
+     * {@code sequence} stage
+     * @return the meta data read by the {@code metadata} stage, or
+     * {@code jpegImageMetadatas}
+     * @throws IOException if a photo cannot be read
+     */
+    private final JpegImageMetadata[] run(
+        final int stage,
+        final JpegImageMetadata[] jpegImageMetadatas) throws ImageReadException, ImageWriteException, IOException {
+        switch (stage) {
+            case 0:
+                ExifDateTimeComparator.sort(this.files.clone(), true);
+                return jpegImageMetadatas;
+            case 1:
+                final JpegImageMetadata[] read =
+                    new JpegImageMetadata[this.files.length];
+                for (int i = 0; i < this.files.length; i++)
+                    read[i] = (JpegImageMetadata)Imaging.getMetadata(this.files[i]);
+                return read;
+            default:
+                this.submitted = 0;
+                this.sequencer.processFiles(
+                    this.files,
+                    jpegImageMetadatas,
+                    0,
+                    this.files.length,
+                    (source, outputSet) -> this.submitted++
+                );
+                if (this.submitted != this.files.length)
+                    throw new IllegalStateException(String.format(
+                        (Locale)null,
+                        "%d of %d photos submitted",
+                        this.submitted,
+                        this.files.length
+                    ));
+                return jpegImageMetadatas;
+        }
+    }
+
+    /**
+     * Measures the bytes allocated per photo by each stage.
+     *
+     * @param warmups the count of passes to warm up each stage by
+     * @param passes the count of measured passes of each stage
+     * @return the least bytes allocated per photo by each stage in order of
+     * {@link #STAGES}
+     * @throws IOException if a photo cannot be read
+     */
+    private final double[] measure(
+        final int warmups,
+        final int passes) throws ImageReadException, ImageWriteException, IOException {
+        final double[] bytesPerPhoto = new double[AllocationBudget.STAGES.length];
+        // Meta data read once for the sequence stage, which must not be
+        // charged for reading it
+        final JpegImageMetadata[] jpegImageMetadatas = this.run(1, null);
+        for (int stage = 0; stage < AllocationBudget.STAGES.length; stage++) {
+            for (int i = warmups; i > 0; i--)
+                this.run(stage, jpegImageMetadatas);
+            long least = Long.MAX_VALUE;
+            for (int i = passes; i > 0; i--) {
+                final Map<Long, Long> start = this.getAllocatedBytes();
+                this.run(stage, jpegImageMetadatas);
+                least = Math.min(least, this.getAllocatedBytesSince(start));
+            }
+            bytesPerPhoto[stage] = (double)least / this.files.length;
+        }
+        return bytesPerPhoto;
+    }
+
+    /**
+     * Gets the bytes allocated so far by each live thread.
+     *
+     * @return the bytes allocated by thread id
+     */
+    private final Map<Long, Long> getAllocatedBytes() {
+        final long[] ids = this.threadMXBean.getAllThreadIds();
+        final long[] bytes = this.threadMXBean.getThreadAllocatedBytes(ids);
+        final Map<Long, Long> allocated = new HashMap<Long, Long>(ids.length << 1);
+        for (int i = ids.length - 1; i >= 0; i--)
+            if (bytes[i] >= 0L)
+                allocated.put(ids[i], bytes[i]);
+        return allocated;
+    }
+
+    /**
+     * Gets the bytes allocated by all live threads since a snapshot. Threads
+     * started since are counted from zero.
+     *
+     * @param start the snapshot of {@link #getAllocatedBytes()}
+     * @return the bytes allocated since {@code start}
+     */
+    private final long getAllocatedBytesSince(final Map<Long, Long> start) {
+        long allocated = 0L;
+        for (final Map.Entry<Long, Long> entry : this.getAllocatedBytes().entrySet()) {
+            final Long before = start.get(entry.getKey());
+            allocated += entry.getValue() - (before != null ? before : 0L);
+        }
+        return allocated;
+    }
+
+    private static final com.sun.management.ThreadMXBean getThreadMXBean() {
+        final java.lang.management.ThreadMXBean threadMXBean;
+        if (!((threadMXBean = ManagementFactory.getThreadMXBean()) instanceof
+                com.sun.management.ThreadMXBean) ||
+            !((com.sun.management.ThreadMXBean)threadMXBean).isThreadAllocatedMemorySupported())
+            return null;
+        ((com.sun.management.ThreadMXBean)threadMXBean).setThreadAllocatedMemoryEnabled(true);
+        return (com.sun.management.ThreadMXBean)threadMXBean;
+    }
+
+    private static final void delete(final File dir) {
+        final File[] files;
+        if ((files = dir.listFiles()) != null)
+            for (final File file : files)
+                file.delete();
+        dir.delete();
+    }
+
+    /**
+     * @param args the path of the budget file
+     * @throws IOException if the budget file cannot be read or the sequence
+     * cannot be generated or processed
+     */
+    public static final void main(final String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: AllocationBudget budget-file");
+            System.exit(2);
+            return;
+        }
+        final Properties budget = new Properties();
+        try (final InputStream is = new FileInputStream(args[0])) {
+            budget.load(is);
+        }
+        final com.sun.management.ThreadMXBean threadMXBean;
+        if ((threadMXBean = AllocationBudget.getThreadMXBean()) == null) {
+            System.err.println(
+                "Measuring thread allocations is not supported by this Java VM"
+            );
+            System.exit(2);
+            return;
+        }
+        final int count = Integer.parseInt(budget.getProperty("count", "1000")),
+                  warmups = Integer.parseInt(budget.getProperty("warmups", "10")),
+                  passes = Integer.parseInt(budget.getProperty("passes", "5"));
+        final String options = budget.getProperty("options", "");
+        final CorpusGenerator.Options o = new CorpusGenerator.Options();
+        o.width = 64;
+        o.height = 48;
+        final File corpusDir = Files.createTempDirectory("mkseq-alloc").toFile(),
+                   outputDir = Files.createTempDirectory("mkseq-alloc-out").toFile();
+        final double[] bytesPerPhoto;
+        try {
+            bytesPerPhoto = new AllocationBudget(
+                threadMXBean,
+                new CorpusGenerator(o).generate(corpusDir, count),
+                options,
+                outputDir
+            ).measure(warmups, passes);
+        } catch (ImageReadException | ImageWriteException e) {
+            throw new IOException(e);
+        } finally {
+            AllocationBudget.delete(corpusDir);
+            AllocationBudget.delete(outputDir);
+        }
+        System.out.println(String.format(
+            (Locale)null,
+            "Allocations of %d photos with options \"%s\" (least of %d passes " +
+            "after %d warm-up passes)%n%-9s %12s %12s",
+            count,
+            options,
+            passes,
+            warmups,
+            "stage",
+            "bytes/photo",
+            "budget"
+        ));
+        boolean exceeded = false;
+        for (int stage = 0; stage < AllocationBudget.STAGES.length; stage++) {
+            final String limit;
+            final boolean over = (limit = budget.getProperty(AllocationBudget.STAGES[stage])) != null &&
+                bytesPerPhoto[stage] > Long.parseLong(limit);
+            exceeded |= over;
+            System.out.println(String.format(
+                (Locale)null,
+                "%-9s %,12.0f %12s%s",
+                AllocationBudget.STAGES[stage],
+                bytesPerPhoto[stage],
+                limit != null ? String.format((Locale)null, "%,d", Long.parseLong(limit)) : "-",
+                over ? "  EXCEEDED" : ""
+            ));
+        }
+        if (exceeded) {
+            System.err.println("Allocation budget exceeded, see " + args[0]);
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,406 @@
+/*
+ * Copyright 2016 Mapillary AB, Sweden
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mapillary.perf;
+
+import com.mapillary.Sequencer;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+import javax.imageio.ImageIO;
+import org.apache.commons.imaging.ImageReadException;
+import org.apache.commons.imaging.ImageWriteException;
+import org.apache.commons.imaging.common.RationalNumber;
+import org.apache.commons.imaging.formats.jpeg.exif.ExifRewriter;
+import org.apache.commons.imaging.formats.tiff.constants.ExifTagConstants;
+import org.apache.commons.imaging.formats.tiff.constants.GpsTagConstants;
+import org.apache.commons.imaging.formats.tiff.write.TiffOutputDirectory;
+import org.apache.commons.imaging.formats.tiff.write.TiffOutputSet;
+
+/**
+ * Generates a reproducible corpus of geotagged JPEG photos for benchmarks and
+ * load tests. The photos follow the GPS track of a walk with a wandering
+ * heading, occasional sharp turns and stops, and GPS noise. Optionally, some
+ * photos miss tags, the camera clock is skewed against GPS time, and some
+ * files are truncated as by an interrupted copy. The meta data is written by
+ * the same commons-imaging APIs {@code mkseq} uses. The same options and seed
+ * always give the same corpus.
+ * <p>
+ * All photos hold the same image of the configured size, so that generating
+ * large corpora is bound by writing files rather than encoding images.
+ *
+ * @author <a href="mailto:Jacob%20Wisor%20&lt;GITNE@noreply.users.github.com&gt;?subject=[com.mapillary.perf.CorpusGenerator]%20mkseq">Jacob Wisor</a>
+ */
+public final class CorpusGenerator {
+    /**
+     * The options of a corpus.
+     */
+    public static final class Options {
+        /**
+         * The width of the photos in pixels.
+         */
+        public int width = 1024;
+        /**
+         * The height of the photos in pixels.
+         */
+        public int height = 768;
+        /**
+         * The seed of the random track and defects.
+         */
+        public long seed = 0x6D6B736571L;
+        /**
+         * The time stamp of the first photo, 2016-10-27T10:00:00Z by default.
+         */
+        public long startMillis = 1477562400000L;
+        /**
+         * The time between photos in milliseconds.
+         */
+        public long intervalMillis = 2000L;
+        /**
+         * The latitude of the start of the track in degrees.
+         */
+        public double latitude = 55.6050;
+        /**
+         * The longitude of the start of the track in degrees.
+         */
+        public double longitude = 13.0038;
+        /**
+         * The distance walked between photos in meters.
+         */
+        public double step = 5.0;
+        /**
+         * The standard deviation of the GPS noise in meters.
+         */
+        public double noise = 3.0;
+        /**
+         * The standard deviation of the change of the heading between photos
+         * in degrees.
+         */
+        public double curve = 5.0;
+        /**
+         * The probability of a sharp turn of 45 to 135 degrees at a photo.
+         */
+        public double turns = 0.01;
+        /**
+         * The probability of a stop of 3 to 15 photos at a photo.
+         */
+        public double stops = 0.0;
+        /**
+         * The probability of a photo missing its GPS position, its GPS time
+         * stamp, its image direction, or its original date time.
+         */
+        public double missing = 0.0;
+        /**
+         * The skew of the camera clock against GPS time in milliseconds.
+         */
+        public long skewMillis = 0L;
+        /**
+         * The probability of a truncated photo file.
+         */
+        public double corrupt = 0.0;
+
+        @Override
+        public final String toString() {
+            return String.format(
+                (Locale)null,
+                "%dx%d, seed %d, step %.1f m, noise %.1f m, curve %.1f degrees, " +
+                "turns %.3f, stops %.3f, missing %.3f, skew %d ms, corrupt %.3f",
+                this.width,
+                this.height,
+                this.seed,
+                this.step,
+                this.noise,
+                this.curve,
+                this.turns,
+                this.stops,
+                this.missing,
+                this.skewMillis,
+                this.corrupt
+            );
+        }
+    }
+
+    private static final double METERS_PER_DEGREE = 111320.0;
+
+    private final CorpusGenerator.Options options;
+    private final byte[] image;
+    private final SimpleDateFormat exifDateTimeFormat;
+
+    private int missingCount, stopCount, corruptCount;
+
+    /**
+     * Constructs a corpus generator and encodes the image all photos hold.
+     *
+     * @param options the options of the corpus
+     * @throws IOException if the image cannot be encoded
+     */
+    public CorpusGenerator(
+        final CorpusGenerator.Options options) throws IOException {
+        this.options = options;
+        this.image = CorpusGenerator.encodeImage(options.width, options.height);
+        (this.exifDateTimeFormat = new SimpleDateFormat(
+            "yyyy:MM:dd HH:mm:ss",
+            Locale.ROOT
+        )).setTimeZone(TimeZone.getTimeZone("UTC"));
+    }
+
+    /**
+     * Generates a corpus.
+     *
+     * @param dir the directory to write the photos to
+     * @param count the count of photos
+     * @return the photo files in track order
+     * @throws IOException if a photo cannot be written
+     */
+    public final File[] generate(
+        final File dir,
+        final int count) throws IOException {
+        final CorpusGenerator.Options o = this.options;
+        final Random random = new Random(o.seed);
+        final File[] files = new File[count];
+        double latitude = o.latitude, longitude = o.longitude,
+               heading = random.nextDouble() * 360.0;
+        int stopped = 0;
+        try {
+            for (int i = 0; i < count; i++) {
+                // Walk on unless stopped
+                if (stopped > 0)
+                    stopped--;
+                else if (random.nextDouble() < o.stops) {
+                    stopped = 2 + random.nextInt(13);
+                    this.stopCount++;
+                } else {
+                    heading += random.nextGaussian() * o.curve;
+                    if (random.nextDouble() < o.turns)
+                        heading += (random.nextBoolean() ? 1.0 : -1.0) *
+                            (45.0 + random.nextDouble() * 90.0);
+                    latitude += o.step / CorpusGenerator.METERS_PER_DEGREE *
+                        Math.cos(Math.toRadians(heading));
+                    longitude += o.step / CorpusGenerator.METERS_PER_DEGREE *
+                        Math.sin(Math.toRadians(heading)) /
+                        Math.cos(Math.toRadians(latitude));
+                }
+                final long millis = o.startMillis + i * o.intervalMillis;
+                // Draw all random numbers of a photo unconditionally, so that
+                // the track does not depend on the probabilities of defects
+                final double noiseLatitude = random.nextGaussian() * o.noise,
+                             noiseLongitude = random.nextGaussian() * o.noise,
+                             missing = random.nextDouble(),
+                             corrupt = random.nextDouble();
+                final int missingTag = random.nextInt(4);
+                final TiffOutputSet outputSet = new TiffOutputSet();
+                if (missing >= o.missing || missingTag != 0)
+                    outputSet.getOrCreateExifDirectory().add(
+                        ExifTagConstants.EXIF_TAG_DATE_TIME_ORIGINAL,
+                        this.exifDateTimeFormat.format(
+                            new Date(millis + o.skewMillis)
+                        )
+                    );
+                if (missing >= o.missing || missingTag != 1)
+                    outputSet.setGPSInDegrees(
+                        longitude + noiseLongitude /
+                            CorpusGenerator.METERS_PER_DEGREE /
+                            Math.cos(Math.toRadians(latitude)),
+                        latitude + noiseLatitude /
+                            CorpusGenerator.METERS_PER_DEGREE
+                    );
+                final TiffOutputDirectory gpsDirectory =
+                    outputSet.getOrCreateGPSDirectory();
+                if (missing >= o.missing || missingTag != 2) {
+                    gpsDirectory.add(
+                        GpsTagConstants.GPS_TAG_GPS_DATE_STAMP,
+                        Sequencer.millisToGPSDate(millis)
+                    );
+                    gpsDirectory.add(
+                        GpsTagConstants.GPS_TAG_GPS_TIME_STAMP,
+                        Sequencer.millisToGPSTime(millis)
+                    );
+                }
+                if (missing >= o.missing || missingTag != 3) {
+                    gpsDirectory.add(
+                        GpsTagConstants.GPS_TAG_GPS_IMG_DIRECTION,
+                        RationalNumber.valueOf((heading % 360.0 + 360.0) % 360.0)
+                    );
+                    gpsDirectory.add(
+                        GpsTagConstants.GPS_TAG_GPS_IMG_DIRECTION_REF,
+                        GpsTagConstants.GPS_TAG_GPS_IMG_DIRECTION_REF_VALUE_TRUE_NORTH
+                    );
+                }
+                if (missing < o.missing)
+                    this.missingCount++;
+                files[i] = new File(
+                    dir,
+                    String.format((Locale)null, "%06d.jpg", i)
+                );
+                try (final OutputStream os = new BufferedOutputStream(
+                    new FileOutputStream(files[i]))) {
+                    new ExifRewriter().updateExifMetadataLossless(
+                        this.image,
+                        os,
+                        outputSet
+                    );
+                }
+                files[i].setLastModified(millis);
+                if (corrupt < o.corrupt) {
+                    // Cut off the file somewhere after its meta data
+                    try (final RandomAccessFile raf = new RandomAccessFile(files[i], "rw")) {
+                        raf.setLength(raf.length() / 2 +
+                            (long)(corrupt / o.corrupt * (raf.length() / 2)));
+                    }
+                    this.corruptCount++;
+                }
+            }
+        } catch (ImageReadException | ImageWriteException e) {
+            throw new IOException(e);
+        }
+        return files;
+    }
+
+    /**
+     * Returns the count of photos generated so far missing a tag.
+     *
+     * @return the count of photos missing a tag
+     */
+    public final int getMissingCount() {
+        return this.missingCount;
+    }
+
+    /**
+     * Returns the count of stops generated so far.
+     *
+     * @return the count of stops
+     */
+    public final int getStopCount() {
+        return this.stopCount;
+    }
+
+    /**
+     * Returns the count of truncated photo files generated so far.
+     *
+     * @return the count of truncated photo files
+     */
+    public final int getCorruptCount() {
+        return this.corruptCount;
+    }
+
+    private static final byte[] encodeImage(
+        final int width,
+        final int height) throws IOException {
+        final BufferedImage bufferedImage = new BufferedImage(
+            width,
+            height,
+            BufferedImage.TYPE_INT_RGB
+        );
+        // A smooth gradient with some fine detail compresses about as well as
+        // a photo
+        final Random random = new Random(width * 31L + height);
+        for (int y = height - 1; y >= 0; y--)
+            for (int x = width - 1; x >= 0; x--)
+                bufferedImage.setRGB(
+                    x,
+                    y,
+                    (x * 255 / width) << 16 |
+                    (y * 255 / height) << 8 |
+                    (((x ^ y) & 0x3F) + random.nextInt(0x40))
+                );
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        if (!ImageIO.write(bufferedImage, "jpg", baos))
+            throw new IOException("No JPEG image writer available");
+        return baos.toByteArray();
+    }
+
+    private static final double parseProbability(final String value) {
+        final double p = Double.parseDouble(value);
+        if (!(p >= 0.0 && p <= 1.0))
+            throw new IllegalArgumentException(
+                "Not a probability between 0 and 1: " + value
+            );
+        return p;
+    }
+
+    /**
+     * @param args any options of the form {@code --name value}, the count of
+     * photos, and the directory to write the photos to
+     * @throws IOException if a photo cannot be written
+     */
+    public static final void main(final String[] args) throws IOException {
+        final CorpusGenerator.Options o = new CorpusGenerator.Options();
+        int i = 0;
+        try {
+            for (; i + 1 < args.length && args[i].startsWith("--"); i += 2) {
+                final String value = args[i + 1];
+                switch (args[i]) {
+                    case "--width":    o.width = Integer.parseInt(value); break;
+                    case "--height":   o.height = Integer.parseInt(value); break;
+                    case "--seed":     o.seed = Long.parseLong(value); break;
+                    case "--interval": o.intervalMillis = Long.parseLong(value); break;
+                    case "--step":     o.step = Double.parseDouble(value); break;
+                    case "--noise":    o.noise = Double.parseDouble(value); break;
+                    case "--curve":    o.curve = Double.parseDouble(value); break;
+                    case "--turns":    o.turns = CorpusGenerator.parseProbability(value); break;
+                    case "--stops":    o.stops = CorpusGenerator.parseProbability(value); break;
+                    case "--missing":  o.missing = CorpusGenerator.parseProbability(value); break;
+                    case "--skew":     o.skewMillis = Long.parseLong(value); break;
+                    case "--corrupt":  o.corrupt = CorpusGenerator.parseProbability(value); break;
+                    default:
+                        throw new IllegalArgumentException(
+                            "Unknown option: " + args[i]
+                        );
+                }
+            }
+            if (args.length - i != 2 || o.width <= 0 || o.height <= 0)
+                throw new IllegalArgumentException("Missing count or directory");
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(
+                "Usage: CorpusGenerator [--width pixels] [--height pixels] " +
+                "[--seed n] [--interval ms] [--step m] [--noise m] " +
+                "[--curve degrees] [--turns p] [--stops p] [--missing p] " +
+                "[--skew ms] [--corrupt p] count directory"
+            );
+            System.exit(2);
+            return;
+        }
+        final int count = Integer.parseInt(args[i]);
+        final File dir = new File(args[i + 1]);
+        if (!dir.isDirectory() && !dir.mkdirs())
+            throw new IOException("Cannot create directory " + dir);
+        final long start = System.nanoTime();
+        final CorpusGenerator generator = new CorpusGenerator(o);
+        generator.generate(dir, count);
+        System.out.println(String.format(
+            (Locale)null,
+            "Generated %d photos (%s) in %s in %,.1f s: %d stops, %d missing " +
+            "a tag, %d truncated",
+            count,
+            o,
+            dir,
+            (System.nanoTime() - start) / 1e9,
+            generator.getStopCount(),
+            generator.getMissingCount(),
+            generator.getCorruptCount()
+        ));
+    }
+}
@@ -0,0 +1,355 @@
+/*
+ * Copyright 2016 Mapillary AB, Sweden
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mapillary.perf;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * An end to end performance regression check of {@code mkseq}. A corpus of
+ * synthetic photos is generated by the {@link CorpusGenerator} as specified
+ * by the baseline file, and then {@code mkseq} runs with its default options
+ * over the corpus, that is it sorts, smooths, normalizes, resizes, and
+ * rewrites each photo. Each run is a {@link PerfRun} in a Java VM of its own
+ * with the heap settings of the {@code mkseq} launcher. The first run only
+ * warms up the file system cache.<br>
+ * The medians of the throughput in photos per second and of the peak
+ * resident set size over all other runs are compared with the baseline. The
+ * check fails and exits with status 1 if the throughput has dropped, or the
+ * peak resident set size has grown, by more than the respective tolerance.
+ * Baselines are recorded, rather than compared with, if updating is
+ * requested. A baseline is comparable only on the host it has been recorded
+ * on.
+ *
+ * @author <a href="mailto:Jacob%20Wisor%20&lt;GITNE@noreply.users.github.com&gt;?subject=[com.mapillary.perf.PerfRegression]%20mkseq">Jacob Wisor</a>
+ */
+public final class PerfRegression {
+    private static final String PHOTOS_PER_SECOND = "photosPerSecond",
+                                PEAK_RSS          = "peakRssKiB",
+                                RECORDED_ON       = "# Recorded on ";
+
+    private PerfRegression() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Generates the corpus, unless the corpus of a previous check is still
+     * there.
+     *
+     * @param dir the directory of the corpus
+     * @param baseline the baseline specifying the corpus
+     * @return the photo files of the corpus
+     * @throws IOException if the corpus cannot be generated
+     */
+    private static final File[] corpus(
+        final File dir,
+        final Properties baseline) throws IOException {
+        final CorpusGenerator.Options o = new CorpusGenerator.Options();
+        o.width = Integer.parseInt(baseline.getProperty("width", "2560"));
+        o.height = Integer.parseInt(baseline.getProperty("height", "1920"));
+        final int count = Integer.parseInt(baseline.getProperty("count", "200"));
+        final File marker = new File(dir, "corpus.txt");
+        final String description = count + " " + o;
+        final File[] files;
+        if (marker.isFile() &&
+            description.equals(new String(
+                Files.readAllBytes(marker.toPath()),
+                StandardCharsets.UTF_8)) &&
+            (files = dir.listFiles(
+                (d, name) -> name.endsWith(".jpg"))).length == count) {
+            Arrays.sort(files);
+            return files;
+        }
+        PerfRegression.delete(dir);
+        if (!dir.mkdirs())
+            throw new IOException("Cannot create directory " + dir);
+        System.out.println("Generating " + description + " in " + dir);
+        final File[] generated = new CorpusGenerator(o).generate(dir, count);
+        Files.write(
+            marker.toPath(),
+            description.getBytes(StandardCharsets.UTF_8)
+        );
+        return generated;
+    }
+
+    private static final void delete(final File dir) {
+        final File[] files;
+        if ((files = dir.listFiles()) != null)
+            for (final File file : files)
+                file.delete();
+        dir.delete();
+    }
+
+    /**
+     * Runs {@code mkseq} once in a new Java VM.
+     *
+     * @param files the photos to process
+     * @param outputDir the directory to write photos to, emptied first
+     * @param log the stream to copy any output of the run to
+     * @return the wall clock time in nanoseconds and the peak resident set
+     * size in kilobytes, or {@code -1} if unknown
+     * @throws IOException if the run fails
+     * @throws InterruptedException if interrupted while waiting for the run
+     */
+    private static final long[] run(
+        final File[] files,
+        final File outputDir,
+        final PrintStream log) throws IOException, InterruptedException {
+        PerfRegression.delete(outputDir);
+        if (!outputDir.mkdirs())
+            throw new IOException("Cannot create directory " + outputDir);
+        final List<String> command = new ArrayList<String>(Arrays.asList(
+            new File(
+                new File(System.getProperty("java.home"), "bin"),
+                "java"
+            ).getPath(),
+            "-Xss2M",
+            "-Xms32M",
+            "-Xmx1G",
+            "-Djava.awt.headless=true",
+            "-cp",
+            System.getProperty("java.class.path"),
+            PerfRun.class.getName()
+        ));
+        for (final File file : files)
+            command.add(file.getPath());
+        command.add(outputDir.getPath());
+        final Process process = new ProcessBuilder(command)
+            .redirectErrorStream(true)
+            .start();
+        long[] result = null;
+        try (final BufferedReader reader = new BufferedReader(
+                new InputStreamReader(
+                    process.getInputStream(),
+                    StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                log.println(line);
+                if (line.startsWith(PerfRun.RESULT + " ")) {
+                    final String[] fields = line.split(" ");
+                    result = new long[] {
+                        Long.parseLong(fields[1]),
+                        Long.parseLong(fields[2])
+                    };
+                }
+            }
+        }
+        final int status;
+        if ((status = process.waitFor()) != 0 || result == null)
+            throw new IOException(String.format(
+                (Locale)null,
+                "mkseq exited with status %d, see the log",
+                status
+            ));
+        return result;
+    }
+
+    private static final double median(final double[] values) {
+        final double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return (sorted[(sorted.length - 1) >> 1] + sorted[sorted.length >> 1]) /
+            2.0;
+    }
+
+    /**
+     * Updates values of a baseline file in place, so that its comments and
+     * the order of its lines are kept. A line recording the host precedes the
+     * updated values. Values not in the file yet are appended.
+     *
+     * @param baselineFile the baseline file
+     * @param values the keys and new values
+     * @throws IOException if the baseline file cannot be read or written
+     */
+    private static final void update(
+        final File baselineFile,
+        final Map<String, String> values) throws IOException {
+        final String recordedOn = String.format(
+            (Locale)null,
+            PerfRegression.RECORDED_ON + "%d processors, Java %s, %s %s",
+            Runtime.getRuntime().availableProcessors(),
+            System.getProperty("java.version"),
+            System.getProperty("os.name"),
+            System.getProperty("os.arch")
+        );
+        final Map<String, String> pending =
+            new LinkedHashMap<String, String>(values);
+        final List<String> lines = new ArrayList<String>();
+        for (final String line : Files.readAllLines(
+                baselineFile.toPath(),
+                StandardCharsets.ISO_8859_1)) {
+            if (line.startsWith(PerfRegression.RECORDED_ON))
+                continue;
+            final String key = line.trim().split("[=:\\s]", 2)[0];
+            final String value;
+            if ((value = pending.remove(key)) == null) {
+                lines.add(line);
+                continue;
+            }
+            if (pending.size() == values.size() - 1)
+                lines.add(recordedOn);
+            lines.add(key + '=' + value);
+        }
+        if (!pending.isEmpty()) {
+            if (pending.size() == values.size())
+                lines.add(recordedOn);
+            for (final Map.Entry<String, String> entry : pending.entrySet())
+                lines.add(entry.getKey() + '=' + entry.getValue());
+        }
+        Files.write(baselineFile.toPath(), lines, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * @param args options, the path of the baseline file, and the path of
+     * the working directory
+     * @throws IOException if the corpus cannot be generated or a run fails
+     * @throws InterruptedException if interrupted while waiting for a run
+     */
+    public static final void main(
+        final String[] args) throws IOException, InterruptedException {
+        int runs = 3, i = 0;
+        double tolerance = 0.1, rssTolerance = 0.2;
+        boolean update = false;
+        try {
+            for (; i + 1 < args.length && args[i].startsWith("--"); i += 2) {
+                final String value = args[i + 1];
+                switch (args[i]) {
+                    case "--runs":          runs = Integer.parseInt(value); break;
+                    case "--tolerance":     tolerance = Double.parseDouble(value); break;
+                    case "--rss-tolerance": rssTolerance = Double.parseDouble(value); break;
+                    case "--update":        update = Boolean.parseBoolean(value); break;
+                    default:
+                        throw new IllegalArgumentException(
+                            "Unknown option: " + args[i]
+                        );
+                }
+            }
+            if (args.length - i != 2 || runs <= 0)
+                throw new IllegalArgumentException(
+                    "Missing baseline file or working directory"
+                );
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(
+                "Usage: PerfRegression [--runs n] [--tolerance fraction] " +
+                "[--rss-tolerance fraction] [--update true] baseline-file " +
+                "directory"
+            );
+            System.exit(2);
+            return;
+        }
+        final File baselineFile = new File(args[i]),
+                   dir = new File(args[i + 1]);
+        final Properties baseline = new Properties();
+        try (final InputStream is = new FileInputStream(baselineFile)) {
+            baseline.load(is);
+        }
+        final File[] files = PerfRegression.corpus(
+            new File(dir, "corpus"),
+            baseline
+        );
+        final File outputDir = new File(dir, "output"),
+                   logFile = new File(dir, "perf.log");
+        final double[] photosPerSecond = new double[runs],
+                       peakRss = new double[runs];
+        try (final PrintStream log = new PrintStream(
+                new FileOutputStream(logFile),
+                true,
+                "UTF-8")) {
+            PerfRegression.run(files, outputDir, log);
+            for (int run = 0; run < runs; run++) {
+                final long[] result = PerfRegression.run(files, outputDir, log);
+                photosPerSecond[run] = files.length / (result[0] / 1e9);
+                peakRss[run] = result[1];
+                System.out.println(String.format(
+                    (Locale)null,
+                    "Run %d: %,.2f photos/s, peak RSS %s",
+                    run + 1,
+                    photosPerSecond[run],
+                    result[1] >= 0L ?
+                        String.format((Locale)null, "%,d KiB", result[1]) :
+                        "unknown"
+                ));
+            }
+        } finally {
+            PerfRegression.delete(outputDir);
+        }
+        final double throughput = PerfRegression.median(photosPerSecond),
+                     rss = PerfRegression.median(peakRss);
+        if (update) {
+            final Map<String, String> values =
+                new LinkedHashMap<String, String>();
+            values.put(
+                PerfRegression.PHOTOS_PER_SECOND,
+                String.format((Locale)null, "%.2f", throughput)
+            );
+            if (rss >= 0.0)
+                values.put(
+                    PerfRegression.PEAK_RSS,
+                    String.format((Locale)null, "%.0f", rss)
+                );
+            PerfRegression.update(baselineFile, values);
+            System.out.println("Updated " + baselineFile);
+            return;
+        }
+        final String baselineThroughput = baseline.getProperty(PerfRegression.PHOTOS_PER_SECOND),
+                     baselineRss = baseline.getProperty(PerfRegression.PEAK_RSS);
+        boolean failed = false;
+        System.out.println(String.format(
+            (Locale)null,
+            "Median of %d runs: %,.2f photos/s (baseline %s), peak RSS %,.0f KiB (baseline %s)",
+            runs,
+            throughput,
+            baselineThroughput != null ? baselineThroughput : "none",
+            rss,
+            baselineRss != null ? baselineRss : "none"
+        ));
+        if (baselineThroughput != null &&
+            throughput < Double.parseDouble(baselineThroughput) * (1.0 - tolerance)) {
+            System.err.println(String.format(
+                (Locale)null,
+                "Throughput has dropped by more than %.0f%%",
+                tolerance * 100.0
+            ));
+            failed = true;
+        }
+        if (baselineRss != null && rss >= 0.0 &&
+            rss > Double.parseDouble(baselineRss) * (1.0 + rssTolerance)) {
+            System.err.println(String.format(
+                (Locale)null,
+                "Peak RSS has grown by more than %.0f%%",
+                rssTolerance * 100.0
+            ));
+            failed = true;
+        }
+        if (failed)
+            System.exit(1);
+    }
+}
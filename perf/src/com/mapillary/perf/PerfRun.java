@@ -0,0 +1,91 @@
+/*
+ * Copyright 2016 Mapillary AB, Sweden
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mapillary.perf;
+
+import com.mapillary.Sequencer;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * A single measured {@code mkseq} run in a Java VM of its own, started by
+ * {@link PerfRegression}. Runs a job by the command line given and then
+ * prints a result line of the wall clock time of the job and the peak
+ * resident set size of the Java VM, as {@code mkseq-perf nanos kilobytes}.
+ * The peak resident set size is read from {@code /proc/self/status}, and is
+ * {@code -1} where there is no such file.
+ *
+ * @author <a href="mailto:Jacob%20Wisor%20&lt;GITNE@noreply.users.github.com&gt;?subject=[com.mapillary.perf.PerfRun]%20mkseq">Jacob Wisor</a>
+ */
+public final class PerfRun {
+    /**
+     * The leading word of the result line.
+     */
+    static final String RESULT = "mkseq-perf";
+
+    private PerfRun() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Gets the peak resident set size of this Java VM.
+     *
+     * @return the peak resident set size in kilobytes, or {@code -1} if
+     * unknown
+     */
+    private static final long getPeakRss() {
+        final File status = new File("/proc/self/status");
+        if (!status.isFile())
+            return -1L;
+        try (final BufferedReader reader = new BufferedReader(
+                new InputStreamReader(
+                    new FileInputStream(status),
+                    StandardCharsets.US_ASCII))) {
+            String line;
+            while ((line = reader.readLine()) != null)
+                if (line.startsWith("VmHWM:"))
+                    return Long.parseLong(
+                        line.substring(6).replace("kB", "").trim()
+                    );
+        } catch (IOException | NumberFormatException e) {
+            return -1L;
+        }
+        return -1L;
+    }
+
+    /**
+     * @param args the command line of the job
+     * @throws IOException if the job fails
+     */
+    public static final void main(final String[] args) throws IOException {
+        final long start = System.nanoTime();
+        final int status = new Sequencer().run(args);
+        final long nanos = System.nanoTime() - start;
+        if (status != Sequencer.EXIT_SUCCESS)
+            System.exit(status);
+        System.out.println(String.format(
+            (Locale)null,
+            "%s %d %d",
+            PerfRun.RESULT,
+            nanos,
+            PerfRun.getPeakRss()
+        ));
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2016 Mapillary AB, Sweden
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mapillary.perf;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Compares the wall clock time of {@code mkseq} runs by two commands, for
+ * example with and without an application class data sharing (AppCDS)
+ * archive, or on a full JDK and on a minimal runtime image. Runs of both
+ * commands alternate, so that both suffer equally from any other load on the
+ * machine. The first run of each command only warms up the file system
+ * cache.
+ *
+ * @author <a href="mailto:Jacob%20Wisor%20&lt;GITNE@noreply.users.github.com&gt;?subject=[com.mapillary.perf.StartupComparison]%20mkseq">Jacob Wisor</a>
+ */
+public final class StartupComparison {
+    private StartupComparison() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Runs a command once and measures its wall clock time.
+     *
+     * @param command the command to run
+     * @param log the file to append any output of the command to
+     * @return the wall clock time in nanoseconds
+     * @throws IOException if the command cannot be run or exits with an
+     * error
+     * @throws InterruptedException if interrupted while waiting for the
+     * command
+     */
+    private static final long run(
+        final List<String> command,
+        final File log) throws IOException, InterruptedException {
+        final long start = System.nanoTime();
+        final int status = new ProcessBuilder(command)
+            .redirectErrorStream(true)
+            .redirectOutput(ProcessBuilder.Redirect.appendTo(log))
+            .start()
+            .waitFor();
+        final long nanos = System.nanoTime() - start;
+        if (status != 0)
+            throw new IOException(String.format(
+                (Locale)null,
+                "%s exited with status %d, see %s",
+                command,
+                status,
+                log
+            ));
+        return nanos;
+    }
+
+    private static final double median(final long[] nanos) {
+        final long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        return (sorted[(sorted.length - 1) >> 1] + sorted[sorted.length >> 1]) /
+            2.0 / 1000000.0;
+    }
+
+    /**
+     * @param args the count of runs of each command, the path of a log file,
+     * the label and the leading arguments of the first command, the separator
+     * {@code --}, the label and the leading arguments of the second command,
+     * the separator {@code --}, and the trailing arguments of both commands
+     * @throws IOException if a run fails
+     * @throws InterruptedException if interrupted while waiting for a run
+     */
+    public static final void main(
+        final String[] args) throws IOException, InterruptedException {
+        final List<String> list = Arrays.asList(args);
+        final int first, second;
+        if (args.length < 4 ||
+            (first = list.subList(2, args.length).indexOf("--") + 2) < 4 ||
+            (second = list.subList(first + 1, args.length).indexOf("--") +
+                first + 1) < first + 3) {
+            System.err.println(
+                "Usage: StartupComparison runs log " +
+                "label command... -- label command... -- arguments..."
+            );
+            System.exit(2);
+            return;
+        }
+        final int runs = Integer.parseInt(args[0]);
+        final File log = new File(args[1]);
+        final String a = args[2], b = args[first + 1];
+        final List<String> tail = list.subList(second + 1, args.length),
+                           commandA = new ArrayList<String>(
+                               list.subList(3, first)
+                           ),
+                           commandB = new ArrayList<String>(
+                               list.subList(first + 2, second)
+                           );
+        commandA.addAll(tail);
+        commandB.addAll(tail);
+        StartupComparison.run(commandA, log);
+        StartupComparison.run(commandB, log);
+        final long[] nanosA = new long[runs], nanosB = new long[runs];
+        for (int i = 0; i < runs; i++) {
+            nanosA[i] = StartupComparison.run(commandA, log);
+            nanosB[i] = StartupComparison.run(commandB, log);
+        }
+        final double millisA = StartupComparison.median(nanosA),
+                     millisB = StartupComparison.median(nanosB);
+        System.out.println(String.format(
+            (Locale)null,
+            "Median of %d runs %s: %,.1f ms%n" +
+            "Median of %d runs %s: %,.1f ms (%+.1f%%)",
+            runs,
+            a,
+            millisA,
+            runs,
+            b,
+            millisB,
+            (millisB - millisA) / millisA * 100.0
+        ));
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2016 Mapillary AB, Sweden
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mapillary;
+
+import java.io.File;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A Java Flight Recorder event of a run of a stage of a job, such as reading
+ * the meta data, decoding, or writing a photo. Events are recorded only while
+ * a flight recording is running, for example when {@code mkseq} has been
+ * started with {@code -XX:StartFlightRecording} or a recording has been
+ * started by {@code jcmd}, and can be correlated with garbage collection and
+ * I/O events in JDK Mission Control.<br>
+ * This class is compiled only by Java 11 or later, and is looked up
+ * reflectively by {@link Stats}, so that {@code mkseq} still builds and runs
+ * on Java VMs without the flight recorder.
+ *
+ * @author <a href="mailto:Jacob%20Wisor%20&lt;GITNE@noreply.users.github.com&gt;?subject=[com.mapillary.StageEvent]%20mkseq">Jacob Wisor</a>
+ *
+ * @see Stats
+ * @see Sequencer.Options#JFR_OPTION
+ */
+@Name("com.mapillary.Stage")
+@Label("mkseq Stage")
+@Category("mkseq")
+@Description("A run of a stage of processing photos")
+@StackTrace(false)
+final class StageEvent extends Event implements Stats.Event {
+    @Label("Stage")
+    String stage;
+
+    @Label("Photo")
+    @Description("The path of the photo, if the run is for a single photo")
+    String path;
+
+    @Label("Photos")
+    int photos;
+
+    @Label("Bytes")
+    @Description("The bytes read or written")
+    @DataAmount
+    long bytes;
+
+    @Override
+    public final void finish(
+        final String stage,
+        final File file,
+        final int photos,
+        final long bytes) {
+        this.end();
+        if (!this.shouldCommit())
+            return;
+        this.stage = stage;
+        this.path = file != null ? file.getPath() : null;
+        this.photos = photos;
+        this.bytes = bytes;
+        this.commit();
+    }
+
+    /**
+     * Begins stage events.
+     */
+    static final class Recorder implements Stats.Recorder {
+        @Override
+        public final Stats.Event begin() {
+            final StageEvent event = new StageEvent();
+            event.begin();
+            return event;
+        }
+    }
+}
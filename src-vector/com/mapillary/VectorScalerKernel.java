@@ -0,0 +1,71 @@
+/*
+ * Copyright 2016 Mapillary AB, Sweden
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mapillary;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The vertical filter of the {@link Scaler} vectorized by the Vector API,
+ * which multiplies and adds as many samples at once as the preferred vector
+ * shape of the processor holds. This class is compiled only by Java 16 or
+ * later, and is loaded only if the Java VM runs with the
+ * {@code jdk.incubator.vector} module, for example by
+ * {@code JDK_JAVA_OPTIONS=--add-modules=jdk.incubator.vector}.
+ *
+ * @author <a href="mailto:Jacob%20Wisor%20&lt;GITNE@noreply.users.github.com&gt;?subject=[com.mapillary.VectorScalerKernel]%20mkseq">Jacob Wisor</a>
+ *
+ * @see Scaler#KERNEL
+ */
+final class VectorScalerKernel implements Scaler.Kernel {
+    private static final VectorSpecies<Float> SPECIES =
+        FloatVector.SPECIES_PREFERRED;
+
+    @Override
+    public final void filter(
+        final float[] rows,
+        final int[] offsets,
+        final float[] weights,
+        final int weightOffset,
+        final int taps,
+        final float[] row,
+        final int length) {
+        final int bound = VectorScalerKernel.SPECIES.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += VectorScalerKernel.SPECIES.length()) {
+            FloatVector sum = FloatVector.zero(VectorScalerKernel.SPECIES);
+            for (int k = 0; k < taps; k++)
+                sum = FloatVector.fromArray(
+                    VectorScalerKernel.SPECIES,
+                    rows,
+                    offsets[k] + i
+                ).fma(
+                    FloatVector.broadcast(
+                        VectorScalerKernel.SPECIES,
+                        weights[weightOffset + k]
+                    ),
+                    sum
+                );
+            sum.intoArray(row, i);
+        }
+        for (; i < length; i++) {
+            float sum = 0.0f;
+            for (int k = 0; k < taps; k++)
+                sum += weights[weightOffset + k] * rows[offsets[k] + i];
+            row[i] = sum;
+        }
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2016 Mapillary AB, Sweden
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mapillary;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Thin client of the {@code mkseq} {@linkplain Daemon daemon}. The client
+ * forwards its working directory and command line arguments to a daemon
+ * listening on a Unix domain socket, prints any output and errors of the job
+ * streamed back, and exits with the job's exit status.<br>
+ * Apart from localized error messages this class depends on the
+ * {@code java.base} module only, so that it starts quickly.
+ * <p>
+ * A request consists of the working directory, the count of arguments, and
+ * the arguments, each string written by {@link DataOutputStream#writeUTF(String)}.
+ * A response consists of frames, each starting with a stream byte. Frames of
+ * the {@link #STDOUT} and {@link #STDERR} streams continue with the length of
+ * and the bytes printed. The {@link #EXIT} frame continues with the exit
+ * status and ends the response.
+ *
+ * @author <a href="mailto:Jacob%20Wisor%20&lt;GITNE@noreply.users.github.com&gt;?subject=[com.mapillary.Client]%20mkseq">Jacob Wisor</a>
+ *
+ * @see Daemon
+ */
+public final class Client {
+    /**
+     * Response stream identifiers.
+     */
+    static final int EXIT   = 0,
+                     STDOUT = 1,
+                     STDERR = 2;
+
+    private Client() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Gets a Unix domain socket address. Unix domain sockets are available on
+     * Java 16 or later. They are looked up reflectively, so that
+     * {@code mkseq} still builds and runs on Java 8.
+     *
+     * @param path the path of the socket file
+     * @return the socket address
+     * @throws IOException if Unix domain sockets are not available
+     */
+    static final SocketAddress getUnixDomainSocketAddress(
+        final Path path) throws IOException {
+        try {
+            return (SocketAddress)Class.forName(
+                "java.net.UnixDomainSocketAddress"
+            ).getMethod("of", Path.class).invoke(null, path);
+        } catch (ClassNotFoundException |
+                 NoSuchMethodException |
+                 IllegalAccessException |
+                 InvocationTargetException e) {
+            throw new IOException(
+                Sequencer.m("Client.error.unix.domain.sockets"),
+                e
+            );
+        }
+    }
+
+    /**
+     * Opens a server socket channel of the Unix protocol family.
+     *
+     * @return an unbound server socket channel
+     * @throws IOException if Unix domain sockets are not available
+     *
+     * @see #getUnixDomainSocketAddress(Path)
+     */
+    static final ServerSocketChannel openUnixDomainServerSocketChannel()
+        throws IOException {
+        return (ServerSocketChannel)Client.openUnixDomainChannel(
+            ServerSocketChannel.class
+        );
+    }
+
+    /**
+     * Opens a socket channel of the Unix protocol family.
+     *
+     * @return an unconnected socket channel
+     * @throws IOException if Unix domain sockets are not available
+     *
+     * @see #getUnixDomainSocketAddress(Path)
+     */
+    static final SocketChannel openUnixDomainSocketChannel()
+        throws IOException {
+        return (SocketChannel)Client.openUnixDomainChannel(
+            SocketChannel.class
+        );
+    }
+
+    private static final Object openUnixDomainChannel(
+        final Class<?> channelClass) throws IOException {
+        try {
+            return channelClass.getMethod(
+                "open",
+                ProtocolFamily.class
+            ).invoke(null, StandardProtocolFamily.valueOf("UNIX"));
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof IOException)
+                throw (IOException)e.getCause();
+            throw new IOException(
+                Sequencer.m("Client.error.unix.domain.sockets"),
+                e.getCause()
+            );
+        } catch (IllegalArgumentException |
+                 NoSuchMethodException |
+                 IllegalAccessException e) {
+            throw new IOException(
+                Sequencer.m("Client.error.unix.domain.sockets"),
+                e
+            );
+        }
+    }
+
+    /**
+     * @param args the path of the daemon's socket file followed by the
+     * command line arguments to forward
+     * @throws IOException if the daemon cannot be connected or the connection
+     * is lost
+     */
+    public static final void main(final String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println(Sequencer.m("Client.usage"));
+            System.exit(2);
+        }
+        final int status;
+        try (final SocketChannel channel = Client.openUnixDomainSocketChannel()) {
+            channel.connect(Client.getUnixDomainSocketAddress(Paths.get(args[0])));
+            final DataOutputStream dos = new DataOutputStream(
+                new BufferedOutputStream(Channels.newOutputStream(channel))
+            );
+            dos.writeUTF(System.getProperty("user.dir"));
+            dos.writeInt(args.length - 1);
+            for (int i = 1; i < args.length; i++)
+                dos.writeUTF(args[i]);
+            dos.flush();
+            final DataInputStream dis = new DataInputStream(
+                new BufferedInputStream(Channels.newInputStream(channel))
+            );
+            byte[] buffer = new byte[8192];
+            for (;;) {
+                final int stream;
+                if ((stream = dis.read()) < 0)
+                    throw new EOFException();
+                if (stream == Client.EXIT) {
+                    status = dis.readInt();
+                    break;
+                }
+                final int length;
+                if ((length = dis.readInt()) > buffer.length)
+                    buffer = new byte[length];
+                dis.readFully(buffer, 0, length);
+                final PrintStream ps;
+                (ps = stream == Client.STDERR ? System.err : System.out).write(
+                    buffer,
+                    0,
+                    length
+                );
+                ps.flush();
+            }
+        }
+        System.exit(status);
+    }
+}
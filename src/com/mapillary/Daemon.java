@@ -0,0 +1,314 @@
+/*
+ * Copyright 2016 Mapillary AB, Sweden
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mapillary;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.text.NumberFormat;
+import java.text.ParseException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import javax.imageio.ImageIO;
+import org.apache.commons.imaging.Imaging;
+
+/**
+ * Long-running {@code mkseq} daemon. The daemon keeps a warmed up Java VM
+ * alive and accepts jobs from {@linkplain Client clients} over a Unix domain
+ * socket, so that clients do not pay for Java VM startup, class loading, and
+ * JIT compilation on every invocation. Each job is run by a new
+ * {@link Sequencer} with the working directory and command line arguments of
+ * the client. Any output of a job is streamed back to its client. Only the
+ * user running the daemon may connect to its socket.
+ *
+ * @author <a href="mailto:Jacob%20Wisor%20&lt;GITNE@noreply.users.github.com&gt;?subject=[com.mapillary.Daemon]%20mkseq">Jacob Wisor</a>
+ *
+ * @see Client
+ */
+public final class Daemon {
+    /**
+     * The default count of jobs run concurrently. A single job already keeps
+     * all processors busy while writing photos, but a second job can read
+     * its meta data meanwhile.
+     */
+    private static final int DEFAULT_MAX_JOBS = 2;
+
+    /**
+     * The count of command line arguments accepted from a client at most, so
+     * that a client cannot make the daemon allocate arbitrary memory. No
+     * shell passes more arguments than fit into its command line length
+     * limit, which is at most 2 MiB on most systems.
+     */
+    private static final int MAX_ARGS = 1 << 20;
+
+    private Daemon() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Loads and initializes the classes used by every job, so that the first
+     * job does not pay for it.
+     */
+    private static final void warmUp() {
+        Sequencer.m("Sequencer.usage");
+        ImageIO.getImageWritersByFormatName("JPEG").next().dispose();
+        try {
+            Imaging.guessFormat(new byte[0]);
+        } catch (Exception e) {
+            // Only loading classes is intended
+        }
+    }
+
+    /**
+     * Serves a single client connection.
+     *
+     * @param channel the connection to the client
+     */
+    private static final void serve(final SocketChannel channel) {
+        try (final SocketChannel c = channel) {
+            final DataInputStream dis = new DataInputStream(
+                new BufferedInputStream(Channels.newInputStream(c))
+            );
+            final File workingDir = new File(dis.readUTF());
+            final int count;
+            if ((count = dis.readInt()) < 0 || count > Daemon.MAX_ARGS)
+                throw new IOException(
+                    Sequencer.m("Daemon.error.args", count, Daemon.MAX_ARGS)
+                );
+            final String[] args = new String[count];
+            for (int i = 0; i < args.length; i++)
+                args[i] = dis.readUTF();
+            final DataOutputStream dos = new DataOutputStream(
+                new BufferedOutputStream(Channels.newOutputStream(c))
+            );
+            final PrintStream out = new PrintStream(
+                new Daemon.FrameOutputStream(dos, Client.STDOUT),
+                true
+            ), err = new PrintStream(
+                new Daemon.FrameOutputStream(dos, Client.STDERR),
+                true
+            );
+            int status;
+            try {
+                status = new Sequencer(out, err, workingDir, false).run(args);
+            } catch (IllegalArgumentException e) {
+                err.println(e.getLocalizedMessage());
+                status = 2;
+            } catch (IOException | RuntimeException e) {
+                e.printStackTrace(err);
+                status = 1;
+            }
+            out.flush();
+            err.flush();
+            synchronized (dos) {
+                dos.writeByte(Client.EXIT);
+                dos.writeInt(status);
+                dos.flush();
+            }
+        } catch (EOFException e) {
+            // The client has gone away before sending a job, such as a
+            // starting daemon testing whether this daemon is listening
+        } catch (IOException e) {
+            // The client has gone away
+            System.err.println(e.getLocalizedMessage());
+        }
+    }
+
+    /**
+     * Tests if a daemon is listening on a socket file by connecting to it.
+     *
+     * @param socket the path of the socket file
+     * @return {@code true} if a daemon accepts connections on {@code socket},
+     * {@code false} if nothing does
+     * @throws IOException if Unix domain sockets are not available
+     */
+    private static final boolean isListening(
+        final Path socket) throws IOException {
+        if (!Files.exists(socket))
+            return false;
+        try (final SocketChannel channel = Client.openUnixDomainSocketChannel()) {
+            try {
+                channel.connect(Client.getUnixDomainSocketAddress(socket));
+                return true;
+            } catch (IOException e) {
+                // Nothing listens on the socket file of a previous daemon
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Binds a server socket to a socket file which only the user of the
+     * daemon may connect to, because jobs run with the privileges of the
+     * daemon. The socket is bound in a new directory accessible only by the
+     * user, restricted, and only then moved to its path, so that no other user
+     * can connect in between.
+     *
+     * @param server the server socket to bind
+     * @param socket the path of the socket file
+     * @throws IOException if the socket cannot be bound, or if its
+     * permissions cannot be restricted
+     */
+    private static final void bind(
+        final ServerSocketChannel server,
+        final Path socket) throws IOException {
+        final Path dir, bound;
+        try {
+            bound = (dir = Files.createTempDirectory(
+                socket.getParent(),
+                ".mkseqd",
+                PosixFilePermissions.asFileAttribute(
+                    PosixFilePermissions.fromString("rwx------")
+                )
+            )).resolve("socket");
+        } catch (UnsupportedOperationException e) {
+            throw new IOException(
+                Sequencer.m("Daemon.error.socket.permissions", socket),
+                e
+            );
+        }
+        try {
+            server.bind(Client.getUnixDomainSocketAddress(bound));
+            Files.setPosixFilePermissions(
+                bound,
+                PosixFilePermissions.fromString("rw-------")
+            );
+            Files.move(bound, socket, StandardCopyOption.ATOMIC_MOVE);
+        } catch (UnsupportedOperationException e) {
+            throw new IOException(
+                Sequencer.m("Daemon.error.socket.permissions", socket),
+                e
+            );
+        } finally {
+            Files.deleteIfExists(bound);
+            Files.delete(dir);
+        }
+    }
+
+    /**
+     * @param args the path of the socket file to listen on, and optionally the
+     * count of jobs to run concurrently
+     * @throws IOException if a daemon is listening on the socket already, the
+     * socket cannot be bound, or accepting connections fails
+     */
+    public static final void main(final String[] args) throws IOException {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println(Sequencer.m("Daemon.usage"));
+            System.exit(2);
+        }
+        final Path socket = Paths.get(args[0]).toAbsolutePath();
+        final int maxJobs;
+        try {
+            maxJobs = args.length > 1 ?
+                NumberFormat.getIntegerInstance().parse(args[1].trim()).intValue() :
+                Daemon.DEFAULT_MAX_JOBS;
+        } catch (ParseException e) {
+            throw new IllegalArgumentException(
+                Sequencer.m("Daemon.error.max.jobs", args[1]),
+                e
+            );
+        }
+        if (maxJobs < 1)
+            throw new IllegalArgumentException(
+                Sequencer.m("Daemon.error.max.jobs", args[1])
+            );
+        Daemon.warmUp();
+        // Do not take over the socket of a running daemon, but remove a stale
+        // socket file of a previous daemon
+        if (Daemon.isListening(socket))
+            throw new IOException(Sequencer.m("Daemon.error.running", socket));
+        Files.deleteIfExists(socket);
+        final Semaphore jobs = new Semaphore(maxJobs);
+        final ExecutorService executor = Executors.newCachedThreadPool(r -> {
+            final Thread t;
+            (t = new Thread(r, "mkseq-job")).setDaemon(true);
+            return t;
+        });
+        try (final ServerSocketChannel server =
+            Client.openUnixDomainServerSocketChannel()) {
+            Daemon.bind(server, socket);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    Files.deleteIfExists(socket);
+                } catch (IOException e) {
+                    System.err.println(e.getLocalizedMessage());
+                }
+            }));
+            System.out.println(Sequencer.m("Daemon.listening", socket));
+            for (;;) {
+                final SocketChannel channel = server.accept();
+                jobs.acquireUninterruptibly();
+                executor.execute(() -> {
+                    try {
+                        Daemon.serve(channel);
+                    } finally {
+                        jobs.release();
+                    }
+                });
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Writes bytes as frames of a single stream of a client response.
+     */
+    private static final class FrameOutputStream extends OutputStream {
+        private final DataOutputStream dos;
+        private final int stream;
+
+        private FrameOutputStream(final DataOutputStream dos, final int stream) {
+            this.dos = dos;
+            this.stream = stream;
+        }
+
+        @Override
+        public final void write(final int b) throws IOException {
+            this.write(new byte[] {(byte)b}, 0, 1);
+        }
+
+        @Override
+        public final void write(
+            final byte[] b,
+            final int off,
+            final int len) throws IOException {
+            if (len <= 0)
+                return;
+            synchronized (this.dos) {
+                this.dos.writeByte(this.stream);
+                this.dos.writeInt(len);
+                this.dos.write(b, off, len);
+                this.dos.flush();
+            }
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2016 Mapillary AB, Sweden
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mapillary;
+
+import java.awt.Dimension;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Locale;
+import java.util.Map;
+import org.apache.commons.imaging.ImageReadException;
+import org.apache.commons.imaging.Imaging;
+
+/**
+ * A memory budget of the photos being decoded and resized concurrently. The
+ * heap required to resize a photo is estimated from the image dimensions in
+ * its header, before the photo is decoded, and a photo is admitted only while
+ * the estimates of all admitted photos fit into the budget. Thus as many
+ * photos are resized in parallel as the heap can take, so that small photos
+ * keep all processors busy and large photos do not exhaust the heap.<br>
+ * Photos are admitted in the order they ask for admission, so that a large
+ * photo is not overtaken by small photos forever. A photo whose estimate
+ * exceeds the whole budget is admitted alone.
+ *
+ * @author <a href="mailto:Jacob%20Wisor%20&lt;GITNE@noreply.users.github.com&gt;?subject=[com.mapillary.DecodeBudget]%20mkseq">Jacob Wisor</a>
+ *
+ * @see Pipeline
+ * @see Sequencer.Options#DECODE_MEMORY_OPTION
+ */
+final class DecodeBudget {
+    /**
+     * Estimated amount of heap required for decoding and resizing a single
+     * photo of about 24 MP, if its dimensions cannot be read.
+     */
+    static final long DEFAULT_ESTIMATE = 256L << 20;
+
+    /**
+     * The bytes per pixel of decoded and resized images, which are held in
+     * packed integer rasters.
+     */
+    private static final int BYTES_PER_PIXEL = 4;
+
+    private final long capacity;
+    private final Map<String, Object> imagingParams;
+    private final ArrayDeque<Object> waiters = new ArrayDeque<Object>();
+    private long used, peak;
+
+    /**
+     * Constructs a budget.
+     *
+     * @param capacity the budget in bytes
+     * @param imagingParams the parameters to read the dimensions of photos
+     * with
+     */
+    DecodeBudget(
+        final long capacity,
+        final Map<String, Object> imagingParams) {
+        this.capacity = capacity;
+        this.imagingParams = imagingParams;
+    }
+
+    /**
+     * Gets the default budget of a Java VM, that is half of the maximum heap.
+     * The other half is left to the queues of the pipeline and to the meta
+     * data of the sequence.
+     *
+     * @return the default budget in bytes
+     */
+    static final long getDefaultCapacity() {
+        return Runtime.getRuntime().maxMemory() >> 1;
+    }
+
+    /**
+     * Estimates the heap required to resize a photo, that is its decoded
+     * image, its resized image, and its encoded bytes before and after
+     * resizing.
+     *
+     * @param image the encoded photo
+     * @return the estimated amount of heap in bytes
+     */
+    final long estimate(final byte[] image) {
+        final Dimension dimension;
+        try {
+            if ((dimension = Imaging.getImageSize(image, this.imagingParams)) == null)
+                return DecodeBudget.DEFAULT_ESTIMATE;
+        } catch (ImageReadException | IOException | RuntimeException e) {
+            // The decoder reports any malformed photo
+            return DecodeBudget.DEFAULT_ESTIMATE;
+        }
+        final Dimension resized = Pipeline.getResizedSize(
+            dimension.width,
+            dimension.height
+        );
+        return (long)dimension.width * dimension.height * DecodeBudget.BYTES_PER_PIXEL +
+            (long)resized.width * resized.height * DecodeBudget.BYTES_PER_PIXEL +
+            2L * image.length;
+    }
+
+    /**
+     * Waits until a photo fits into this budget and admits it. Photos are
+     * admitted in the order of calls.
+     *
+     * @param bytes the estimated amount of heap of the photo
+     * @throws InterruptedException if interrupted while waiting
+     *
+     * @see #estimate(byte[])
+     */
+    final synchronized void acquire(final long bytes) throws InterruptedException {
+        final Object waiter = new Object();
+        this.waiters.addLast(waiter);
+        try {
+            while (this.waiters.peekFirst() != waiter ||
+                   this.used > 0L && this.used + bytes > this.capacity)
+                super.wait();
+        } finally {
+            // Do not hold up photos behind this one, even if interrupted
+            this.waiters.remove(waiter);
+            super.notifyAll();
+        }
+        if ((this.used += bytes) > this.peak)
+            this.peak = this.used;
+    }
+
+    /**
+     * Releases the estimate of a photo which has been resized.
+     *
+     * @param bytes the estimated amount of heap of the photo
+     */
+    final synchronized void release(final long bytes) {
+        this.used -= bytes;
+        super.notifyAll();
+    }
+
+    /**
+     * Gives a human readable textual representation of this budget.
+     *
+     * @return a human readable string
+     */
+    @Override
+    public final synchronized String toString() {
+        return String.format(
+            (Locale)null,
+            "decode memory: %,d of %,d bytes (peak %,d), waiting: %d",
+            this.used,
+            this.capacity,
+            this.peak,
+            this.waiters.size()
+        );
+    }
+}
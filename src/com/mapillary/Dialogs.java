@@ -0,0 +1,90 @@
+/*
+ * Copyright 2016 Mapillary AB, Sweden
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mapillary;
+
+import java.awt.FileDialog;
+import java.awt.Frame;
+import java.awt.GraphicsEnvironment;
+import java.awt.Toolkit;
+import java.io.File;
+import javax.swing.JFileChooser;
+import javax.swing.UIManager;
+import javax.swing.UnsupportedLookAndFeelException;
+
+/**
+ * Dialogs for selecting input files and the output directory if they have not
+ * been specified on the command line. All AWT and Swing classes are
+ * referenced by this class only, so that they are loaded on first use of a
+ * dialog and never on headless runs.
+ *
+ * @author <a href="mailto:Jacob%20Wisor%20&lt;GITNE@noreply.users.github.com&gt;?subject=[com.mapillary.Dialogs]%20mkseq">Jacob Wisor</a>
+ */
+final class Dialogs {
+    private Dialogs() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Tests whether the Java VM can show dialogs.
+     *
+     * @return {@code true} if the Java VM has no display, keyboard, or mouse
+     */
+    static final boolean isHeadless() {
+        return GraphicsEnvironment.isHeadless();
+    }
+
+    static final File[] getInputFiles() {
+        final FileDialog filedialog;
+        (filedialog = new FileDialog(
+            (Frame)null,
+            Sequencer.m("Sequencer.open.dialog"),
+            FileDialog.LOAD
+        )).setFilenameFilter(new Sequencer.JPEGTIFFFilenameFilter());
+        filedialog.setIconImage(Toolkit.getDefaultToolkit().getImage(
+            "data/images/mapillary32.png"
+        ));
+        filedialog.setLocationByPlatform(true);
+        filedialog.setDirectory(System.getProperty("user.dir"));
+        filedialog.setMultipleMode(true);
+        try {
+            filedialog.setVisible(true);
+            return filedialog.getFiles();
+        } finally {
+            filedialog.dispose();
+        }
+    }
+
+    static final File getOutputDirectory() {
+        try {
+            UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
+        } catch (ClassNotFoundException |
+                 InstantiationException |
+                 IllegalAccessException |
+                 UnsupportedLookAndFeelException e) {
+            e.printStackTrace();
+        }
+        final JFileChooser fileChooser;
+        (fileChooser = new JFileChooser(
+            System.getProperty("user.dir"))).setAcceptAllFileFilterUsed(false);
+        fileChooser.setMultiSelectionEnabled(false);
+        fileChooser.setDialogTitle(Sequencer.m("Sequencer.save.dialog"));
+        fileChooser.setDialogType(JFileChooser.SAVE_DIALOG);
+        fileChooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+        fileChooser.setVisible(true);
+        return fileChooser.showSaveDialog(null) == JFileChooser.APPROVE_OPTION ?
+            fileChooser.getSelectedFile() : null;
+    }
+}
@@ -17,10 +17,12 @@ package com.mapillary;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.Date;
 import org.apache.commons.imaging.ImageReadException;
 import org.apache.commons.imaging.Imaging;
+import org.apache.commons.imaging.common.ImageMetadata;
 import org.apache.commons.imaging.formats.jpeg.JpegImageMetadata;
 import org.apache.commons.imaging.formats.tiff.TiffImageMetadata;
 import org.apache.commons.imaging.formats.tiff.constants.ExifTagConstants;
@@ -97,47 +99,129 @@ public final class ExifDateTimeComparator implements Comparator<File> {
     }
 
     public static final Date getImageFileDate(
+        final File f,
+        final boolean fallback) {
+        return new Date(ExifDateTimeComparator.getImageFileTime(f, fallback));
+    }
+
+    /**
+     * Gets the date time stamp of a photo in milliseconds since the epoch.
+     * Photos which cannot be read, lack EXIF meta data, or lack a date time
+     * stamp get the latest time stamp possible, so that they sort last and
+     * are quarantined once their meta data is read.
+     *
+     * @param f the photo file
+     * @param fallback if {@code true}, fall back to {@code DateTimeOriginal},
+     * {@code DateTimeDigitized}, {@code DateTime}, and finally a file's last
+     * modification time stamp
+     * @return the date time stamp of {@code f}, or {@link Long#MAX_VALUE}
+     */
+    private static final long getImageFileTime(
         final File f,
         final boolean fallback) {
         try {
+            final ImageMetadata imageMetadata;
             final TiffImageMetadata tiffImageMetadata;
-            return (tiffImageMetadata = ((JpegImageMetadata)Imaging.getMetadata(f)).getExif()).getFieldValue(
-                GpsTagConstants.GPS_TAG_GPS_DATE_STAMP) == null &&
+            final Date date;
+            if ((imageMetadata = Imaging.getMetadata(f)) instanceof JpegImageMetadata &&
+                (tiffImageMetadata = ((JpegImageMetadata)imageMetadata).getExif()) != null &&
+                (date = ExifDateTimeComparator.getImageFileDate(
+                    f,
+                    tiffImageMetadata,
+                    fallback)) != null)
+                return date.getTime();
+        } catch (IOException | ImageReadException | RuntimeException e) {
+            // Sort last, the photo is quarantined when its meta data is read
+        }
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * Gets the date time stamp of a photo from its EXIF meta data, which has
+     * been read already.
+     *
+     * @param f the photo file, for its last modification time stamp
+     * @param tiffImageMetadata the EXIF meta data of {@code f}
+     * @param fallback if {@code true}, fall back to {@code DateTimeOriginal},
+     * {@code DateTimeDigitized}, {@code DateTime}, and finally a file's last
+     * modification time stamp
+     * @return the date time stamp of {@code f}, or {@code null} if
+     * {@code fallback} is {@code false} and {@code f} lacks a GPS date time
+     * stamp
+     * @throws ImageReadException if a date time field cannot be read
+     *
+     * @see #getImageFileDate(File, boolean)
+     */
+    static final Date getImageFileDate(
+        final File f,
+        final TiffImageMetadata tiffImageMetadata,
+        final boolean fallback) throws ImageReadException {
+        if (!fallback &&
+            (tiffImageMetadata.getFieldValue(GpsTagConstants.GPS_TAG_GPS_DATE_STAMP) == null ||
+            tiffImageMetadata.getFieldValue(GpsTagConstants.GPS_TAG_GPS_TIME_STAMP) == null))
+            return null;
+        return tiffImageMetadata.getFieldValue(
+            GpsTagConstants.GPS_TAG_GPS_DATE_STAMP) == null &&
+            fallback ?
+                tiffImageMetadata.getFieldValue(ExifTagConstants.EXIF_TAG_DATE_TIME_ORIGINAL) == null &&
                 fallback ?
-                    tiffImageMetadata.getFieldValue(ExifTagConstants.EXIF_TAG_DATE_TIME_ORIGINAL) == null &&
+                    tiffImageMetadata.getFieldValue(ExifTagConstants.EXIF_TAG_DATE_TIME_DIGITIZED) == null &&
                     fallback ?
-                        tiffImageMetadata.getFieldValue(ExifTagConstants.EXIF_TAG_DATE_TIME_DIGITIZED) == null &&
+                        tiffImageMetadata.getFieldValue(TiffTagConstants.TIFF_TAG_DATE_TIME) == null &&
                         fallback ?
-                            tiffImageMetadata.getFieldValue(TiffTagConstants.TIFF_TAG_DATE_TIME) == null &&
-                            fallback ?
-                                new Date(f.lastModified()) :
-                                Sequencer.exifDateTimeToDate(
-                                    tiffImageMetadata.getFieldValue(
-                                        TiffTagConstants.TIFF_TAG_DATE_TIME
-                                    )[0]
-                                ) :
+                            new Date(f.lastModified()) :
                             Sequencer.exifDateTimeToDate(
                                 tiffImageMetadata.getFieldValue(
-                                    ExifTagConstants.EXIF_TAG_DATE_TIME_DIGITIZED
+                                    TiffTagConstants.TIFF_TAG_DATE_TIME
                                 )[0]
                             ) :
                         Sequencer.exifDateTimeToDate(
                             tiffImageMetadata.getFieldValue(
-                                ExifTagConstants.EXIF_TAG_DATE_TIME_ORIGINAL
+                                ExifTagConstants.EXIF_TAG_DATE_TIME_DIGITIZED
                             )[0]
                         ) :
-                    Sequencer.gpsDateTimeToDate(
-                        tiffImageMetadata.getFieldValue(
-                            GpsTagConstants.GPS_TAG_GPS_DATE_STAMP
-                        )[0],
+                    Sequencer.exifDateTimeToDate(
                         tiffImageMetadata.getFieldValue(
-                            GpsTagConstants.GPS_TAG_GPS_TIME_STAMP
-                        ));
-        } catch (IOException | ImageReadException e) {
-            e.printStackTrace();
-            return new Date(0L);
-        }
+                            ExifTagConstants.EXIF_TAG_DATE_TIME_ORIGINAL
+                        )[0]
+                    ) :
+                Sequencer.gpsDateTimeToDate(
+                    tiffImageMetadata.getFieldValue(
+                        GpsTagConstants.GPS_TAG_GPS_DATE_STAMP
+                    )[0],
+                    tiffImageMetadata.getFieldValue(
+                        GpsTagConstants.GPS_TAG_GPS_TIME_STAMP
+                    ));
+    }
+
+    /**
+     * Sorts JPEG photo files by GPS date time stamp. Unlike sorting with an
+     * instance of this comparator, the date time stamp of each file is read
+     * only once, and files are read in parallel on all processors. The sort
+     * is stable.
+     *
+     * @param files the files to sort in place
+     * @param fallback if {@code true}, fall back to {@code DateTimeOriginal},
+     * {@code DateTimeDigitized}, {@code DateTime}, and finally a file's last
+     * modification time stamp
+     *
+     * @see #ExifDateTimeComparator(boolean)
+     */
+    public static final void sort(final File[] files, final boolean fallback) {
+        final long[] times = Arrays.stream(files)
+            .parallel()
+            .mapToLong(f -> ExifDateTimeComparator.getImageFileTime(f, fallback))
+            .toArray();
+        final Integer[] indexes = new Integer[files.length];
+        for (int i = indexes.length - 1; i >= 0; i--)
+            indexes[i] = i;
+        Arrays.sort(indexes, (a, b) -> Long.compare(times[a], times[b]));
+        final File[] sorted = new File[files.length];
+        for (int i = indexes.length - 1; i >= 0; i--)
+            sorted[i] = files[indexes[i]];
+        System.arraycopy(sorted, 0, files, 0, files.length);
     }
+
     /**
      * Gives a human readable textural represention of this comparator's state.
      *
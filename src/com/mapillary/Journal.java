@@ -0,0 +1,254 @@
+/*
+ * Copyright 2016 Mapillary AB, Sweden
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mapillary;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An append-only journal of the photos written to an output directory. Each
+ * written photo is recorded by the path, length, and modification time of its
+ * source file, and the length and SHA-256 digest of its output file. A
+ * restarted job skips any photo recorded as complete, so that only photos
+ * not written yet are encoded again. A photo is complete only if its output
+ * file still has the recorded digest, so that an output file rewritten or
+ * corrupted since is written again.<br>
+ * The first line of the journal holds a fingerprint of the options affecting
+ * the output of photos. A journal with a different fingerprint is discarded,
+ * because its output files would differ. A line cut off by a crash is
+ * ignored and terminated before new records are appended.
+ *
+ * @author <a href="mailto:Jacob%20Wisor%20&lt;GITNE@noreply.users.github.com&gt;?subject=[com.mapillary.Journal]%20mkseq">Jacob Wisor</a>
+ *
+ * @see Pipeline
+ */
+final class Journal implements Closeable {
+    /**
+     * The name of the journal file in the output directory.
+     */
+    static final String FILE_NAME = ".mkseq-journal";
+
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+
+    private final Map<String, Journal.Entry> entries =
+        new HashMap<String, Journal.Entry>();
+    private final Writer writer;
+
+    /**
+     * Opens the journal of an output directory. If the journal does not exist
+     * or has been written with different options then a new journal is
+     * started.
+     *
+     * @param outputDir the output directory
+     * @param fingerprint the fingerprint of the options affecting the output
+     * of photos
+     * @throws IOException if the journal cannot be read or written
+     */
+    Journal(final File outputDir, final String fingerprint) throws IOException {
+        final File file = new File(outputDir, Journal.FILE_NAME);
+        boolean resume = false;
+        if (file.isFile())
+            try (final BufferedReader reader = Files.newBufferedReader(
+                file.toPath(),
+                StandardCharsets.UTF_8)) {
+                String line;
+                if (resume = fingerprint.equals(reader.readLine()))
+                    while ((line = reader.readLine()) != null) {
+                        final Journal.Entry entry;
+                        if ((entry = Journal.Entry.parse(line)) != null)
+                            this.entries.put(entry.source, entry);
+                    }
+            }
+        this.writer = new BufferedWriter(new OutputStreamWriter(
+            new FileOutputStream(file, resume),
+            StandardCharsets.UTF_8
+        ));
+        if (!resume) {
+            this.writer.write(fingerprint);
+            this.writer.write('\n');
+            this.writer.flush();
+        } else if (!Journal.isTerminated(file)) {
+            // Terminate a line cut off by a crash, so that the next record
+            // starts on a line of its own
+            this.writer.write('\n');
+            this.writer.flush();
+        }
+    }
+
+    /**
+     * Tests if a file ends with a line feed.
+     *
+     * @param file the file
+     * @return {@code true} if the file is empty or its last byte is a line
+     * feed, {@code false} otherwise
+     * @throws IOException if the file cannot be read
+     */
+    private static final boolean isTerminated(final File file) throws IOException {
+        try (final RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            final long length;
+            if ((length = raf.length()) == 0L)
+                return true;
+            raf.seek(length - 1L);
+            return raf.read() == '\n';
+        }
+    }
+
+    /**
+     * Tests if a photo has been written completely by a previous job. The
+     * source file must not have changed since and the output file must still
+     * have the recorded length and digest. The output file is read only if
+     * all else matches.
+     *
+     * @param source the source photo file
+     * @param output the output photo file
+     * @return {@code true} if the photo does not need to be written again,
+     * {@code false} otherwise
+     */
+    final boolean isComplete(final File source, final File output) {
+        final Journal.Entry entry;
+        if ((entry = this.entries.get(source.getAbsolutePath())) == null ||
+            entry.length != source.length() ||
+            entry.lastModified != source.lastModified() ||
+            entry.outputLength != output.length())
+            return false;
+        final MessageDigest digest;
+        final byte[] buffer = new byte[8192];
+        try (final InputStream is = new FileInputStream(output)) {
+            digest = Journal.newDigest();
+            for (int n; (n = is.read(buffer)) >= 0; )
+                digest.update(buffer, 0, n);
+        } catch (IOException e) {
+            // Write an unreadable output file again
+            return false;
+        }
+        return entry.digest.equals(Journal.toHex(digest.digest()));
+    }
+
+    /**
+     * Gets the count of photos recorded as complete by previous jobs.
+     *
+     * @return the count of photos recorded when this journal was opened
+     */
+    final int size() {
+        return this.entries.size();
+    }
+
+    /**
+     * Records a photo as written completely. The record is flushed
+     * immediately, so that it survives a crash of the Java VM.
+     *
+     * @param source the source photo file
+     * @param bytes the bytes written to the output file
+     * @throws IOException if the record cannot be written
+     */
+    final void record(final File source, final byte[] bytes) throws IOException {
+        final StringBuilder line = new StringBuilder(256);
+        line.append(source.length()).append('\t')
+            .append(source.lastModified()).append('\t')
+            .append(bytes.length).append('\t')
+            .append(Journal.toHex(Journal.newDigest().digest(bytes)))
+            .append('\t').append(source.getAbsolutePath()).append('\n');
+        synchronized (this.writer) {
+            this.writer.write(line.toString());
+            this.writer.flush();
+        }
+    }
+
+    private static final MessageDigest newDigest() throws IOException {
+        try {
+            return MessageDigest.getInstance(Journal.DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java VM is required to support SHA-256
+            throw new IOException(e);
+        }
+    }
+
+    private static final String toHex(final byte[] digest) {
+        final StringBuilder hex = new StringBuilder(digest.length << 1);
+        for (final byte b : digest)
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16))
+               .append(Character.forDigit(b & 0xF, 16));
+        return hex.toString();
+    }
+
+    @Override
+    public final void close() throws IOException {
+        synchronized (this.writer) {
+            this.writer.close();
+        }
+    }
+
+    /**
+     * A single record of the journal.
+     */
+    private static final class Entry {
+        private final long length, lastModified, outputLength;
+        private final String digest, source;
+
+        private Entry(
+            final long length,
+            final long lastModified,
+            final long outputLength,
+            final String digest,
+            final String source) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.outputLength = outputLength;
+            this.digest = digest;
+            this.source = source;
+        }
+
+        /**
+         * Parses a record. The source path comes last, so that it may contain
+         * tabs.
+         *
+         * @param line the line of the record
+         * @return the record, or {@code null} if the line is incomplete
+         */
+        private static final Journal.Entry parse(final String line) {
+            final String[] fields;
+            if ((fields = line.split("\t", 5)).length < 5 ||
+                fields[3].length() != 64)
+                return null;
+            try {
+                return new Journal.Entry(
+                    Long.parseLong(fields[0]),
+                    Long.parseLong(fields[1]),
+                    Long.parseLong(fields[2]),
+                    fields[3],
+                    fields[4]
+                );
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,276 @@
+/*
+ * Copyright 2016 Mapillary AB, Sweden
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mapillary;
+
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * The {@link SequencerMXBean} of a job. A monitor is registered in the
+ * platform MBean server when constructed and unregistered when closed, so
+ * that it can be read by any local JMX client, such as {@code jconsole} or
+ * a monitoring agent attached to the Java VM, while the job is running.<br>
+ * The job sets the stage it is in and the pipeline it writes photos by, all
+ * other attributes are read from the pipeline, the quarantine, and the
+ * statistics of the job on each read, thus reading attributes costs the job
+ * nothing between reads. Per stage attributes are empty unless the
+ * statistics are enabled.
+ *
+ * @author <a href="mailto:Jacob%20Wisor%20&lt;GITNE@noreply.users.github.com&gt;?subject=[com.mapillary.Monitor]%20mkseq">Jacob Wisor</a>
+ *
+ * @see Sequencer.Options#JMX_OPTION
+ */
+final class Monitor implements SequencerMXBean, Closeable {
+    /**
+     * The domain and type of the object names of monitors.
+     */
+    private static final String OBJECT_NAME = "com.mapillary:type=Sequencer,name=job-";
+
+    /**
+     * The number of the last job registered by this Java VM, so that
+     * concurrent jobs are registered by different names.
+     */
+    private static final AtomicInteger JOBS = new AtomicInteger();
+
+    private final int total;
+    private final Stats stats;
+    private final Quarantine quarantine;
+    private final ObjectName objectName;
+    private final long startNanos;
+    private final AtomicInteger planned = new AtomicInteger();
+    private volatile String stage = "preflight";
+    private volatile Pipeline pipeline;
+    private int lastDone;
+    private long lastProgressNanos;
+
+    /**
+     * Constructs and registers a monitor of a job.
+     *
+     * @param total the count of input photos, or {@code -1} if unknown
+     * @param stats the statistics of the job
+     * @param quarantine the quarantine of the job
+     * @throws JMException if the monitor cannot be registered
+     */
+    Monitor(
+        final int total,
+        final Stats stats,
+        final Quarantine quarantine) throws JMException {
+        this.total = total;
+        this.stats = stats;
+        this.quarantine = quarantine;
+        this.lastProgressNanos = this.startNanos = System.nanoTime();
+        ManagementFactory.getPlatformMBeanServer().registerMBean(
+            this,
+            this.objectName = new ObjectName(
+                Monitor.OBJECT_NAME + Monitor.JOBS.incrementAndGet()
+            )
+        );
+    }
+
+    /**
+     * Gets the name this monitor is registered by.
+     *
+     * @return the object name of this monitor
+     */
+    final ObjectName getObjectName() {
+        return this.objectName;
+    }
+
+    /**
+     * Sets the stage the job is in.
+     *
+     * @param stage the name of the stage
+     */
+    final void setStage(final String stage) {
+        this.stage = stage;
+    }
+
+    /**
+     * Sets the pipeline the job writes photos by. Queue depths and written
+     * photos are read from it.
+     *
+     * @param pipeline the pipeline of the job
+     */
+    final void setPipeline(final Pipeline pipeline) {
+        this.pipeline = pipeline;
+    }
+
+    /**
+     * Counts a photo added to the plan.
+     */
+    final void planned() {
+        this.planned.incrementAndGet();
+    }
+
+    @Override
+    public final String getStage() {
+        return this.stage;
+    }
+
+    @Override
+    public final int getTotalPhotos() {
+        return this.total;
+    }
+
+    @Override
+    public final synchronized int getDonePhotos() {
+        final int done = this.getWrittenPhotos() +
+            this.getPlannedPhotos() +
+            this.getSkippedPhotos() +
+            this.getFailedPhotos();
+        // Remember when progress has last been observed to tell stalls
+        if (done != this.lastDone) {
+            this.lastDone = done;
+            this.lastProgressNanos = System.nanoTime();
+        }
+        return done;
+    }
+
+    @Override
+    public final int getRemainingPhotos() {
+        return this.total >= 0 ?
+            Math.max(this.total - this.getDonePhotos(), 0) :
+            -1;
+    }
+
+    @Override
+    public final int getWrittenPhotos() {
+        final Pipeline pipeline;
+        return (pipeline = this.pipeline) != null ?
+            pipeline.getWrittenCount() :
+            0;
+    }
+
+    @Override
+    public final int getPlannedPhotos() {
+        return this.planned.get();
+    }
+
+    @Override
+    public final int getSkippedPhotos() {
+        final Pipeline pipeline;
+        return (pipeline = this.pipeline) != null ?
+            pipeline.getSkippedCount() :
+            0;
+    }
+
+    @Override
+    public final int getFailedPhotos() {
+        return this.quarantine.size();
+    }
+
+    @Override
+    public final long getBytesWritten() {
+        final Pipeline pipeline;
+        return (pipeline = this.pipeline) != null ?
+            pipeline.getWrittenBytes() :
+            0L;
+    }
+
+    @Override
+    public final long getElapsedMillis() {
+        return (System.nanoTime() - this.startNanos) / 1000000L;
+    }
+
+    @Override
+    public final synchronized long getMillisSinceProgress() {
+        this.getDonePhotos();
+        return (System.nanoTime() - this.lastProgressNanos) / 1000000L;
+    }
+
+    @Override
+    public final double getPhotosPerSecond() {
+        final long nanos;
+        return (nanos = System.nanoTime() - this.startNanos) > 0L ?
+            this.getDonePhotos() / (nanos / 1e9) :
+            0.0;
+    }
+
+    @Override
+    public final int getPendingQueueDepth() {
+        final Pipeline pipeline;
+        return (pipeline = this.pipeline) != null ?
+            pipeline.getPendingDepth() :
+            0;
+    }
+
+    @Override
+    public final int getReadQueueDepth() {
+        final Pipeline pipeline;
+        return (pipeline = this.pipeline) != null ?
+            pipeline.getReadQueueDepth() :
+            0;
+    }
+
+    @Override
+    public final long getReadQueueBytes() {
+        final Pipeline pipeline;
+        return (pipeline = this.pipeline) != null ?
+            pipeline.getReadQueueBytes() :
+            0L;
+    }
+
+    @Override
+    public final int getWriteQueueDepth() {
+        final Pipeline pipeline;
+        return (pipeline = this.pipeline) != null ?
+            pipeline.getWriteQueueDepth() :
+            0;
+    }
+
+    @Override
+    public final long getWriteQueueBytes() {
+        final Pipeline pipeline;
+        return (pipeline = this.pipeline) != null ?
+            pipeline.getWriteQueueBytes() :
+            0L;
+    }
+
+    @Override
+    public final Map<String, Long> getStageRuns() {
+        return this.stats.getRuns();
+    }
+
+    @Override
+    public final Map<String, Double> getStagePhotosPerSecond() {
+        return this.stats.getPhotosPerSecond();
+    }
+
+    @Override
+    public final Map<String, Double> getStageMeanMillis() {
+        return this.stats.getMeanMillis();
+    }
+
+    /**
+     * Unregisters this monitor. Unregistering fails silently if the monitor
+     * has been unregistered by someone else.
+     */
+    @Override
+    public final void close() {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if (server.isRegistered(this.objectName))
+                server.unregisterMBean(this.objectName);
+        } catch (JMException e) {
+            // Only unregistering a registered monitor is intended
+        }
+    }
+}
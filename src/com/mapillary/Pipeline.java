@@ -0,0 +1,992 @@
+/*
+ * Copyright 2016 Mapillary AB, Sweden
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mapillary;
+
+import java.awt.AlphaComposite;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.ref.SoftReference;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import org.apache.commons.imaging.ImageReadException;
+import org.apache.commons.imaging.ImageWriteException;
+import org.apache.commons.imaging.Imaging;
+import org.apache.commons.imaging.formats.jpeg.exif.ExifRewriter;
+import org.apache.commons.imaging.formats.tiff.write.TiffOutputSet;
+
+/**
+ * A staged read → transform → write pipeline for writing the photos of a
+ * sequence to the output directory. A single reader stage prefetches source
+ * file bytes, one or more transformer stages decode, resize, encode, and
+ * rewrite the EXIF meta data of photos, and a single writer stage writes the
+ * resulting bytes to the output directory. Stages are connected by queues
+ * bounded in bytes, so that disk reads, CPU work, and disk writes overlap
+ * while memory consumption stays bounded. A stage blocks (applies
+ * backpressure) as long as the queue it puts into is full.<br>
+ * Photos are {@linkplain #submit(File, TiffOutputSet) submitted} together
+ * with the final {@link TiffOutputSet} to write. {@link #close() Closing} the
+ * pipeline waits for all submitted photos to be written and rethrows the
+ * first error encountered by any stage. If a {@link Quarantine} is given
+ * then a photo failing in any stage is quarantined instead, and all other
+ * photos are written as usual.<br>
+ * Alternatively, a pipeline can run each photo on its own (virtual) thread of
+ * an {@link ExecutorService}. Then reading and writing of photos is not
+ * limited by a fixed count of threads, which hides the latency of network
+ * file systems, while a {@link Semaphore} limits concurrent transformations
+ * to the count of available processors, and another one limits the amount of
+ * bytes in flight.<br>
+ * Either way, photos are resized only within a {@link DecodeBudget}, so that
+ * as many photos are decoded concurrently as the heap can take rather than a
+ * fixed count. Photos are resized by the band parallel {@link Scaler} if it
+ * supports the raster of the decoded photo, and by Java 2D otherwise.
+ *
+ * @author <a href="mailto:Jacob%20Wisor%20&lt;GITNE@noreply.users.github.com&gt;?subject=[com.mapillary.Pipeline]%20mkseq">Jacob Wisor</a>
+ *
+ * @see Sequencer
+ */
+final class Pipeline implements Closeable {
+    /**
+     * The smallest capacity in bytes of each queue between two stages.
+     */
+    private static final long MIN_QUEUE_CAPACITY = 16L << 20;
+
+    private static final int MAX_PENDING_PHOTOS = 256;
+
+    /**
+     * The box resized photos are fit into, that is Mapillary's preferred full
+     * resolution.
+     */
+    static final int RESIZED_WIDTH  = 2048,
+                     RESIZED_HEIGHT = 1536;
+
+    private final File outputDir;
+    private final Map<String, Object> imagingParams;
+    private final boolean resize;
+    private final float quality;
+    private final boolean preserveTimeStamp;
+    private final Pipeline.Queue pending, read, transformed;
+    private final Thread reader, writer;
+    private final Thread[] transformers;
+    private final ExecutorService executor;
+    private final Semaphore cpu, memory;
+    private final int memoryPermits;
+    private final DecodeBudget decodeBudget;
+    private final Deque<Pipeline.Workspace> workspaces =
+        new ConcurrentLinkedDeque<Pipeline.Workspace>();
+    private final AtomicInteger writing;
+    private final Journal journal;
+    private final Quarantine quarantine;
+    private final Stats stats;
+    private final Progress progress;
+    private final AtomicInteger written = new AtomicInteger();
+    private final AtomicLong writtenBytes = new AtomicLong();
+    private volatile int skipped;
+    private volatile Throwable failure;
+    private int runningTransformers;
+    private boolean closed;
+
+    /**
+     * Constructs and starts a pipeline writing photos to {@code outputDir}.
+     *
+     * @param outputDir the directory to write photos to
+     * @param imagingParams the parameters to decode photos with
+     * @param resize if {@code true} resize photos to fit into 2048x1536
+     * @param quality the JPEG compression quality level of resized photos
+     * @param decodeMemory the memory budget in bytes of photos resized
+     * concurrently, or {@code 0} for the
+     * {@linkplain DecodeBudget#getDefaultCapacity() default budget}
+     * @param preserveTimeStamp if {@code true} set the modification time stamp
+     * of written photos to that of their source files
+     * @param executor the executor to run each photo on, or {@code null} to
+     * run fixed reader, transformer, and writer threads
+     * @param journal the journal to skip completed photos by and to record
+     * written photos in, or {@code null}. The pipeline closes the journal
+     * when closed.
+     * @param quarantine the quarantine to put photos failing in any stage in,
+     * or {@code null} to fail the pipeline on the first failing photo
+     * @param stats the statistics to measure the stages by
+     * @param progress the progress stream to record written photos in, or
+     * {@code null}
+     *
+     * @see #newVirtualThreadExecutor()
+     */
+    Pipeline(
+        final File outputDir,
+        final Map<String, Object> imagingParams,
+        final boolean resize,
+        final float quality,
+        final long decodeMemory,
+        final boolean preserveTimeStamp,
+        final ExecutorService executor,
+        final Journal journal,
+        final Quarantine quarantine,
+        final Stats stats,
+        final Progress progress) {
+        this.outputDir = outputDir;
+        this.imagingParams = imagingParams;
+        this.resize = resize;
+        this.quality = quality;
+        this.preserveTimeStamp = preserveTimeStamp;
+        this.journal = journal;
+        this.quarantine = quarantine;
+        this.stats = stats;
+        this.progress = progress;
+        final long queueCapacity = Math.max(
+            Runtime.getRuntime().maxMemory() >> 3,
+            Pipeline.MIN_QUEUE_CAPACITY
+        );
+        // Decoding is memory bound, thus transformers run on all processors
+        // but decode only within the budget
+        this.decodeBudget = resize ?
+            new DecodeBudget(
+                decodeMemory > 0L ?
+                    decodeMemory :
+                    DecodeBudget.getDefaultCapacity(),
+                imagingParams
+            ) :
+            null;
+        final int transformerCount = Runtime.getRuntime().availableProcessors();
+        if ((this.executor = executor) != null) {
+            this.pending = this.read = this.transformed = null;
+            this.reader = this.writer = null;
+            this.transformers = null;
+            this.cpu = new Semaphore(transformerCount);
+            // A permit stands for 512 bytes of a source photo in flight, that
+            // is for about a KiB of its read and its transformed bytes, like
+            // the two queues of the threaded pipeline
+            this.memory = new Semaphore(
+                this.memoryPermits = (int)Math.min(
+                    queueCapacity >> 9,
+                    Integer.MAX_VALUE
+                )
+            );
+            this.writing = new AtomicInteger();
+            return;
+        }
+        this.cpu = this.memory = null;
+        this.memoryPermits = 0;
+        this.writing = null;
+        this.pending = new Pipeline.Queue(Pipeline.MAX_PENDING_PHOTOS);
+        this.read = new Pipeline.Queue(queueCapacity);
+        this.transformed = new Pipeline.Queue(queueCapacity);
+        this.transformers = new Thread[transformerCount];
+        this.runningTransformers = this.transformers.length;
+        (this.reader = new Thread(this::runReader, "mkseq-reader")).setDaemon(true);
+        for (int i = 0; i < this.transformers.length; i++)
+            (this.transformers[i] = new Thread(
+                this::runTransformer,
+                "mkseq-transformer-" + i
+            )).setDaemon(true);
+        (this.writer = new Thread(this::runWriter, "mkseq-writer")).setDaemon(true);
+        this.writer.start();
+        for (final Thread transformer : this.transformers)
+            transformer.start();
+        this.reader.start();
+    }
+
+    /**
+     * Creates an executor which runs each task on a new virtual thread.
+     * Virtual threads are available on Java 21 or later. The executor is
+     * looked up reflectively, so that {@code mkseq} still builds and runs on
+     * Java 8.
+     *
+     * @return a virtual thread per task executor, or {@code null} if virtual
+     * threads are not available on this Java VM
+     */
+    static final ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService)Executors.class.getMethod(
+                "newVirtualThreadPerTaskExecutor"
+            ).invoke(null);
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            return null;
+        } catch (InvocationTargetException e) {
+            // Virtual threads are a preview feature on Java 19 and 20
+            return null;
+        }
+    }
+
+    /**
+     * Submits a photo for writing to the output directory. This method blocks
+     * as long as too many photos are pending to be read. A photo recorded as
+     * complete in the journal is skipped.
+     *
+     * @param source the source photo file
+     * @param outputSet the EXIF meta data to write to the photo
+     * @throws IOException if any stage of this pipeline has failed
+     */
+    final void submit(
+        final File source,
+        final TiffOutputSet outputSet) throws IOException {
+        this.checkFailure();
+        if (this.journal != null &&
+            this.journal.isComplete(
+                source,
+                new File(this.outputDir, source.getName()))) {
+            this.skipped++;
+            if (this.progress != null)
+                this.progress.skipped(source);
+            return;
+        }
+        try {
+            final Pipeline.Photo photo = new Pipeline.Photo(source, outputSet);
+            if (this.executor == null) {
+                this.pending.put(photo, 1L);
+                return;
+            }
+            // Reserve a permit per 512 bytes of the source photo
+            final int permits;
+            this.memory.acquire(permits = (int)Math.min(
+                (source.length() >> 9) + 1L,
+                this.memoryPermits
+            ));
+            this.executor.execute(() -> this.process(photo, permits));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(e.getMessage());
+        }
+    }
+
+    /**
+     * Waits for all submitted photos to be written and stops all stages.
+     *
+     * @throws IOException if any stage of this pipeline has failed
+     */
+    @Override
+    public final void close() throws IOException {
+        if (this.closed)
+            return;
+        this.closed = true;
+        try {
+            if (this.executor == null) {
+                this.pending.put(Pipeline.Photo.END, 0L);
+                this.reader.join();
+                for (final Thread transformer : this.transformers)
+                    transformer.join();
+                this.writer.join();
+            } else {
+                // Every photo in flight holds permits until it is written
+                this.memory.acquire(this.memoryPermits);
+                this.memory.release(this.memoryPermits);
+                Pipeline.Workspace workspace;
+                while ((workspace = this.workspaces.pollFirst()) != null)
+                    workspace.dispose();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(e.getMessage());
+        } finally {
+            if (this.journal != null)
+                this.journal.close();
+        }
+        this.checkFailure();
+    }
+
+    /**
+     * Gets the count of submitted photos skipped, because they have been
+     * recorded as complete in the journal.
+     *
+     * @return the count of skipped photos
+     */
+    final int getSkippedCount() {
+        return this.skipped;
+    }
+
+    /**
+     * Gets the count of photos written to the output directory so far.
+     *
+     * @return the count of written photos
+     */
+    final int getWrittenCount() {
+        return this.written.get();
+    }
+
+    /**
+     * Gets the amount of bytes written to the output directory so far.
+     *
+     * @return the amount of bytes written
+     */
+    final long getWrittenBytes() {
+        return this.writtenBytes.get();
+    }
+
+    /**
+     * Gets the count of photos submitted but not yet read.
+     *
+     * @return the count of pending photos
+     */
+    final int getPendingDepth() {
+        return this.executor == null ?
+            this.pending.size() :
+            this.memory.getQueueLength();
+    }
+
+    /**
+     * Gets the count of photos read but not yet transformed.
+     *
+     * @return the depth of the queue between the reader and the transformers
+     */
+    final int getReadQueueDepth() {
+        return this.executor == null ?
+            this.read.size() :
+            this.cpu.getQueueLength();
+    }
+
+    /**
+     * Gets the amount of bytes read but not yet transformed.
+     *
+     * @return the amount of bytes in the queue between the reader and the
+     * transformers, or {@code -1} if photos are run on an executor
+     */
+    final long getReadQueueBytes() {
+        return this.executor == null ? this.read.bytes() : -1L;
+    }
+
+    /**
+     * Gets the count of photos transformed but not yet written.
+     *
+     * @return the depth of the queue between the transformers and the writer
+     */
+    final int getWriteQueueDepth() {
+        return this.executor == null ?
+            this.transformed.size() :
+            this.writing.get();
+    }
+
+    /**
+     * Gets the amount of bytes transformed but not yet written.
+     *
+     * @return the amount of bytes in the queue between the transformers and
+     * the writer, or {@code -1} if photos are run on an executor
+     */
+    final long getWriteQueueBytes() {
+        return this.executor == null ? this.transformed.bytes() : -1L;
+    }
+
+    /**
+     * Gives a human readable textual representation of this pipeline's
+     * queues. A queue which is permanently full denotes that the stage taking
+     * from it is the bottleneck.
+     *
+     * @return a human readable string
+     */
+    @Override
+    public final String toString() {
+        final String decodeBudget = this.decodeBudget != null ?
+            "\n" + this.decodeBudget :
+            "";
+        if (this.executor != null)
+            return String.format(
+                "waiting for memory: %d\n" +
+                "waiting for transformation: %d\n" +
+                "writing: %d\n" +
+                "idle transformation permits: %d",
+                this.memory.getQueueLength(),
+                this.cpu.getQueueLength(),
+                this.writing.get(),
+                this.cpu.availablePermits()
+            ) + decodeBudget;
+        return String.format(
+            "pending: %d (peak %d)\n" +
+            "read queue: %d (peak %d), %,d of %,d bytes (peak %,d)\n" +
+            "write queue: %d (peak %d), %,d of %,d bytes (peak %,d)\n" +
+            "transformers: %d",
+            this.pending.size(),
+            this.pending.peakSize(),
+            this.read.size(),
+            this.read.peakSize(),
+            this.read.bytes(),
+            this.read.capacity,
+            this.read.peakBytes(),
+            this.transformed.size(),
+            this.transformed.peakSize(),
+            this.transformed.bytes(),
+            this.transformed.capacity,
+            this.transformed.peakBytes(),
+            this.transformers.length
+        ) + decodeBudget;
+    }
+
+    private final void checkFailure() throws IOException {
+        final Throwable t;
+        if ((t = this.failure) != null)
+            throw t instanceof IOException ?
+                new IOException(t.getMessage(), t) :
+                new IOException(t);
+    }
+
+    private final void fail(final Throwable t) {
+        synchronized (this) {
+            if (this.failure == null)
+                this.failure = t;
+        }
+    }
+
+    /**
+     * Quarantines a failed photo, or fails this pipeline if there is no
+     * quarantine.
+     *
+     * @param photo the failed photo
+     * @param t the reason of the failure
+     */
+    private final void fail(final Pipeline.Photo photo, final Throwable t) {
+        if (this.quarantine == null)
+            this.fail(t);
+        else {
+            // Release the bytes of a photo dropped from the pipeline
+            photo.bytes = null;
+            this.quarantine.add(photo.source, t);
+        }
+    }
+
+    /**
+     * Runs all stages for a single photo on the calling thread.
+     *
+     * @param photo the photo to read, transform, and write
+     * @param permits the memory permits to release when done
+     */
+    private final void process(final Pipeline.Photo photo, final int permits) {
+        try {
+            if (this.failure != null)
+                return;
+            this.read(photo);
+            this.cpu.acquire();
+            try {
+                // At most one workspace per transformation permit is created
+                Pipeline.Workspace workspace;
+                if ((workspace = this.workspaces.pollFirst()) == null)
+                    workspace = new Pipeline.Workspace(this.quality);
+                try {
+                    this.transform(photo, workspace);
+                } finally {
+                    this.workspaces.offerFirst(workspace);
+                }
+            } finally {
+                this.cpu.release();
+            }
+            this.writing.incrementAndGet();
+            try {
+                this.write(photo);
+            } finally {
+                this.writing.decrementAndGet();
+            }
+        } catch (InterruptedException e) {
+            this.fail(e);
+        } catch (Throwable t) {
+            // Quarantine a photo whose decoding has run out of memory, too
+            this.fail(photo, t);
+        } finally {
+            this.memory.release(permits);
+        }
+    }
+
+    private final void runReader() {
+        try {
+            Pipeline.Photo photo;
+            while ((photo = this.pending.take()) != Pipeline.Photo.END) {
+                if (this.failure != null)
+                    continue; // Drain
+                try {
+                    this.read(photo);
+                } catch (Throwable t) {
+                    this.fail(photo, t);
+                    continue;
+                }
+                this.read.put(photo, photo.bytes.length);
+            }
+        } catch (Throwable t) {
+            this.fail(t);
+        } finally {
+            // End the transformers even if this stage has failed, so that
+            // closing does not wait forever
+            for (int i = this.transformers.length; i > 0; i--)
+                Pipeline.putEnd(this.read);
+        }
+    }
+
+    private final void runTransformer() {
+        final Pipeline.Workspace workspace = new Pipeline.Workspace(this.quality);
+        try {
+            Pipeline.Photo photo;
+            while ((photo = this.read.take()) != Pipeline.Photo.END) {
+                if (this.failure != null)
+                    continue; // Drain
+                try {
+                    this.transform(photo, workspace);
+                } catch (Throwable t) {
+                    // Quarantine a photo whose decoding has run out of
+                    // memory, too
+                    this.fail(photo, t);
+                    continue;
+                }
+                this.transformed.put(photo, photo.bytes.length);
+            }
+        } catch (Throwable t) {
+            this.fail(t);
+        } finally {
+            try {
+                workspace.dispose();
+            } finally {
+                final boolean last;
+                synchronized (this) {
+                    last = --this.runningTransformers <= 0;
+                }
+                // The last transformer ends the writer, even if it has failed
+                if (last)
+                    Pipeline.putEnd(this.transformed);
+            }
+        }
+    }
+
+    private final void runWriter() {
+        try {
+            Pipeline.Photo photo;
+            while ((photo = this.transformed.take()) != Pipeline.Photo.END) {
+                if (this.failure != null)
+                    continue; // Drain
+                try {
+                    this.write(photo);
+                } catch (Throwable t) {
+                    this.fail(photo, t);
+                }
+            }
+        } catch (Throwable t) {
+            this.fail(t);
+        }
+    }
+
+    /**
+     * Puts the end marker into a queue, even if the calling thread is
+     * interrupted, which is restored afterwards.
+     *
+     * @param queue the queue to end
+     */
+    private static final void putEnd(final Pipeline.Queue queue) {
+        boolean interrupted = false;
+        for (;;)
+            try {
+                queue.put(Pipeline.Photo.END, 0L);
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    private final void read(final Pipeline.Photo photo) throws IOException {
+        final Stats.Run run = this.stats.begin(Stats.READ);
+        final long nanos = System.nanoTime();
+        photo.bytes = Files.readAllBytes(photo.source.toPath());
+        photo.readNanos = System.nanoTime() - nanos;
+        photo.readBytes = photo.bytes.length;
+        run.end(photo.source, 1, photo.bytes.length);
+    }
+
+    private final void transform(
+        final Pipeline.Photo photo,
+        final Pipeline.Workspace workspace) throws IOException {
+        final long nanos = System.nanoTime();
+        try {
+            final byte[] image;
+            if (this.resize) {
+                // Decode only as many photos at once as the heap can take
+                final long estimate;
+                this.decodeBudget.acquire(
+                    estimate = this.decodeBudget.estimate(photo.bytes)
+                );
+                try {
+                    image = this.resize(photo.source, photo.bytes, workspace);
+                } finally {
+                    this.decodeBudget.release(estimate);
+                }
+            } else image = photo.bytes;
+            final Stats.Run run = this.stats.begin(Stats.REWRITE);
+            final ByteArrayOutputStream baos;
+            (baos = workspace.rewritten).reset();
+            workspace.exifRewriter.updateExifMetadataLossy(
+                image,
+                baos,
+                photo.outputSet
+            );
+            photo.bytes = baos.toByteArray();
+            run.end(photo.source, 1, photo.bytes.length);
+        } catch (ImageReadException | ImageWriteException e) {
+            throw new IOException(photo.source.getPath(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(e.getMessage());
+        } finally {
+            workspace.trim();
+        }
+        photo.transformNanos = System.nanoTime() - nanos;
+    }
+
+    private final void write(final Pipeline.Photo photo) throws IOException {
+        final Stats.Run run = this.stats.begin(Stats.WRITE);
+        final long nanos = System.nanoTime();
+        final File outputFile = new File(
+            this.outputDir,
+            photo.source.getName()
+        );
+        try (final FileOutputStream fos = new FileOutputStream(outputFile)) {
+            fos.write(photo.bytes);
+        } catch (IOException e) {
+            // Do not leave a truncated photo behind
+            outputFile.delete();
+            throw e;
+        }
+        // If -k option is set adjust new output file's modification time stamp
+        if (this.preserveTimeStamp)
+            outputFile.setLastModified(photo.source.lastModified());
+        // Record the photo only after it has been written completely
+        if (this.journal != null)
+            this.journal.record(photo.source, photo.bytes);
+        this.writtenBytes.addAndGet(photo.bytes.length);
+        this.written.incrementAndGet();
+        run.end(photo.source, 1, photo.bytes.length);
+        if (this.progress != null)
+            this.progress.written(
+                photo.source,
+                outputFile,
+                photo.readBytes,
+                photo.bytes.length,
+                photo.readNanos,
+                photo.transformNanos,
+                System.nanoTime() - nanos
+            );
+    }
+
+    /**
+     * Gets the size a photo is resized to, that is the largest size with the
+     * aspect ratio of the photo which fits into
+     * {@link #RESIZED_WIDTH}x{@link #RESIZED_HEIGHT}. Photos are never
+     * enlarged.
+     *
+     * @param width the width of the photo
+     * @param height the height of the photo
+     * @return the size of the resized photo
+     */
+    static final Dimension getResizedSize(final int width, final int height) {
+        final double scale = Math.min(
+            Math.min(
+                (double)Pipeline.RESIZED_WIDTH / width,
+                (double)Pipeline.RESIZED_HEIGHT / height
+            ),
+            1.0
+        );
+        return new Dimension(
+            Math.max((int)Math.round(width * scale), 1),
+            Math.max((int)Math.round(height * scale), 1)
+        );
+    }
+
+    /**
+     * Resizes to Mapillary's preferred full resolution while preserving the
+     * aspect ratio.
+     *
+     * @param source the source photo file, for statistics only
+     * @param image the encoded source image
+     * @param workspace the workspace of the calling thread
+     * @return the encoded resized image
+     */
+    private final byte[] resize(
+        final File source,
+        final byte[] image,
+        final Pipeline.Workspace workspace) throws ImageReadException, IOException {
+        Stats.Run run = this.stats.begin(Stats.DECODE);
+        final BufferedImage inputBufferedImage, outputBufferedImage;
+        inputBufferedImage = Imaging.getBufferedImage(
+            image,
+            this.imagingParams
+        );
+        run.end(source, 1, image.length);
+        run = this.stats.begin(Stats.RESIZE);
+        final Dimension size = Pipeline.getResizedSize(
+            inputBufferedImage.getWidth(),
+            inputBufferedImage.getHeight()
+        );
+        final int width = size.width,
+                  height = size.height;
+        final Graphics2D graphics2d = (outputBufferedImage =
+            workspace.getResized(inputBufferedImage, width, height)
+        ).createGraphics();
+        // A reused image still holds the previous photo where this photo is
+        // translucent
+        if (outputBufferedImage.getColorModel().hasAlpha()) {
+            graphics2d.setComposite(AlphaComposite.Clear);
+            graphics2d.fillRect(0, 0, width, height);
+            graphics2d.setComposite(AlphaComposite.SrcOver);
+        }
+        // Java 2D scales only on a single thread and without vectorization
+        if (!Scaler.scale(inputBufferedImage, outputBufferedImage, width, height)) {
+            graphics2d.setRenderingHint(
+                RenderingHints.KEY_INTERPOLATION,
+                RenderingHints.VALUE_INTERPOLATION_BICUBIC
+            );
+            graphics2d.setRenderingHint(
+                RenderingHints.KEY_DITHERING,
+                RenderingHints.VALUE_DITHER_DISABLE
+            );
+            graphics2d.setRenderingHint(
+                RenderingHints.KEY_ANTIALIASING,
+                RenderingHints.VALUE_ANTIALIAS_OFF
+            );
+            graphics2d.drawImage(
+                inputBufferedImage,
+                0,
+                0,
+                width,
+                height,
+                null
+            );
+        }
+        graphics2d.dispose();
+        run.end(source, 1, 0L);
+        run = this.stats.begin(Stats.ENCODE);
+        final ByteArrayOutputStream baos;
+        (baos = workspace.encoded).reset();
+        final ImageWriter iw = workspace.getImageWriter();
+        try (final ImageOutputStream ios = new MemoryCacheImageOutputStream(baos)) {
+            iw.setOutput(ios);
+            iw.write(
+                null,
+                new IIOImage(outputBufferedImage, null, null),
+                workspace.imageWriteParam
+            );
+        } catch (IOException | RuntimeException e) {
+            // Do not reuse a writer left in an unknown state
+            workspace.disposeImageWriter();
+            throw e;
+        }
+        iw.reset();
+        run.end(source, 1, baos.size());
+        return baos.toByteArray();
+    }
+
+    /**
+     * A photo passing through the stages of a pipeline. Its bytes are either
+     * the source bytes or the transformed bytes depending on the stage.
+     */
+    private static final class Photo {
+        /**
+         * Marks the end of a queue.
+         */
+        private static final Pipeline.Photo END = new Pipeline.Photo(null, null);
+
+        private final File source;
+        private final TiffOutputSet outputSet;
+        private byte[] bytes;
+        private long weight;
+        private long readBytes, readNanos, transformNanos;
+
+        private Photo(final File source, final TiffOutputSet outputSet) {
+            this.source = source;
+            this.outputSet = outputSet;
+        }
+    }
+
+    /**
+     * The objects a transformer reuses from photo to photo rather than
+     * creating them for each photo, that is the EXIF rewriter, the JPEG
+     * writer, the resized image, and the buffers of encoded images. A
+     * workspace is used by a single thread at a time. The resized image is
+     * only softly referenced, so that it is reclaimed by the garbage collector
+     * before the heap runs out. A buffer which has grown beyond
+     * {@link #BUFFER_LIMIT} is dropped after use, since neither the pipeline's
+     * permits nor the decode budget account for it.
+     */
+    private static final class Workspace {
+        /**
+         * The initial size of a buffer of encoded images.
+         */
+        private static final int BUFFER_SIZE  = 1 << 20;
+        /**
+         * The size beyond which a buffer of encoded images is not kept.
+         */
+        private static final int BUFFER_LIMIT = 4 << 20;
+
+        private final ExifRewriter exifRewriter = new ExifRewriter();
+        private ByteArrayOutputStream encoded = new ByteArrayOutputStream(Pipeline.Workspace.BUFFER_SIZE),
+                                      rewritten = new ByteArrayOutputStream(Pipeline.Workspace.BUFFER_SIZE);
+        private final float quality;
+        private ImageWriter imageWriter;
+        private ImageWriteParam imageWriteParam;
+        private SoftReference<BufferedImage> resized;
+
+        private Workspace(final float quality) {
+            this.quality = quality;
+        }
+
+        /**
+         * Gets the image to resize a photo into, which is reused as long as
+         * photos have the same color model and resized size.
+         *
+         * @param input the decoded photo
+         * @param width the width of the resized photo
+         * @param height the height of the resized photo
+         * @return the image to resize {@code input} into
+         */
+        private final BufferedImage getResized(
+            final BufferedImage input,
+            final int width,
+            final int height) {
+            BufferedImage resized;
+            if (this.resized == null ||
+                (resized = this.resized.get()) == null ||
+                resized.getWidth() != width ||
+                resized.getHeight() != height ||
+                !resized.getColorModel().equals(input.getColorModel()) ||
+                resized.isAlphaPremultiplied() != input.isAlphaPremultiplied())
+                this.resized = new SoftReference<BufferedImage>(
+                    resized = new BufferedImage(
+                        input.getColorModel(),
+                        input.getColorModel().createCompatibleWritableRaster(
+                            width,
+                            height
+                        ),
+                        input.isAlphaPremultiplied(),
+                        null
+                    )
+                );
+            return resized;
+        }
+
+        /**
+         * Gets the JPEG writer of this workspace, and creates it together
+         * with its write parameters on first use.
+         *
+         * @return the JPEG writer
+         */
+        private final ImageWriter getImageWriter() {
+            if (this.imageWriter == null) {
+                this.imageWriter = ImageIO.getImageWritersByFormatName("JPEG").next();
+                (this.imageWriteParam = this.imageWriter.getDefaultWriteParam()).setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                this.imageWriteParam.setCompressionQuality(this.quality);
+                this.imageWriteParam.setProgressiveMode(ImageWriteParam.MODE_DISABLED);
+            }
+            return this.imageWriter;
+        }
+
+        private final void disposeImageWriter() {
+            if (this.imageWriter != null) {
+                this.imageWriter.dispose();
+                this.imageWriter = null;
+                this.imageWriteParam = null;
+            }
+        }
+
+        /**
+         * Replaces the buffers of encoded images which have grown beyond
+         * {@link #BUFFER_LIMIT}, so that a workspace does not hold on to the
+         * largest photo seen for the rest of the job.
+         */
+        private final void trim() {
+            if (this.encoded.size() > Pipeline.Workspace.BUFFER_LIMIT)
+                this.encoded = new ByteArrayOutputStream(Pipeline.Workspace.BUFFER_SIZE);
+            if (this.rewritten.size() > Pipeline.Workspace.BUFFER_LIMIT)
+                this.rewritten = new ByteArrayOutputStream(Pipeline.Workspace.BUFFER_SIZE);
+        }
+
+        /**
+         * Releases the native resources of this workspace.
+         */
+        private final void dispose() {
+            this.disposeImageWriter();
+            this.resized = null;
+        }
+    }
+
+    /**
+     * A blocking FIFO queue bounded by the total weight of its elements. An
+     * element heavier than the capacity is admitted only to an empty queue,
+     * so that a single large photo cannot stall the pipeline.
+     */
+    private static final class Queue {
+        private final ArrayDeque<Pipeline.Photo> photos =
+            new ArrayDeque<Pipeline.Photo>();
+        private final long capacity;
+        private long bytes, peakBytes;
+        private int peakSize;
+
+        private Queue(final long capacity) {
+            this.capacity = capacity;
+        }
+
+        private final synchronized void put(
+            final Pipeline.Photo photo,
+            final long weight) throws InterruptedException {
+            while (!this.photos.isEmpty() && this.bytes + weight > this.capacity)
+                super.wait();
+            photo.weight = weight;
+            this.photos.addLast(photo);
+            if ((this.bytes += weight) > this.peakBytes)
+                this.peakBytes = this.bytes;
+            if (this.photos.size() > this.peakSize)
+                this.peakSize = this.photos.size();
+            super.notifyAll();
+        }
+
+        private final synchronized Pipeline.Photo take() throws
+            InterruptedException {
+            while (this.photos.isEmpty())
+                super.wait();
+            final Pipeline.Photo photo;
+            this.bytes -= (photo = this.photos.removeFirst()).weight;
+            super.notifyAll();
+            return photo;
+        }
+
+        private final synchronized int size() {
+            return this.photos.size();
+        }
+
+        private final synchronized long bytes() {
+            return this.bytes;
+        }
+
+        private final synchronized int peakSize() {
+            return this.peakSize;
+        }
+
+        private final synchronized long peakBytes() {
+            return this.peakBytes;
+        }
+    }
+}
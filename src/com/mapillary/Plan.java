@@ -0,0 +1,288 @@
+/*
+ * Copyright 2016 Mapillary AB, Sweden
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mapillary;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.IdentityHashMap;
+import java.util.Locale;
+import java.util.Map;
+import org.apache.commons.imaging.ImageReadException;
+import org.apache.commons.imaging.ImageWriteException;
+import org.apache.commons.imaging.Imaging;
+import org.apache.commons.imaging.common.ImageMetadata;
+import org.apache.commons.imaging.common.RationalNumber;
+import org.apache.commons.imaging.formats.jpeg.JpegImageMetadata;
+import org.apache.commons.imaging.formats.tiff.TiffImageMetadata;
+import org.apache.commons.imaging.formats.tiff.constants.GpsTagConstants;
+import org.apache.commons.imaging.formats.tiff.write.TiffImageWriterLossy;
+import org.apache.commons.imaging.formats.tiff.write.TiffOutputSet;
+
+/**
+ * A table of the GPS location, direction, and date time stamp of each photo
+ * before and after processing, written instead of photos. A plan lets the
+ * effect of options be inspected without decoding, encoding, or writing any
+ * photo.<br>
+ * The table is written as GeoJSON if the plan file name ends with
+ * {@code .geojson} or {@code .json}, with one point feature per photo at its
+ * location after processing, and as CSV otherwise.
+ *
+ * @author <a href="mailto:Jacob%20Wisor%20&lt;GITNE@noreply.users.github.com&gt;?subject=[com.mapillary.Plan]%20mkseq">Jacob Wisor</a>
+ *
+ * @see Sequencer.Options#PLAN_OPTION
+ */
+final class Plan implements Closeable {
+    private static final String CSV_HEADER =
+        "file," +
+        "latitude_before,longitude_before,direction_before,time_before," +
+        "latitude_after,longitude_after,direction_after,time_after";
+
+    private final Map<File, JpegImageMetadata> before;
+    private final Writer writer;
+    private final boolean geoJSON;
+    private boolean empty = true;
+
+    /**
+     * Creates a plan file.
+     *
+     * @param file the plan file to write
+     * @param files the photos of the sequence
+     * @param jpegImageMetadatas the JPEG meta data of {@code files} before
+     * processing
+     * @throws IOException if the plan file cannot be written
+     */
+    Plan(
+        final File file,
+        final File[] files,
+        final JpegImageMetadata[] jpegImageMetadatas) throws IOException {
+        this(file);
+        for (int i = files.length - 1; i >= 0; i--)
+            this.before.put(files[i], jpegImageMetadatas[i]);
+    }
+
+    /**
+     * Creates a plan file for a sequence whose photos are
+     * {@linkplain #add(File, JpegImageMetadata) added} as they are read.
+     *
+     * @param file the plan file to write
+     * @throws IOException if the plan file cannot be written
+     */
+    Plan(final File file) throws IOException {
+        this.before = new IdentityHashMap<File, JpegImageMetadata>();
+        final String name = file.getName().toLowerCase(Locale.ROOT);
+        this.geoJSON = name.endsWith(".geojson") || name.endsWith(".json");
+        (this.writer = Files.newBufferedWriter(
+            file.toPath(),
+            StandardCharsets.UTF_8
+        )).write(
+            this.geoJSON ?
+                "{\"type\":\"FeatureCollection\",\"features\":[\n" :
+                Plan.CSV_HEADER + '\n'
+        );
+    }
+
+    /**
+     * Adds the meta data of a photo before processing, which is held until
+     * the photo is {@linkplain #submit(File, TiffOutputSet) submitted}.
+     *
+     * @param source the source photo file
+     * @param jpegImageMetadata the JPEG meta data of {@code source} before
+     * processing
+     */
+    final void add(
+        final File source,
+        final JpegImageMetadata jpegImageMetadata) {
+        this.before.put(source, jpegImageMetadata);
+    }
+
+    /**
+     * Adds a photo to the plan. The final EXIF meta data of a photo is
+     * serialized and parsed back, so that the plan shows exactly the values
+     * which would be written.
+     *
+     * @param source the source photo file
+     * @param outputSet the EXIF meta data which would be written to the photo
+     * @throws IOException if the plan file cannot be written or the meta data
+     * cannot be serialized
+     */
+    final void submit(
+        final File source,
+        final TiffOutputSet outputSet) throws IOException {
+        try {
+            final ByteArrayOutputStream baos = new ByteArrayOutputStream(512);
+            new TiffImageWriterLossy().write(baos, outputSet);
+            final ImageMetadata after = Imaging.getMetadata(baos.toByteArray());
+            final JpegImageMetadata before = this.before.remove(source);
+            final Plan.Row row = new Plan.Row(
+                before != null ? before.getExif() : null,
+                after instanceof TiffImageMetadata ?
+                    (TiffImageMetadata)after :
+                    null
+            );
+            if (this.geoJSON)
+                this.writeFeature(source, row);
+            else this.writeCSV(source, row);
+        } catch (ImageReadException | ImageWriteException e) {
+            throw new IOException(source.getPath(), e);
+        }
+    }
+
+    private final void writeCSV(
+        final File source,
+        final Plan.Row row) throws IOException {
+        this.writer.write(String.format(
+            Locale.ROOT,
+            "\"%s\",%s,%s,%s,%s,%s,%s,%s,%s\n",
+            source.getPath().replace("\"", "\"\""),
+            Plan.format(row.latitudeBefore),
+            Plan.format(row.longitudeBefore),
+            Plan.format(row.directionBefore),
+            row.timeBefore != null ? row.timeBefore : "",
+            Plan.format(row.latitudeAfter),
+            Plan.format(row.longitudeAfter),
+            Plan.format(row.directionAfter),
+            row.timeAfter != null ? row.timeAfter : ""
+        ));
+    }
+
+    private final void writeFeature(
+        final File source,
+        final Plan.Row row) throws IOException {
+        if (!this.empty)
+            this.writer.write(",\n");
+        this.empty = false;
+        final StringBuilder file = new StringBuilder(
+            source.getPath().length() + 2
+        );
+        Progress.quote(file, source.getPath());
+        this.writer.write(String.format(
+            Locale.ROOT,
+            "{\"type\":\"Feature\",\"geometry\":%s,\"properties\":{" +
+            "\"file\":%s," +
+            "\"latitude_before\":%s,\"longitude_before\":%s," +
+            "\"direction_before\":%s,\"time_before\":%s," +
+            "\"direction_after\":%s,\"time_after\":%s}}",
+            Double.isNaN(row.latitudeAfter) || Double.isNaN(row.longitudeAfter) ?
+                "null" :
+                String.format(
+                    Locale.ROOT,
+                    "{\"type\":\"Point\",\"coordinates\":[%.7f,%.7f]}",
+                    row.longitudeAfter,
+                    row.latitudeAfter
+                ),
+            file,
+            Plan.formatJSON(row.latitudeBefore),
+            Plan.formatJSON(row.longitudeBefore),
+            Plan.formatJSON(row.directionBefore),
+            row.timeBefore != null ? '"' + row.timeBefore + '"' : "null",
+            Plan.formatJSON(row.directionAfter),
+            row.timeAfter != null ? '"' + row.timeAfter + '"' : "null"
+        ));
+    }
+
+    private static final String format(final double value) {
+        return Double.isNaN(value) ?
+            "" :
+            String.format(Locale.ROOT, "%.7f", value);
+    }
+
+    private static final String formatJSON(final double value) {
+        return Double.isNaN(value) ?
+            "null" :
+            String.format(Locale.ROOT, "%.7f", value);
+    }
+
+    @Override
+    public final void close() throws IOException {
+        try {
+            if (this.geoJSON)
+                this.writer.write("\n]}\n");
+        } finally {
+            this.writer.close();
+        }
+    }
+
+    /**
+     * The values of a single photo before and after processing. Missing
+     * values are {@link Double#NaN} or {@code null}.
+     */
+    private static final class Row {
+        private double latitudeBefore = Double.NaN,
+                       longitudeBefore = Double.NaN,
+                       directionBefore = Double.NaN,
+                       latitudeAfter = Double.NaN,
+                       longitudeAfter = Double.NaN,
+                       directionAfter = Double.NaN;
+        private String timeBefore, timeAfter;
+
+        private Row(
+            final TiffImageMetadata before,
+            final TiffImageMetadata after) throws ImageReadException {
+            TiffImageMetadata.GPSInfo gpsInfo;
+            RationalNumber direction;
+            if (before != null) {
+                if ((gpsInfo = before.getGPS()) != null) {
+                    this.latitudeBefore = gpsInfo.getLatitudeAsDegreesNorth();
+                    this.longitudeBefore = gpsInfo.getLongitudeAsDegreesEast();
+                }
+                if ((direction = before.getFieldValue(
+                        GpsTagConstants.GPS_TAG_GPS_IMG_DIRECTION)) != null)
+                    this.directionBefore = direction.doubleValue();
+                this.timeBefore = Plan.Row.getTime(before);
+            }
+            if (after != null) {
+                if ((gpsInfo = after.getGPS()) != null) {
+                    this.latitudeAfter = gpsInfo.getLatitudeAsDegreesNorth();
+                    this.longitudeAfter = gpsInfo.getLongitudeAsDegreesEast();
+                }
+                if ((direction = after.getFieldValue(
+                        GpsTagConstants.GPS_TAG_GPS_IMG_DIRECTION)) != null)
+                    this.directionAfter = direction.doubleValue();
+                this.timeAfter = Plan.Row.getTime(after);
+            }
+        }
+
+        /**
+         * Gets the GPS date time stamp in ISO 8601 notation.
+         *
+         * @param metadata the meta data to get the date time stamp from
+         * @return the date time stamp, or {@code null} if missing or invalid
+         */
+        private static final String getTime(
+            final TiffImageMetadata metadata) throws ImageReadException {
+            final String[] date;
+            final RationalNumber[] time;
+            if ((date = metadata.getFieldValue(
+                    GpsTagConstants.GPS_TAG_GPS_DATE_STAMP)) == null ||
+                date.length <= 0 ||
+                (time = metadata.getFieldValue(
+                    GpsTagConstants.GPS_TAG_GPS_TIME_STAMP)) == null)
+                return null;
+            try {
+                return Sequencer.gpsDateTimeToDate(date[0], time)
+                    .toInstant()
+                    .toString();
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+    }
+}
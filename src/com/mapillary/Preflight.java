@@ -0,0 +1,295 @@
+/*
+ * Copyright 2016 Mapillary AB, Sweden
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mapillary;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Map;
+import org.apache.commons.imaging.ImageReadException;
+import org.apache.commons.imaging.Imaging;
+import org.apache.commons.imaging.common.ImageMetadata;
+import org.apache.commons.imaging.formats.jpeg.JpegImageMetadata;
+import org.apache.commons.imaging.formats.tiff.TiffImageMetadata;
+import org.apache.commons.imaging.formats.tiff.constants.ExifTagConstants;
+import org.apache.commons.imaging.formats.tiff.constants.GpsTagConstants;
+import org.apache.commons.imaging.formats.tiff.constants.TiffTagConstants;
+
+/**
+ * A validation scan of input photos run before any output is written. The
+ * scan reads the marker segments of each photo up to the start of its image
+ * data and its last bytes only, so that it is cheap compared to decoding.
+ * Photos are scanned in parallel on all processors.<br>
+ * A photo is invalid if it lacks the JPEG start (SOI) or end of image (EOI)
+ * marker, its EXIF (APP1) segment is missing or cannot be parsed, it lacks
+ * a frame header denoting its dimensions, or it cannot be read at all. A
+ * valid photo may still lack GPS location or time stamp tags.
+ *
+ * @author <a href="mailto:Jacob%20Wisor%20&lt;GITNE@noreply.users.github.com&gt;?subject=[com.mapillary.Preflight]%20mkseq">Jacob Wisor</a>
+ *
+ * @see Sequencer.Options#PREFLIGHT_OPTION
+ */
+final class Preflight {
+    /**
+     * Problems of a photo. Any problem but {@link #NO_GPS_LOCATION},
+     * {@link #NO_GPS_TIME}, and {@link #NO_TIME_STAMP} makes a photo invalid.
+     */
+    static final int NO_SOI           = 0x01,
+                     NO_EOI           = 0x02,
+                     NO_EXIF          = 0x04,
+                     MALFORMED_EXIF   = 0x08,
+                     NO_FRAME         = 0x10,
+                     NO_GPS_LOCATION  = 0x20,
+                     NO_GPS_TIME      = 0x40,
+                     NO_TIME_STAMP    = 0x80,
+                     UNREADABLE       = 0x100;
+
+    private static final int INVALID = Preflight.NO_SOI |
+                                       Preflight.NO_EOI |
+                                       Preflight.NO_EXIF |
+                                       Preflight.MALFORMED_EXIF |
+                                       Preflight.NO_FRAME |
+                                       Preflight.UNREADABLE;
+
+    /**
+     * The count of bytes at the end of a photo to search for the EOI marker
+     * in. Some cameras pad photos after the EOI marker.
+     */
+    private static final int EOI_SEARCH_LENGTH = 4096;
+
+    private static final byte[] EXIF_IDENTIFIER = {
+        'E', 'x', 'i', 'f', 0, 0
+    };
+
+    private final Preflight.Result[] results;
+    private final long millis;
+
+    /**
+     * Scans photos in parallel.
+     *
+     * @param files the photos to scan
+     * @param imagingParams the parameters to parse EXIF meta data with
+     */
+    Preflight(final File[] files, final Map<String, Object> imagingParams) {
+        final long start = System.nanoTime();
+        this.results = Arrays.stream(files)
+            .parallel()
+            .map(file -> Preflight.scan(file, imagingParams))
+            .toArray(Preflight.Result[]::new);
+        this.millis = (System.nanoTime() - start) / 1000000L;
+    }
+
+    /**
+     * Gets the results of all scanned photos.
+     *
+     * @return the results in the order of the scanned files
+     */
+    final Preflight.Result[] getResults() {
+        return this.results;
+    }
+
+    /**
+     * Gets the wall clock time the scan has taken.
+     *
+     * @return the time in milliseconds
+     */
+    final long getMillis() {
+        return this.millis;
+    }
+
+    /**
+     * Counts the photos having any of the given problems.
+     *
+     * @param problems a combination of problems
+     * @return the count of photos having any of the problems
+     */
+    final int count(final int problems) {
+        int count = 0;
+        for (final Preflight.Result result : this.results)
+            if ((result.problems & problems) != 0)
+                count++;
+        return count;
+    }
+
+    /**
+     * Counts the valid photos larger than the given dimensions in any
+     * direction.
+     *
+     * @param width the width in pixels
+     * @param height the height in pixels
+     * @return the count of photos wider or higher
+     */
+    final int countLarger(final int width, final int height) {
+        int count = 0;
+        for (final Preflight.Result result : this.results)
+            if (result.isValid() &&
+                (result.width > width || result.height > height))
+                count++;
+        return count;
+    }
+
+    private static final Preflight.Result scan(
+        final File file,
+        final Map<String, Object> imagingParams) {
+        final Preflight.Result result = new Preflight.Result(file);
+        boolean exif = false;
+        try (final RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            final long length = raf.length();
+            if (length < 4 || raf.readUnsignedShort() != 0xFFD8) {
+                result.problems |= Preflight.NO_SOI;
+                return result;
+            }
+            // Search the EOI marker backwards, skipping any padding
+            {
+                final byte[] tail = new byte[(int)Math.min(
+                    length,
+                    Preflight.EOI_SEARCH_LENGTH
+                )];
+                raf.seek(length - tail.length);
+                raf.readFully(tail);
+                int i;
+                for (i = tail.length - 2;
+                     i >= 0 && !(tail[i] == (byte)0xFF && tail[i + 1] == (byte)0xD9);
+                     i--);
+                if (i < 0)
+                    result.problems |= Preflight.NO_EOI;
+            }
+            // Walk marker segments up to the start of scan
+            raf.seek(2L);
+            while (raf.getFilePointer() + 4 <= length &&
+                raf.readUnsignedByte() == 0xFF) {
+                int marker;
+                while ((marker = raf.readUnsignedByte()) == 0xFF); // Fill bytes
+                // Markers without a segment
+                if (marker == 0x01 || marker >= 0xD0 && marker <= 0xD8)
+                    continue;
+                if (marker == 0xD9 || marker == 0xDA)
+                    break;
+                final long segment = raf.getFilePointer();
+                final int segmentLength = raf.readUnsignedShort();
+                if (marker == 0xE1 && segmentLength >= 8 && !exif) {
+                    final byte[] identifier = new byte[6];
+                    raf.readFully(identifier);
+                    exif = Arrays.equals(identifier, Preflight.EXIF_IDENTIFIER);
+                } else if (marker >= 0xC0 && marker <= 0xCF &&
+                    marker != 0xC4 && marker != 0xC8 && marker != 0xCC) {
+                    // Start of frame: precision, height, width
+                    raf.readUnsignedByte();
+                    result.height = raf.readUnsignedShort();
+                    result.width = raf.readUnsignedShort();
+                }
+                raf.seek(segment + segmentLength);
+            }
+        } catch (IOException e) {
+            result.problems |= Preflight.UNREADABLE;
+            result.message = e.getLocalizedMessage() != null ?
+                e.getLocalizedMessage() :
+                e.getClass().getName();
+            return result;
+        }
+        if (result.width <= 0 || result.height <= 0)
+            result.problems |= Preflight.NO_FRAME;
+        if (!exif) {
+            result.problems |= Preflight.NO_EXIF;
+            return result;
+        }
+        try {
+            final ImageMetadata imageMetadata;
+            final TiffImageMetadata exifMetadata;
+            if (!((imageMetadata = Imaging.getMetadata(file, imagingParams)) instanceof JpegImageMetadata) ||
+                (exifMetadata = ((JpegImageMetadata)imageMetadata).getExif()) == null) {
+                result.problems |= Preflight.MALFORMED_EXIF;
+                return result;
+            }
+            if (exifMetadata.getGPS() == null)
+                result.problems |= Preflight.NO_GPS_LOCATION;
+            if (exifMetadata.getFieldValue(GpsTagConstants.GPS_TAG_GPS_DATE_STAMP) == null) {
+                result.problems |= Preflight.NO_GPS_TIME;
+                if (exifMetadata.getFieldValue(ExifTagConstants.EXIF_TAG_DATE_TIME_ORIGINAL) == null &&
+                    exifMetadata.getFieldValue(ExifTagConstants.EXIF_TAG_DATE_TIME_DIGITIZED) == null &&
+                    exifMetadata.getFieldValue(TiffTagConstants.TIFF_TAG_DATE_TIME) == null)
+                    result.problems |= Preflight.NO_TIME_STAMP;
+            }
+        } catch (ImageReadException | IOException | RuntimeException e) {
+            result.problems |= Preflight.MALFORMED_EXIF;
+            result.message = e.getLocalizedMessage();
+        }
+        return result;
+    }
+
+    /**
+     * The result of scanning a single photo.
+     */
+    static final class Result {
+        private final File file;
+        private int problems, width, height;
+        private String message;
+
+        private Result(final File file) {
+            this.file = file;
+        }
+
+        final File getFile() {
+            return this.file;
+        }
+
+        /**
+         * Gets the problems of the photo.
+         *
+         * @return a combination of {@code Preflight.NO_*} flags
+         */
+        final int getProblems() {
+            return this.problems;
+        }
+
+        /**
+         * Tests if the photo can be processed.
+         *
+         * @return {@code true} if the photo has no problem making it invalid,
+         * {@code false} otherwise
+         */
+        final boolean isValid() {
+            return (this.problems & Preflight.INVALID) == 0;
+        }
+
+        /**
+         * Gives a human readable description of the problems making the photo
+         * invalid.
+         *
+         * @return the problems of the photo
+         */
+        @Override
+        public final String toString() {
+            final StringBuilder sb = new StringBuilder();
+            if ((this.problems & Preflight.NO_SOI) != 0)
+                sb.append(Sequencer.m("Preflight.no.soi"));
+            if ((this.problems & Preflight.NO_EOI) != 0)
+                sb.append(Sequencer.m("Preflight.no.eoi"));
+            if ((this.problems & Preflight.NO_EXIF) != 0)
+                sb.append(Sequencer.m("Preflight.no.exif"));
+            if ((this.problems & Preflight.MALFORMED_EXIF) != 0)
+                sb.append(Sequencer.m("Preflight.malformed.exif"));
+            if ((this.problems & Preflight.NO_FRAME) != 0)
+                sb.append(Sequencer.m("Preflight.no.frame"));
+            if ((this.problems & Preflight.UNREADABLE) != 0)
+                sb.append(Sequencer.m("Preflight.unreadable"));
+            if (this.message != null)
+                sb.append(this.message);
+            return sb.toString().trim();
+        }
+    }
+}
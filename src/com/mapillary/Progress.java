@@ -0,0 +1,438 @@
+/*
+ * Copyright 2016 Mapillary AB, Sweden
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mapillary;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.imaging.ImageReadException;
+import org.apache.commons.imaging.ImageWriteException;
+import org.apache.commons.imaging.Imaging;
+import org.apache.commons.imaging.common.ImageMetadata;
+import org.apache.commons.imaging.common.RationalNumber;
+import org.apache.commons.imaging.formats.tiff.TiffImageMetadata;
+import org.apache.commons.imaging.formats.tiff.constants.GpsTagConstants;
+import org.apache.commons.imaging.formats.tiff.taginfos.TagInfo;
+import org.apache.commons.imaging.formats.tiff.write.TiffImageWriterLossy;
+import org.apache.commons.imaging.formats.tiff.write.TiffOutputDirectory;
+import org.apache.commons.imaging.formats.tiff.write.TiffOutputField;
+import org.apache.commons.imaging.formats.tiff.write.TiffOutputSet;
+
+/**
+ * A machine readable progress stream of a job in JSON Lines format, that is
+ * one JSON object per line. The stream starts with a {@code start} record and
+ * ends with an {@code end} record. In between, a {@code photo} record is
+ * written for each photo written, planned, skipped, or failed, with its input
+ * and output file, bytes, timings, resulting GPS location, direction, and
+ * time stamp, or its error, and a {@code progress} record with the count of
+ * photos done, the rate, and the estimated time remaining is written every
+ * second.<br>
+ * Records are queued without blocking and formatted and written by a
+ * background thread, so that the stages of a job never wait for the progress
+ * file. Only the GPS fields of the final EXIF meta data of a photo needed for
+ * its record are copied and serialized when the photo is submitted, because
+ * the pipeline owns the meta data afterwards. They are parsed for the
+ * resulting GPS values in the background. While the queue is full, photo
+ * records are dropped and only counted by the progress records, so that a
+ * slow progress file does not hold on to ever more memory. Once the progress
+ * file cannot be written anymore, records are dropped rather than queued.
+ *
+ * @author <a href="mailto:Jacob%20Wisor%20&lt;GITNE@noreply.users.github.com&gt;?subject=[com.mapillary.Progress]%20mkseq">Jacob Wisor</a>
+ *
+ * @see Sequencer.Options#PROGRESS_OPTION
+ */
+final class Progress implements Closeable {
+    /**
+     * The interval in milliseconds between progress records.
+     */
+    private static final long PROGRESS_MILLIS = 1000L;
+
+    /**
+     * The count of records queued at most.
+     */
+    private static final int QUEUE_CAPACITY = 4096;
+
+    /**
+     * The GPS fields of the final EXIF meta data written to photo records.
+     */
+    private static final TagInfo[] GPS_TAGS = {
+        GpsTagConstants.GPS_TAG_GPS_LATITUDE_REF,
+        GpsTagConstants.GPS_TAG_GPS_LATITUDE,
+        GpsTagConstants.GPS_TAG_GPS_LONGITUDE_REF,
+        GpsTagConstants.GPS_TAG_GPS_LONGITUDE,
+        GpsTagConstants.GPS_TAG_GPS_IMG_DIRECTION,
+        GpsTagConstants.GPS_TAG_GPS_DATE_STAMP,
+        GpsTagConstants.GPS_TAG_GPS_TIME_STAMP
+    };
+
+    private final Writer writer;
+    private final int total;
+    private final long startNanos;
+    private final BlockingQueue<Progress.Record> records =
+        new ArrayBlockingQueue<Progress.Record>(Progress.QUEUE_CAPACITY);
+    private final Map<File, byte[]> exifs = new ConcurrentHashMap<File, byte[]>();
+    private final AtomicInteger dropped = new AtomicInteger(),
+                                droppedFailed = new AtomicInteger();
+    private final Thread thread;
+    private int done, failed;
+    private volatile IOException failure;
+
+    /**
+     * Creates a progress file and starts writing it.
+     *
+     * @param file the progress file to write
+     * @param total the count of photos of the job, or {@code -1} if unknown
+     * @throws IOException if the progress file cannot be written
+     */
+    Progress(final File file, final int total) throws IOException {
+        this.writer = Files.newBufferedWriter(
+            file.toPath(),
+            StandardCharsets.UTF_8
+        );
+        this.total = total;
+        this.startNanos = System.nanoTime();
+        this.writer.write(String.format(
+            Locale.ROOT,
+            "{\"type\":\"start\",\"time\":\"%s\",\"total\":%s}\n",
+            Instant.now(),
+            total >= 0 ? Integer.toString(total) : "null"
+        ));
+        this.writer.flush();
+        (this.thread = new Thread(this::run, "mkseq-progress")).setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Records the GPS fields of the final EXIF meta data of a photo submitted
+     * for writing or planning. The fields are serialized right away, because
+     * they are shared with the meta data written by the pipeline.
+     *
+     * @param source the source photo file
+     * @param outputSet the EXIF meta data to be written
+     */
+    final void submitted(final File source, final TiffOutputSet outputSet) {
+        final TiffOutputDirectory gpsDirectory;
+        if (this.failure != null ||
+            (gpsDirectory = outputSet.getGPSDirectory()) == null)
+            return;
+        try {
+            final TiffOutputSet gpsOutputSet = new TiffOutputSet(outputSet.byteOrder);
+            final TiffOutputDirectory gpsOutputDirectory =
+                gpsOutputSet.getOrCreateGPSDirectory();
+            TiffOutputField field;
+            for (final TagInfo tagInfo : Progress.GPS_TAGS)
+                if ((field = gpsDirectory.findField(tagInfo)) != null)
+                    gpsOutputDirectory.add(field);
+            final ByteArrayOutputStream baos = new ByteArrayOutputStream(256);
+            new TiffImageWriterLossy(outputSet.byteOrder).write(baos, gpsOutputSet);
+            this.exifs.put(source, baos.toByteArray());
+        } catch (IOException | ImageWriteException e) {
+            // The photo record is written without GPS values
+        }
+    }
+
+    /**
+     * Records a photo written to the output directory.
+     *
+     * @param source the source photo file
+     * @param output the output photo file
+     * @param bytesRead the bytes read from {@code source}
+     * @param bytesWritten the bytes written to {@code output}
+     * @param readNanos the time spent reading in nanoseconds
+     * @param transformNanos the time spent resizing and rewriting the meta
+     * data in nanoseconds
+     * @param writeNanos the time spent writing in nanoseconds
+     */
+    final void written(
+        final File source,
+        final File output,
+        final long bytesRead,
+        final long bytesWritten,
+        final long readNanos,
+        final long transformNanos,
+        final long writeNanos) {
+        final Progress.Record record = new Progress.Record("written", source);
+        record.output = output;
+        record.bytesRead = bytesRead;
+        record.bytesWritten = bytesWritten;
+        record.readNanos = readNanos;
+        record.transformNanos = transformNanos;
+        record.writeNanos = writeNanos;
+        this.offer(record);
+    }
+
+    /**
+     * Records a photo added to the plan.
+     *
+     * @param source the source photo file
+     */
+    final void planned(final File source) {
+        this.offer(new Progress.Record("planned", source));
+    }
+
+    /**
+     * Records a photo skipped, because it has been written by a previous run.
+     *
+     * @param source the source photo file
+     */
+    final void skipped(final File source) {
+        this.offer(new Progress.Record("skipped", source));
+    }
+
+    /**
+     * Records a failed photo.
+     *
+     * @param source the source photo file
+     * @param message the reason of the failure
+     */
+    final void failed(final File source, final String message) {
+        final Progress.Record record = new Progress.Record("failed", source);
+        record.error = message;
+        this.offer(record);
+    }
+
+    /**
+     * Writes all queued records, a final progress record, and the end
+     * record, and closes the progress file.
+     *
+     * @throws IOException if the progress file cannot be written
+     */
+    @Override
+    public final void close() throws IOException {
+        try {
+            // Wait for room, since the end record must not be dropped
+            this.records.put(Progress.Record.END);
+            this.thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(e.getMessage());
+        } finally {
+            this.writer.close();
+        }
+        if (this.failure != null)
+            throw this.failure;
+    }
+
+    /**
+     * Queues a record, unless the progress file has failed, so that records
+     * do not pile up once nothing writes them anymore. A record is dropped
+     * and only counted if the queue is full.
+     *
+     * @param record the record to queue
+     */
+    private final void offer(final Progress.Record record) {
+        if (this.failure == null && !this.records.offer(record)) {
+            this.exifs.remove(record.source);
+            this.dropped.incrementAndGet();
+            if (record.error != null)
+                this.droppedFailed.incrementAndGet();
+        }
+    }
+
+    private final void run() {
+        try {
+            long next = System.nanoTime() +
+                TimeUnit.MILLISECONDS.toNanos(Progress.PROGRESS_MILLIS);
+            for (;;) {
+                final Progress.Record record = this.records.poll(
+                    Math.max(next - System.nanoTime(), 0L),
+                    TimeUnit.NANOSECONDS
+                );
+                if (record == Progress.Record.END)
+                    break;
+                if (record != null)
+                    this.writePhoto(record);
+                if (System.nanoTime() - next >= 0L) {
+                    this.writeProgress("progress");
+                    next += TimeUnit.MILLISECONDS.toNanos(Progress.PROGRESS_MILLIS);
+                }
+                // Flush whenever the queue has been drained
+                if (this.records.isEmpty())
+                    this.writer.flush();
+            }
+            this.writeProgress("progress");
+            this.writeProgress("end");
+            this.writer.flush();
+        } catch (IOException e) {
+            this.failure = e;
+        } catch (InterruptedException e) {
+            this.failure = new InterruptedIOException(e.getMessage());
+        }
+        // Release the records queued before the failure
+        if (this.failure != null) {
+            this.records.clear();
+            this.exifs.clear();
+        }
+    }
+
+    private final void writePhoto(
+        final Progress.Record record) throws IOException {
+        this.done++;
+        if (record.error != null)
+            this.failed++;
+        final StringBuilder sb = new StringBuilder(256);
+        sb.append("{\"type\":\"photo\",\"status\":\"").append(record.status)
+          .append("\",\"input\":");
+        Progress.quote(sb, record.source.getPath());
+        if (record.output != null) {
+            sb.append(",\"output\":");
+            Progress.quote(sb, record.output.getPath());
+            sb.append(String.format(
+                Locale.ROOT,
+                ",\"bytesRead\":%d,\"bytesWritten\":%d," +
+                "\"millis\":{\"read\":%.3f,\"transform\":%.3f,\"write\":%.3f}",
+                record.bytesRead,
+                record.bytesWritten,
+                record.readNanos / 1e6,
+                record.transformNanos / 1e6,
+                record.writeNanos / 1e6
+            ));
+        }
+        final byte[] exif;
+        if ((exif = this.exifs.remove(record.source)) != null)
+            Progress.appendGPS(sb, exif);
+        if (record.error != null) {
+            sb.append(",\"error\":");
+            Progress.quote(sb, record.error);
+        }
+        this.writer.write(sb.append("}\n").toString());
+    }
+
+    private final void writeProgress(final String type) throws IOException {
+        final long elapsedNanos = System.nanoTime() - this.startNanos;
+        final int dropped = this.dropped.get(),
+                  done = this.done + dropped;
+        final double rate = elapsedNanos > 0L ?
+            done / (elapsedNanos / 1e9) :
+            0.0;
+        this.writer.write(String.format(
+            Locale.ROOT,
+            "{\"type\":\"%s\",\"done\":%d,\"failed\":%d,\"dropped\":%d," +
+            "\"total\":%s,\"elapsedMillis\":%d,\"photosPerSecond\":%.2f," +
+            "\"etaMillis\":%s}\n",
+            type,
+            done,
+            this.failed + this.droppedFailed.get(),
+            dropped,
+            this.total >= 0 ? Integer.toString(this.total) : "null",
+            TimeUnit.NANOSECONDS.toMillis(elapsedNanos),
+            rate,
+            this.total >= 0 && rate > 0.0 ?
+                Long.toString((long)(Math.max(this.total - done, 0) / rate * 1000.0)) :
+                "null"
+        ));
+    }
+
+    /**
+     * Appends the resulting GPS location, direction, and time stamp.
+     *
+     * @param sb the JSON object to append to
+     * @param exif the serialized final EXIF meta data
+     */
+    private static final void appendGPS(final StringBuilder sb, final byte[] exif) {
+        try {
+            final ImageMetadata imageMetadata;
+            if (!((imageMetadata = Imaging.getMetadata(exif)) instanceof TiffImageMetadata))
+                return;
+            final TiffImageMetadata tiffImageMetadata =
+                (TiffImageMetadata)imageMetadata;
+            final TiffImageMetadata.GPSInfo gpsInfo;
+            if ((gpsInfo = tiffImageMetadata.getGPS()) != null)
+                sb.append(String.format(
+                    Locale.ROOT,
+                    ",\"latitude\":%.7f,\"longitude\":%.7f",
+                    gpsInfo.getLatitudeAsDegreesNorth(),
+                    gpsInfo.getLongitudeAsDegreesEast()
+                ));
+            final RationalNumber direction;
+            if ((direction = tiffImageMetadata.getFieldValue(
+                    GpsTagConstants.GPS_TAG_GPS_IMG_DIRECTION)) != null)
+                sb.append(String.format(
+                    Locale.ROOT,
+                    ",\"direction\":%.3f",
+                    direction.doubleValue()
+                ));
+            final String[] date;
+            final RationalNumber[] time;
+            if ((date = tiffImageMetadata.getFieldValue(
+                    GpsTagConstants.GPS_TAG_GPS_DATE_STAMP)) != null &&
+                date.length > 0 &&
+                (time = tiffImageMetadata.getFieldValue(
+                    GpsTagConstants.GPS_TAG_GPS_TIME_STAMP)) != null) {
+                final Instant instant =
+                    Sequencer.gpsDateTimeToDate(date[0], time).toInstant();
+                sb.append(",\"time\":\"").append(instant).append('"');
+            }
+        } catch (ImageReadException | IOException | RuntimeException e) {
+            // Leave out any GPS values which cannot be read
+        }
+    }
+
+    /**
+     * Appends a string as a JSON string literal. Quotes, backslashes, and
+     * control characters are escaped.
+     *
+     * @param sb the JSON text to append to
+     * @param s the string to quote
+     */
+    static final void quote(final StringBuilder sb, final String s) {
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            final char c = s.charAt(i);
+            if (c == '"' || c == '\\')
+                sb.append('\\').append(c);
+            else if (c < 0x20)
+                sb.append(String.format((Locale)null, "\\u%04x", (int)c));
+            else sb.append(c);
+        }
+        sb.append('"');
+    }
+
+    /**
+     * A queued record of a photo.
+     */
+    private static final class Record {
+        /**
+         * Marks the end of the queue.
+         */
+        private static final Progress.Record END = new Progress.Record(null, null);
+
+        private final String status;
+        private final File source;
+        private File output;
+        private long bytesRead, bytesWritten,
+                     readNanos, transformNanos, writeNanos;
+        private String error;
+
+        private Record(final String status, final File source) {
+            this.status = status;
+            this.source = source;
+        }
+    }
+}
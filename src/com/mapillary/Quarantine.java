@@ -0,0 +1,150 @@
+/*
+ * Copyright 2016 Mapillary AB, Sweden
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mapillary;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The photos of a job which have failed to be read or written. A failed
+ * photo is reported on the job's error stream, listed in the quarantine
+ * report in the output directory, and excluded from the sequence, while all
+ * other photos are processed as usual. Source files are left in place.<br>
+ * The report is created on the first failure of a job and replaces any
+ * report of a previous job. Each line holds the path of a source file and the
+ * error it has failed with, separated by a tab. A photo is quarantined only
+ * once, however often it fails.
+ *
+ * @author <a href="mailto:Jacob%20Wisor%20&lt;GITNE@noreply.users.github.com&gt;?subject=[com.mapillary.Quarantine]%20mkseq">Jacob Wisor</a>
+ *
+ * @see Pipeline
+ */
+final class Quarantine implements Closeable {
+    /**
+     * The name of the quarantine report file in the output directory.
+     */
+    static final String FILE_NAME = ".mkseq-quarantine";
+
+    private final File file;
+    private final PrintStream err;
+    private final Progress progress;
+    private final Set<File> sources = new HashSet<File>();
+    private Writer writer;
+    private int size;
+
+    /**
+     * Constructs an empty quarantine. Any report of a previous job is removed.
+     *
+     * @param outputDir the output directory to write the report to
+     * @param err the stream to report failures on
+     * @param progress the progress stream to record failures in, or
+     * {@code null}
+     * @throws IOException if a previous report cannot be removed
+     */
+    Quarantine(
+        final File outputDir,
+        final PrintStream err,
+        final Progress progress) throws IOException {
+        Files.deleteIfExists((this.file = new File(
+            outputDir,
+            Quarantine.FILE_NAME
+        )).toPath());
+        this.err = err;
+        this.progress = progress;
+    }
+
+    /**
+     * Quarantines a photo.
+     *
+     * @param source the source file of the failed photo
+     * @param t the reason of the failure
+     */
+    final void add(final File source, final Throwable t) {
+        this.add(
+            source,
+            t.getLocalizedMessage() != null ?
+                t.getLocalizedMessage() :
+                t.toString()
+        );
+    }
+
+    /**
+     * Quarantines a photo.
+     *
+     * @param source the source file of the failed photo
+     * @param message the reason of the failure
+     */
+    final synchronized void add(final File source, final String message) {
+        if (!this.sources.add(source))
+            return;
+        this.size++;
+        this.err.println(
+            Sequencer.m(
+                "Sequencer.error.quarantined",
+                source.getPath(),
+                message
+            )
+        );
+        if (this.progress != null)
+            this.progress.failed(source, message);
+        try {
+            if (this.writer == null)
+                this.writer = Files.newBufferedWriter(
+                    this.file.toPath(),
+                    StandardCharsets.UTF_8
+                );
+            this.writer.write(source.getAbsolutePath());
+            this.writer.write('\t');
+            this.writer.write(message.replace('\n', ' '));
+            this.writer.write('\n');
+            this.writer.flush();
+        } catch (IOException e) {
+            // The failure has been reported on the error stream already
+            this.err.println(e.getLocalizedMessage());
+        }
+    }
+
+    /**
+     * Gets the count of quarantined photos.
+     *
+     * @return the count of photos failed so far
+     */
+    final synchronized int size() {
+        return this.size;
+    }
+
+    /**
+     * Gets the quarantine report file.
+     *
+     * @return the report file, which exists only if any photo has failed
+     */
+    final File getFile() {
+        return this.file;
+    }
+
+    @Override
+    public final synchronized void close() throws IOException {
+        if (this.writer != null)
+            this.writer.close();
+    }
+}
@@ -0,0 +1,636 @@
+/*
+ * Copyright 2016 Mapillary AB, Sweden
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mapillary;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A separable Catmull-Rom scaler working directly on the raster data of
+ * decoded photos. The rows of the scaled image are split into bands, which are
+ * scaled in parallel on the common fork join pool. Each band reads the
+ * source rows it covers into a buffer of its own, and then filters each of
+ * its rows first vertically from the buffer, and then horizontally. The
+ * vertical filter runs over whole source rows, so that most of the work is
+ * done on contiguous samples. The filter is a Catmull-Rom cubic widened by
+ * the scale factor, so that downscaled photos do not alias. Its output thus
+ * differs from that of {@code Graphics2D.drawImage} with bicubic
+ * interpolation, which samples only the four nearest source pixels of each
+ * target pixel however much a photo is downscaled.<br>
+ * The vertical filter runs on a {@link Scaler.Kernel}, which is vectorized by
+ * the Vector API on Java VMs running with the {@code jdk.incubator.vector}
+ * module. The vectorized kernel is looked up reflectively, so that
+ * {@code mkseq} still builds and runs on Java 8 with the scalar kernel.<br>
+ * Only opaque images with 8 bit samples, either packed into integers or
+ * interleaved in bytes, can be scaled. This covers the images decoded from
+ * JPEG photos.
+ *
+ * @author <a href="mailto:Jacob%20Wisor%20&lt;GITNE@noreply.users.github.com&gt;?subject=[com.mapillary.Scaler]%20mkseq">Jacob Wisor</a>
+ *
+ * @see Pipeline
+ */
+final class Scaler {
+    /**
+     * The scalar kernel, which runs on any Java VM.
+     */
+    static final Scaler.Kernel SCALAR = (rows, offsets, weights, weightOffset, taps, row, length) -> {
+        final float weight = weights[weightOffset];
+        int offset = offsets[0];
+        for (int i = 0; i < length; i++)
+            row[i] = weight * rows[offset + i];
+        for (int k = 1; k < taps; k++) {
+            final float w = weights[weightOffset + k];
+            offset = offsets[k];
+            for (int i = 0; i < length; i++)
+                row[i] += w * rows[offset + i];
+        }
+    };
+
+    /**
+     * The fastest kernel available on this Java VM.
+     */
+    static final Scaler.Kernel KERNEL = Scaler.loadKernel();
+
+    /**
+     * The height in rows of the bands scaled in parallel.
+     */
+    private static final int BAND_HEIGHT = 64;
+
+    private Scaler() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Looks up the vectorized kernel. It is available only if it has been
+     * compiled by Java 16 or later, and if this Java VM runs with the
+     * {@code jdk.incubator.vector} module.
+     *
+     * @return the vectorized kernel, or the scalar kernel if it is not
+     * available
+     */
+    private static final Scaler.Kernel loadKernel() {
+        try {
+            return (Scaler.Kernel)Class.forName(
+                "com.mapillary.VectorScalerKernel"
+            ).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return Scaler.SCALAR;
+        }
+    }
+
+    /**
+     * Scales an image into the upper left rectangle of another image of the
+     * same color model by the widened Catmull-Rom filter.
+     *
+     * @param source the image to scale
+     * @param target the image to scale into
+     * @param width the width of the rectangle to scale into
+     * @param height the height of the rectangle to scale into
+     * @return {@code true} if scaled, or {@code false} if the images have no
+     * supported raster, and have been left untouched
+     */
+    static final boolean scale(
+        final BufferedImage source,
+        final BufferedImage target,
+        final int width,
+        final int height) {
+        return Scaler.scale(source, target, width, height, Scaler.KERNEL);
+    }
+
+    /**
+     * Scales an image into the upper left rectangle of another image of the
+     * same color model on a particular kernel.
+     *
+     * @param source the image to scale
+     * @param target the image to scale into
+     * @param width the width of the rectangle to scale into
+     * @param height the height of the rectangle to scale into
+     * @param kernel the kernel to filter vertically with
+     * @return {@code true} if scaled, or {@code false} if the images have no
+     * supported raster, and have been left untouched
+     */
+    static final boolean scale(
+        final BufferedImage source,
+        final BufferedImage target,
+        final int width,
+        final int height,
+        final Scaler.Kernel kernel) {
+        final Scaler.Raster sourceRaster, targetRaster;
+        if ((sourceRaster = Scaler.Raster.of(source)) == null ||
+            (targetRaster = Scaler.Raster.of(target)) == null ||
+            sourceRaster.bands != targetRaster.bands ||
+            width <= 0 || width > target.getWidth() ||
+            height <= 0 || height > target.getHeight())
+            return false;
+        new Scaler.Band(
+            new Scaler.Job(
+                sourceRaster,
+                targetRaster,
+                source.getWidth(),
+                source.getHeight(),
+                width,
+                height,
+                kernel
+            ),
+            0,
+            height
+        ).invoke();
+        return true;
+    }
+
+    /**
+     * Computes the Catmull-Rom cubic.
+     *
+     * @param x the distance from the center
+     * @return the weight at {@code x}
+     */
+    private static final double cubic(double x) {
+        if ((x = Math.abs(x)) < 1.0)
+            return (1.5 * x - 2.5) * x * x + 1.0;
+        if (x < 2.0)
+            return ((-0.5 * x + 2.5) * x - 4.0) * x + 2.0;
+        return 0.0;
+    }
+
+    /**
+     * Gets the count of taps of the filter along an axis.
+     *
+     * @param sourceLength the length of the source axis in pixels
+     * @param targetLength the length of the target axis in pixels
+     * @return the count of taps
+     */
+    private static final int getTaps(
+        final int sourceLength,
+        final int targetLength) {
+        return (int)Math.ceil(
+            4.0 * Math.max((double)sourceLength / targetLength, 1.0)
+        ) + 1;
+    }
+
+    /**
+     * Computes the filter along an axis, that is the first source pixel and
+     * the normalized weight of each tap of each target pixel. The first source
+     * pixel may lie beyond the edges of the source axis.
+     *
+     * @param sourceLength the length of the source axis in pixels
+     * @param targetLength the length of the target axis in pixels
+     * @param taps the count of taps
+     * @param firsts receives the first source pixel of each target pixel
+     * @param weights receives the weights, {@code taps} per target pixel
+     */
+    private static final void filter(
+        final int sourceLength,
+        final int targetLength,
+        final int taps,
+        final int[] firsts,
+        final float[] weights) {
+        final double ratio = (double)sourceLength / targetLength,
+                     scale = Math.max(ratio, 1.0),
+                     radius = 2.0 * scale;
+        final double[] w = new double[taps];
+        for (int i = 0; i < targetLength; i++) {
+            final double center = (i + 0.5) * ratio - 0.5;
+            final int first;
+            firsts[i] = first = (int)Math.floor(center - radius) + 1;
+            double sum = 0.0;
+            for (int k = 0; k < taps; k++)
+                sum += w[k] = Scaler.cubic((first + k - center) / scale);
+            for (int k = 0; k < taps; k++)
+                weights[i * taps + k] = (float)(w[k] / sum);
+        }
+    }
+
+    /**
+     * The vertical filter of a row of a band.
+     */
+    @FunctionalInterface
+    static interface Kernel {
+        /**
+         * Filters a row from the source rows of a band, that
+         * is {@code row[i] = sum(weights[weightOffset + k] * rows[offsets[k] + i])}
+         * over all taps {@code k}.
+         *
+         * @param rows the source rows of the band
+         * @param offsets the offset into {@code rows} of the row of each tap
+         * @param weights the weights
+         * @param weightOffset the offset of the weight of the first tap
+         * @param taps the count of taps
+         * @param row receives the filtered row
+         * @param length the length of the row in samples
+         */
+        void filter(
+            float[] rows,
+            int[] offsets,
+            float[] weights,
+            int weightOffset,
+            int taps,
+            float[] row,
+            int length);
+    }
+
+    /**
+     * The raster data of an image with 8 bit samples, either packed into
+     * integers or interleaved in bytes.
+     */
+    private static final class Raster {
+        private final int[] ints;
+        private final byte[] bytes;
+        private final int offset, scanlineStride, pixelStride, bands;
+        // Bit shifts of packed, or byte offsets of interleaved samples
+        private final int[] sampleOffsets;
+
+        private Raster(
+            final int[] ints,
+            final byte[] bytes,
+            final int offset,
+            final int scanlineStride,
+            final int pixelStride,
+            final int[] sampleOffsets) {
+            this.ints = ints;
+            this.bytes = bytes;
+            this.offset = offset;
+            this.scanlineStride = scanlineStride;
+            this.pixelStride = pixelStride;
+            this.bands = (this.sampleOffsets = sampleOffsets).length;
+        }
+
+        /**
+         * Gets the raster data of an image.
+         *
+         * @param image the image
+         * @return the raster data, or {@code null} if the image has alpha or
+         * an unsupported raster
+         */
+        private static final Scaler.Raster of(final BufferedImage image) {
+            final ColorModel colorModel;
+            if ((colorModel = image.getColorModel()).hasAlpha())
+                return null;
+            final WritableRaster raster = image.getRaster();
+            final SampleModel sampleModel = raster.getSampleModel();
+            final DataBuffer dataBuffer;
+            if ((dataBuffer = raster.getDataBuffer()).getNumBanks() != 1)
+                return null;
+            final int x = -raster.getSampleModelTranslateX(),
+                      y = -raster.getSampleModelTranslateY();
+            if (dataBuffer instanceof DataBufferInt &&
+                sampleModel instanceof SinglePixelPackedSampleModel &&
+                colorModel instanceof DirectColorModel) {
+                final SinglePixelPackedSampleModel packed =
+                    (SinglePixelPackedSampleModel)sampleModel;
+                final int[] masks = packed.getBitMasks(),
+                            shifts = new int[masks.length];
+                for (int b = 0; b < masks.length; b++)
+                    if (masks[b] >>> (shifts[b] = Integer.numberOfTrailingZeros(masks[b])) != 0xFF)
+                        return null;
+                return new Scaler.Raster(
+                    ((DataBufferInt)dataBuffer).getData(),
+                    null,
+                    dataBuffer.getOffset() + packed.getOffset(x, y),
+                    packed.getScanlineStride(),
+                    1,
+                    shifts
+                );
+            }
+            if (dataBuffer instanceof DataBufferByte &&
+                sampleModel instanceof PixelInterleavedSampleModel &&
+                colorModel instanceof ComponentColorModel) {
+                final PixelInterleavedSampleModel interleaved =
+                    (PixelInterleavedSampleModel)sampleModel;
+                for (int b = interleaved.getNumBands() - 1; b >= 0; b--)
+                    if (interleaved.getSampleSize(b) != 8)
+                        return null;
+                return new Scaler.Raster(
+                    null,
+                    ((DataBufferByte)dataBuffer).getData(),
+                    dataBuffer.getOffset() +
+                        y * interleaved.getScanlineStride() +
+                        x * interleaved.getPixelStride(),
+                    interleaved.getScanlineStride(),
+                    interleaved.getPixelStride(),
+                    interleaved.getBandOffsets()
+                );
+            }
+            return null;
+        }
+
+        /**
+         * Reads the samples of a row, in band order per pixel.
+         *
+         * @param y the row
+         * @param width the count of pixels to read
+         * @param row receives the samples
+         * @param rowOffset the offset of the first sample in {@code row}
+         */
+        private final void read(
+            final int y,
+            final int width,
+            final float[] row,
+            final int rowOffset) {
+            final int bands = this.bands;
+            final int[] sampleOffsets = this.sampleOffsets;
+            int i = this.offset + y * this.scanlineStride, s = rowOffset;
+            // Photos are mostly RGB, read their bands at once
+            if (this.ints != null) {
+                final int[] ints = this.ints;
+                if (bands == 3) {
+                    final int shift0 = sampleOffsets[0],
+                              shift1 = sampleOffsets[1],
+                              shift2 = sampleOffsets[2];
+                    for (int x = 0; x < width; x++) {
+                        final int pixel = ints[i++];
+                        row[s++] = pixel >>> shift0 & 0xFF;
+                        row[s++] = pixel >>> shift1 & 0xFF;
+                        row[s++] = pixel >>> shift2 & 0xFF;
+                    }
+                    return;
+                }
+                for (int x = 0; x < width; x++) {
+                    final int pixel = ints[i++];
+                    for (int b = 0; b < bands; b++)
+                        row[s++] = pixel >>> sampleOffsets[b] & 0xFF;
+                }
+                return;
+            }
+            final byte[] bytes = this.bytes;
+            final int pixelStride = this.pixelStride;
+            if (bands == 3) {
+                final int offset0 = sampleOffsets[0],
+                          offset1 = sampleOffsets[1],
+                          offset2 = sampleOffsets[2];
+                for (int x = 0; x < width; x++, i += pixelStride) {
+                    row[s++] = bytes[i + offset0] & 0xFF;
+                    row[s++] = bytes[i + offset1] & 0xFF;
+                    row[s++] = bytes[i + offset2] & 0xFF;
+                }
+                return;
+            }
+            for (int x = 0; x < width; x++, i += pixelStride)
+                for (int b = 0; b < bands; b++)
+                    row[s++] = bytes[i + sampleOffsets[b]] & 0xFF;
+        }
+
+        /**
+         * Writes the samples of a row, rounded and clamped to 8 bits.
+         *
+         * @param y the row
+         * @param width the count of pixels to write
+         * @param row the samples, in band order per pixel
+         */
+        private final void write(
+            final int y,
+            final int width,
+            final float[] row) {
+            final int bands = this.bands;
+            final int[] sampleOffsets = this.sampleOffsets;
+            int i = this.offset + y * this.scanlineStride, s = 0;
+            if (this.ints != null) {
+                final int[] ints = this.ints;
+                if (bands == 3) {
+                    final int shift0 = sampleOffsets[0],
+                              shift1 = sampleOffsets[1],
+                              shift2 = sampleOffsets[2];
+                    for (int x = 0; x < width; x++)
+                        ints[i++] = Scaler.Raster.clamp(row[s++]) << shift0 |
+                            Scaler.Raster.clamp(row[s++]) << shift1 |
+                            Scaler.Raster.clamp(row[s++]) << shift2;
+                    return;
+                }
+                for (int x = 0; x < width; x++) {
+                    int pixel = 0;
+                    for (int b = 0; b < bands; b++)
+                        pixel |= Scaler.Raster.clamp(row[s++]) << sampleOffsets[b];
+                    ints[i++] = pixel;
+                }
+                return;
+            }
+            final byte[] bytes = this.bytes;
+            final int pixelStride = this.pixelStride;
+            if (bands == 3) {
+                final int offset0 = sampleOffsets[0],
+                          offset1 = sampleOffsets[1],
+                          offset2 = sampleOffsets[2];
+                for (int x = 0; x < width; x++, i += pixelStride) {
+                    bytes[i + offset0] = (byte)Scaler.Raster.clamp(row[s++]);
+                    bytes[i + offset1] = (byte)Scaler.Raster.clamp(row[s++]);
+                    bytes[i + offset2] = (byte)Scaler.Raster.clamp(row[s++]);
+                }
+                return;
+            }
+            for (int x = 0; x < width; x++, i += pixelStride)
+                for (int b = 0; b < bands; b++)
+                    bytes[i + sampleOffsets[b]] = (byte)Scaler.Raster.clamp(row[s++]);
+        }
+
+        private static final int clamp(final float sample) {
+            return (int)Math.min(Math.max(sample + 0.5f, 0.0f), 255.0f);
+        }
+    }
+
+    /**
+     * The filters and rasters shared by all bands of a scaled image.
+     */
+    private static final class Job {
+        private final Scaler.Raster source, target;
+        private final int sourceWidth, sourceHeight, width, bands,
+                          xTaps, yTaps, rowLength;
+        private final int[] xStarts, yFirsts;
+        private final float[] xWeights, yWeights;
+        private final Scaler.Kernel kernel;
+
+        private Job(
+            final Scaler.Raster source,
+            final Scaler.Raster target,
+            final int sourceWidth,
+            final int sourceHeight,
+            final int width,
+            final int height,
+            final Scaler.Kernel kernel) {
+            this.source = source;
+            this.target = target;
+            this.sourceWidth = sourceWidth;
+            this.sourceHeight = sourceHeight;
+            this.width = width;
+            this.bands = source.bands;
+            this.kernel = kernel;
+            Scaler.filter(
+                sourceWidth,
+                width,
+                this.xTaps = Scaler.getTaps(sourceWidth, width),
+                this.xStarts = new int[width],
+                this.xWeights = new float[width * this.xTaps]
+            );
+            // Source rows are padded by the count of taps on either side, so
+            // that the taps of each target pixel are contiguous samples
+            this.rowLength = (sourceWidth + 2 * this.xTaps) * this.bands;
+            for (int i = width - 1; i >= 0; i--)
+                this.xStarts[i] = (this.xStarts[i] + this.xTaps) * this.bands;
+            Scaler.filter(
+                sourceHeight,
+                height,
+                this.yTaps = Scaler.getTaps(sourceHeight, height),
+                this.yFirsts = new int[height],
+                this.yWeights = new float[height * this.yTaps]
+            );
+        }
+
+        /**
+         * Gets the source row of a tap, clamped to the edges.
+         *
+         * @param y the target row
+         * @param k the tap
+         * @return the source row
+         */
+        private final int getRow(final int y, final int k) {
+            final int row;
+            return (row = this.yFirsts[y] + k) < 0 ?
+                0 :
+                row >= this.sourceHeight ? this.sourceHeight - 1 : row;
+        }
+    }
+
+    /**
+     * A band of rows of a scaled image, split into halves as long as it is
+     * higher than {@link #BAND_HEIGHT}.
+     */
+    private static final class Band extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final transient Scaler.Job job;
+        private final int first, last;
+
+        private Band(final Scaler.Job job, final int first, final int last) {
+            this.job = job;
+            this.first = first;
+            this.last = last;
+        }
+
+        @Override
+        protected final void compute() {
+            if (this.last - this.first > Scaler.BAND_HEIGHT) {
+                // Split at a band boundary
+                final int middle = this.first +
+                    (this.last - this.first + 2 * Scaler.BAND_HEIGHT - 1) /
+                    (2 * Scaler.BAND_HEIGHT) * Scaler.BAND_HEIGHT;
+                ForkJoinTask.invokeAll(
+                    new Scaler.Band(this.job, this.first, middle),
+                    new Scaler.Band(this.job, middle, this.last)
+                );
+                return;
+            }
+            this.scale();
+        }
+
+        private final void scale() {
+            final Scaler.Job job = this.job;
+            final int yTaps = job.yTaps,
+                      rowLength = job.rowLength;
+            // The source rows of a target row are held in a ring, in which
+            // each source row is read only once
+            final float[] rows = new float[yTaps * rowLength],
+                          column = new float[rowLength],
+                          row = new float[job.width * job.bands];
+            final int[] offsets = new int[yTaps];
+            for (int y = this.first, next = job.getRow(y, 0); y < this.last; y++) {
+                for (final int last = job.getRow(y, yTaps - 1); next <= last; next++)
+                    this.read(next, rows, next % yTaps * rowLength);
+                for (int k = 0; k < yTaps; k++)
+                    offsets[k] = job.getRow(y, k) % yTaps * rowLength;
+                job.kernel.filter(
+                    rows,
+                    offsets,
+                    job.yWeights,
+                    y * yTaps,
+                    yTaps,
+                    column,
+                    rowLength
+                );
+                this.filter(column, row);
+                job.target.write(y, job.width, row);
+            }
+        }
+
+        /**
+         * Reads a source row and pads it with its edge pixels.
+         *
+         * @param y the source row
+         * @param rows the ring of source rows
+         * @param offset the offset of the row in {@code rows}
+         */
+        private final void read(
+            final int y,
+            final float[] rows,
+            final int offset) {
+            final Scaler.Job job = this.job;
+            final int bands = job.bands,
+                      pad = job.xTaps * bands,
+                      right = offset + pad + job.sourceWidth * bands;
+            job.source.read(y, job.sourceWidth, rows, offset + pad);
+            for (int i = 0; i < pad; i += bands) {
+                System.arraycopy(rows, offset + pad, rows, offset + i, bands);
+                System.arraycopy(rows, right - bands, rows, right + i, bands);
+            }
+        }
+
+        /**
+         * Filters a vertically filtered row horizontally.
+         *
+         * @param column the vertically filtered source row, padded
+         * @param row receives the target row
+         */
+        private final void filter(final float[] column, final float[] row) {
+            final Scaler.Job job = this.job;
+            final int bands = job.bands,
+                      width = job.width,
+                      taps = job.xTaps;
+            final int[] starts = job.xStarts;
+            final float[] weights = job.xWeights;
+            // Photos are mostly RGB, filter their bands at once
+            if (bands == 3) {
+                for (int x = 0, t = 0, r = 0; x < width; x++) {
+                    float r0 = 0.0f, r1 = 0.0f, r2 = 0.0f;
+                    for (int k = 0, i = starts[x]; k < taps; k++, i += 3) {
+                        final float w = weights[t++];
+                        r0 += w * column[i];
+                        r1 += w * column[i + 1];
+                        r2 += w * column[i + 2];
+                    }
+                    row[r++] = r0;
+                    row[r++] = r1;
+                    row[r++] = r2;
+                }
+                return;
+            }
+            for (int x = 0, t = 0, r = 0; x < width; x++, t += taps)
+                for (int b = 0; b < bands; b++) {
+                    float sum = 0.0f;
+                    for (int k = 0, i = starts[x] + b; k < taps; k++, i += bands)
+                        sum += weights[t + k] * column[i];
+                    row[r++] = sum;
+                }
+        }
+    }
+}
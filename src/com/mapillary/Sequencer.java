@@ -15,48 +15,49 @@
  */
 package com.mapillary;
 
-import java.awt.FileDialog;
-import java.awt.Frame;
-import java.awt.Graphics2D;
-import java.awt.GraphicsEnvironment;
-import java.awt.RenderingHints;
-import java.awt.Toolkit;
-import java.awt.image.BufferedImage;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.PrintStream;
 import java.nio.ByteOrder;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
 import java.text.MessageFormat;
 import java.text.NumberFormat;
 import java.text.ParseException;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.time.format.FormatStyle;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.ResourceBundle;
+import java.util.Set;
 import java.util.TimeZone;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
-import javax.imageio.IIOImage;
-import javax.imageio.ImageIO;
-import javax.imageio.ImageWriteParam;
-import javax.imageio.ImageWriter;
-import javax.imageio.stream.FileImageOutputStream;
-import javax.swing.JFileChooser;
-import javax.swing.UIManager;
-import javax.swing.UnsupportedLookAndFeelException;
+import javax.management.JMException;
 import org.apache.commons.imaging.ImageReadException;
 import org.apache.commons.imaging.ImageWriteException;
 import org.apache.commons.imaging.Imaging;
 import org.apache.commons.imaging.ImagingConstants;
+import org.apache.commons.imaging.common.ImageMetadata;
 import org.apache.commons.imaging.common.RationalNumber;
 import org.apache.commons.imaging.formats.jpeg.JpegImageMetadata;
-import org.apache.commons.imaging.formats.jpeg.exif.ExifRewriter;
 import org.apache.commons.imaging.formats.tiff.TiffDirectory;
 import org.apache.commons.imaging.formats.tiff.TiffImageMetadata;
 import org.apache.commons.imaging.formats.tiff.constants.GpsTagConstants;
@@ -98,14 +99,48 @@ public final class Sequencer {
 
             public static final TimeZone UTC_TIME_ZONE = TimeZone.getTimeZone("UTC");
 
-    private static ResourceBundle bundle;
+    /**
+     * Exit status of a job which has written all photos.
+     */
+    public static final int EXIT_SUCCESS = 0;
 
-    private static ExifRewriter exifRewriter;
+    /**
+     * Exit status of a job which has written all photos except quarantined
+     * photos.
+     *
+     * @see Quarantine
+     */
+    public static final int EXIT_QUARANTINE = 3;
+
+    /**
+     * The time in milliseconds the length and modification time of an
+     * arriving photo must not change before it is admitted to a watched
+     * sequence. Cameras write photos piecewise while offloading.
+     *
+     * @see Sequencer.Options#WATCH_OPTION
+     */
+    private static final long WATCH_SETTLE_MILLIS = 2000L;
+
+    /**
+     * The time in milliseconds after which a watched sequence ends if no
+     * photos arrive.
+     *
+     * @see Sequencer.Options#WATCH_OPTION
+     */
+    private static final long WATCH_IDLE_MILLIS = 60000L;
+
+    /**
+     * The count of photos whose meta data is read at once while streaming a
+     * sequence. Meta data is held only for the photos of a chunk and the
+     * photos required to smooth and normalize them.
+     */
+    private static final int STREAM_CHUNK = 256;
 
     /**
      * Holds parameters for reading and writing image files. Its basic purpose
      * is to disable {@linkplain ImagingConstants#PARAM_KEY_READ_THUMBNAILS
-     * reading contained thumbnails}.
+     * reading contained thumbnails}. Parameters are held per job, so that
+     * options of one job do not affect any other job.
      *
      * @see Imaging#getBufferedImage(org.apache.commons.imaging.common.bytesource.ByteSource, java.util.Map)
      * @see Imaging#getBufferedImage(File, java.util.Map)
@@ -133,74 +168,213 @@ public final class Sequencer {
      * @see ImagingConstants#PARAM_KEY_VERBOSE
      * @see ImagingConstants#PARAM_KEY_XMP_XML
      */
-    private static final HashMap<String, Object> IMAGING_PARAMS = new HashMap<String, Object>(2);
+    private final HashMap<String, Object> imagingParams = new HashMap<String, Object>(2);
 
-    static final Sequencer.Options OPTIONS = new Sequencer.Options();
+    /**
+     * The options and any pertaining values of this job.
+     */
+    private final Sequencer.Options options = new Sequencer.Options();
 
-    static {
-        Sequencer.IMAGING_PARAMS.put(
-            ImagingConstants.PARAM_KEY_READ_THUMBNAILS,
-            Boolean.FALSE
-        );
-    }
+    /**
+     * The streams to print any output and errors of this job to.
+     */
+    private final PrintStream out, err;
+
+    /**
+     * The directory to resolve relative paths on the command line against.
+     */
+    private final File workingDir;
+
+    /**
+     * Whether input files and the output directory may be selected by dialogs
+     * if missing on the command line.
+     */
+    private final boolean interactive;
+
+    /**
+     * The statistics of the stages of this job, measuring nothing unless the
+     * {@code --stats} or the {@code --jfr} option is set.
+     *
+     * @see Sequencer.Options#STATS_OPTION
+     * @see Sequencer.Options#JFR_OPTION
+     */
+    private Stats stats = Stats.DISABLED;
+
+    /**
+     * The machine readable progress stream of this job, or {@code null}
+     * unless the {@code --progress} option is set.
+     *
+     * @see Sequencer.Options#PROGRESS_OPTION
+     */
+    private Progress progress;
+
+    /**
+     * The JMX monitor of this job, or {@code null} unless the {@code --jmx}
+     * option is set.
+     *
+     * @see Sequencer.Options#JMX_OPTION
+     */
+    private Monitor monitor;
+
+    /**
+     * The verbose output of this job, or {@code null} unless the {@code -v}
+     * option is set.
+     *
+     * @see Sequencer.Options#VERBOSE_OPTION
+     */
+    private VerboseLog verboseLog;
+
+    /**
+     * The track store of the sequence of this job, or {@code null} unless the
+     * {@code --track-store} option is set. Photos are in the order of the
+     * store.
+     *
+     * @see Sequencer.Options#TRACK_STORE_OPTION
+     */
+    private TrackStore trackStore;
 
     /**
      * Computes the linear latitude increment between two GPS points for the
-     * given {@linkplain Sequencer.Options#inputFiles count of input files}. The
-     * computed increment <b>does not</b> account for the distance on the
-     * surface.<br>
+     * given count of photos, that is of the input files left after preflight
+     * and quarantine. The computed increment <b>does not</b> account for the
+     * distance on the surface.<br>
      * This method is specific to the {@code -l} {@linkplain
      * Sequencer.Options#LINEAR_INTERPOLATE_OPTION linear interpolation option}.
      * @param gpsInfoStart the point at which to start linear interpolation
      * @param gpsInfoEnd the point at which to end linear interpolation
+     * @param count the count of photos interpolated over, including the first
+     * and the last
      * @return the latitude increment (distance) between two points (nodes) in a
      * linear interpolation in WGS 84 geographic coordinates
      * @throws ImageReadException
      * @see Sequencer.Options#LINEAR_INTERPOLATE_OPTION
      * @see Sequencer.Options#inputFiles
-     * @see Sequencer#processFiles(File[])
-     * @see Sequencer#computeLongitudeInc(TiffImageMetadata.GPSInfo,TiffImageMetadata.GPSInfo)
+     * @see Sequencer#processFiles(File[], ExecutorService, Quarantine)
+     * @see Sequencer#computeLongitudeInc(TiffImageMetadata.GPSInfo,TiffImageMetadata.GPSInfo,int)
      */
-    private static final double computeLatitudeInc(
+    private final double computeLatitudeInc(
         final TiffImageMetadata.GPSInfo gpsInfoStart,
-        final TiffImageMetadata.GPSInfo gpsInfoEnd) throws ImageReadException {
-        return (gpsInfoEnd.getLatitudeAsDegreesNorth() -
-            gpsInfoStart.getLatitudeAsDegreesNorth()) /
-            (Sequencer.OPTIONS.inputFiles.length - 1);
+        final TiffImageMetadata.GPSInfo gpsInfoEnd,
+        final int count) throws ImageReadException {
+        return count > 1 ?
+            (gpsInfoEnd.getLatitudeAsDegreesNorth() -
+                gpsInfoStart.getLatitudeAsDegreesNorth()) /
+                (count - 1) :
+            0.0;
     }
 
     /**
      * Computes the linear longitude increment between two GPS points for the
-     * given {@linkplain Sequencer.Options#inputFiles count of input files}. The
-     * computed increment <b>does not</b> account for the distance on the
-     * surface.<br>
+     * given count of photos, that is of the input files left after preflight
+     * and quarantine. The computed increment <b>does not</b> account for the
+     * distance on the surface.<br>
      * This method is specific to the {@code -l} {@linkplain
      * Sequencer.Options#LINEAR_INTERPOLATE_OPTION linear interpolation option}.
      * @param gpsInfoStart the point at which to start linear interpolation
      * @param gpsInfoEnd the point at which to end linear interpolation
+     * @param count the count of photos interpolated over, including the first
+     * and the last
      * @return the longitude increment (distance) between two points (nodes) in
      * a linear interpolation in WGS 84 geographic coordinates
      * @throws ImageReadException
      * @see Sequencer.Options#LINEAR_INTERPOLATE_OPTION
      * @see Sequencer.Options#inputFiles
-     * @see Sequencer#processFiles(File[])
-     * @see Sequencer#computeLatitudeInc(TiffImageMetadata.GPSInfo,TiffImageMetadata.GPSInfo)
+     * @see Sequencer#processFiles(File[], ExecutorService, Quarantine)
+     * @see Sequencer#computeLatitudeInc(TiffImageMetadata.GPSInfo,TiffImageMetadata.GPSInfo,int)
      */
-    private static final double computeLongitudeInc(
+    private final double computeLongitudeInc(
         final TiffImageMetadata.GPSInfo gpsInfoStart,
-        final TiffImageMetadata.GPSInfo gpsInfoEnd) throws ImageReadException {
-        return (gpsInfoEnd.getLongitudeAsDegreesEast() -
-            gpsInfoStart.getLongitudeAsDegreesEast()) /
-            (Sequencer.OPTIONS.inputFiles.length - 1);
+        final TiffImageMetadata.GPSInfo gpsInfoEnd,
+        final int count) throws ImageReadException {
+        return count > 1 ?
+            (gpsInfoEnd.getLongitudeAsDegreesEast() -
+                gpsInfoStart.getLongitudeAsDegreesEast()) /
+                (count - 1) :
+            0.0;
     }
 
-    private static final boolean isOption(final String arg) {
+    private final boolean isOption(final String arg) {
         return Sequencer.OPTION_PATTERN.matcher(arg.trim()).find() &&
-            !new File(arg).exists();
+            !this.toFile(arg).exists();
     }
 
-    private Sequencer() {
-        throw new UnsupportedOperationException();
+    /**
+     * Converts a command line argument into a file. Relative paths are
+     * resolved against the working directory of this job.
+     *
+     * @param arg the command line argument denoting a path
+     * @return the file denoted by {@code arg}
+     */
+    private final File toFile(final String arg) {
+        final File file;
+        return (file = new File(arg)).isAbsolute() ?
+            file :
+            new File(this.workingDir, arg);
+    }
+
+    /**
+     * Tests whether files and directories may be selected by dialogs.
+     *
+     * @return {@code true} if this job must not show any dialogs
+     */
+    private final boolean isHeadless() {
+        return !this.interactive || Dialogs.isHeadless();
+    }
+
+    /**
+     * Constructs a job for processing a single photo sequence. A job holds all
+     * options, parameters, and any state pertaining to processing a sequence,
+     * so that multiple jobs can be run concurrently in a single Java VM.
+     * A job must not be run more than once.<br>
+     * Calling this constructor is equivalent to creating a job which prints to
+     * {@link System#out} and {@link System#err}, resolves relative paths
+     * against the current user directory, and may show dialogs.
+     *
+     * @see #run(String[])
+     */
+    public Sequencer() {
+        this(
+            System.out,
+            System.err,
+            new File(System.getProperty("user.dir")),
+            true
+        );
+    }
+
+    /**
+     * Constructs a job for processing a single photo sequence.
+     *
+     * @param out the stream to print any output of this job to
+     * @param err the stream to print any errors of this job to
+     * @param workingDir the directory to resolve relative paths on the
+     * command line against
+     * @param interactive if {@code true} missing input files and output
+     * directory may be selected by dialogs
+     *
+     * @see #run(String[])
+     */
+    Sequencer(
+        final PrintStream out,
+        final PrintStream err,
+        final File workingDir,
+        final boolean interactive) {
+        this.out = out;
+        this.err = err;
+        this.workingDir = workingDir;
+        this.interactive = interactive;
+        this.imagingParams.put(
+            ImagingConstants.PARAM_KEY_READ_THUMBNAILS,
+            Boolean.FALSE
+        );
+    }
+
+    /**
+     * Gets the options of this job.
+     *
+     * @return the options of this job
+     */
+    public final Sequencer.Options getOptions() {
+        return this.options;
     }
 
     private static final double getAverageIncline(
@@ -219,7 +393,7 @@ public final class Sequencer {
         return incline / points.length;
     }
 
-    private static final TiffImageMetadata.GPSInfo getAveragePoint(
+    static final TiffImageMetadata.GPSInfo getAveragePoint(
         final TiffImageMetadata.GPSInfo[] points) {
         if (points.length <= 1)
             return points[0];
@@ -243,6 +417,24 @@ public final class Sequencer {
                 RationalNumber.valueOf(0.0)
             );
         }
+        return Sequencer.getAveragePoint(latitude, longitude, points.length);
+    }
+
+    /**
+     * Gets the average point of points given by the sums of their
+     * coordinates.
+     *
+     * @param latitude the sum of the latitudes of all points in degrees north
+     * @param longitude the sum of the longitudes of all points in degrees east
+     * @param count the count of points
+     * @return the average point
+     *
+     * @see TrackStore
+     */
+    static final TiffImageMetadata.GPSInfo getAveragePoint(
+        double latitude,
+        double longitude,
+        final int count) {
         return new TiffImageMetadata.GPSInfo(
             latitude >= 0.0 ?
                 GpsTagConstants.GPS_TAG_GPS_LATITUDE_REF_VALUE_NORTH :
@@ -250,10 +442,10 @@ public final class Sequencer {
             longitude >= 0.0 ?
                 GpsTagConstants.GPS_TAG_GPS_LONGITUDE_REF_VALUE_EAST :
                 GpsTagConstants.GPS_TAG_GPS_LONGITUDE_REF_VALUE_WEST,
-            RationalNumber.valueOf(Math.floor(latitude = Math.abs(latitude / points.length))),
+            RationalNumber.valueOf(Math.floor(latitude = Math.abs(latitude / count))),
             RationalNumber.valueOf(Math.floor(latitude = (latitude - Math.floor(latitude)) * 60)),
             RationalNumber.valueOf((latitude - Math.floor(latitude)) * 60),
-            RationalNumber.valueOf(Math.floor(longitude = Math.abs(longitude / points.length))),
+            RationalNumber.valueOf(Math.floor(longitude = Math.abs(longitude / count))),
             RationalNumber.valueOf(Math.floor(longitude = (longitude - Math.floor(longitude)) * 60)),
             RationalNumber.valueOf((longitude - Math.floor(longitude)) * 60)
         );
@@ -271,7 +463,7 @@ public final class Sequencer {
      * Calculate distance, bearing and more between Latitude/Longitude points
      * </a>
      */
-    private static final double getDirection(
+    static final double getDirection(
         final TiffImageMetadata.GPSInfo a,
         final TiffImageMetadata.GPSInfo b) {
         final double deltaLongitude, aLat, bLat, bCosLat;
@@ -347,510 +539,1316 @@ public final class Sequencer {
         return greatestDistance;
     }
 
-    private static final File[] getInputFilesByDialog() {
-        final FileDialog filedialog;
-        (filedialog = new FileDialog(
-            (Frame)null,
-            Sequencer.m("Sequencer.open.dialog"),
-            FileDialog.LOAD
-        )).setFilenameFilter(new Sequencer.JPEGTIFFFilenameFilter());
-        filedialog.setIconImage(Toolkit.getDefaultToolkit().getImage(
-            "data/images/mapillary32.png"
-        ));
-        filedialog.setLocationByPlatform(true);
-        filedialog.setDirectory(System.getProperty("user.dir"));
-        filedialog.setMultipleMode(true);
+    /**
+     * Reads the JPEG meta data of all files. If an executor is given then
+     * files are read concurrently, one task per file. Files whose meta data
+     * cannot be read are quarantined.
+     *
+     * @param files the files to read the meta data of
+     * @param executor the executor to read files on or {@code null} to read
+     * files on the calling thread
+     * @param quarantine the quarantine to put failed files in
+     * @return the JPEG meta data of all files in the order of {@code files},
+     * {@code null} for each quarantined file
+     * @throws IOException if reading has been interrupted
+     */
+    private final JpegImageMetadata[] readMetadata(
+        final File[] files,
+        final ExecutorService executor,
+        final Quarantine quarantine) throws IOException {
+        final JpegImageMetadata[] jpegImageMetadatas = new JpegImageMetadata[files.length];
+        if (executor == null) {
+            for (int i = files.length - 1; i >= 0; i--)
+                try {
+                    jpegImageMetadatas[i] = this.readMetadata(files[i]);
+                } catch (ImageReadException | IOException | RuntimeException e) {
+                    quarantine.add(files[i], e);
+                }
+            return jpegImageMetadatas;
+        }
+        final List<Future<JpegImageMetadata>> futures =
+            new ArrayList<Future<JpegImageMetadata>>(files.length);
+        for (final File file : files)
+            futures.add(executor.submit(() -> this.readMetadata(file)));
         try {
-            filedialog.setVisible(true);
-            return filedialog.getFiles();
-        } finally {
-            filedialog.dispose();
+            for (int i = files.length - 1; i >= 0; i--)
+                try {
+                    jpegImageMetadatas[i] = futures.get(i).get();
+                } catch (ExecutionException e) {
+                    quarantine.add(files[i], e.getCause());
+                }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(e.getMessage());
         }
+        return jpegImageMetadatas;
     }
 
-    private static final File getOutputDirectoryByDialog() {
+    /**
+     * Reads the JPEG meta data of a single file, including its GPS data, so
+     * that a photo with malformed meta data fails before it enters a
+     * sequence.
+     *
+     * @param file the file to read the meta data of
+     * @return the JPEG meta data
+     * @throws ImageReadException if the file is not a JPEG file with EXIF meta
+     * data or its meta data cannot be parsed
+     * @throws IOException if the file cannot be read
+     */
+    private final JpegImageMetadata readMetadata(
+        final File file) throws ImageReadException, IOException {
+        final Stats.Run run = this.stats.begin(Stats.METADATA);
+        final ImageMetadata imageMetadata;
+        if (!((imageMetadata = Imaging.getMetadata(
+                file,
+                this.imagingParams
+            )) instanceof JpegImageMetadata) ||
+            ((JpegImageMetadata)imageMetadata).getExif() == null)
+            throw new ImageReadException(
+                Sequencer.m("Sequencer.error.no.exif", file.getPath())
+            );
+        ((JpegImageMetadata)imageMetadata).getExif().getGPS();
+        run.end(file, 1, 0L);
+        return (JpegImageMetadata)imageMetadata;
+    }
+
+    /**
+     * Excludes the elements of quarantined photos.
+     *
+     * @param <T> the type of elements
+     * @param elements the elements of all photos
+     * @param jpegImageMetadatas the JPEG meta data of all photos, {@code null}
+     * for each quarantined photo
+     * @return the elements of all photos not quarantined in order
+     *
+     * @see #readMetadata(File[], ExecutorService, Quarantine)
+     */
+    private static final <T> T[] exclude(
+        final T[] elements,
+        final JpegImageMetadata[] jpegImageMetadatas) {
+        int count = 0;
+        for (final JpegImageMetadata jpegImageMetadata : jpegImageMetadatas)
+            if (jpegImageMetadata != null)
+                count++;
+        final T[] included = Arrays.copyOf(elements, count);
+        for (int i = 0, j = 0; i < elements.length; i++)
+            if (jpegImageMetadatas[i] != null)
+                included[j++] = elements[i];
+        return included;
+    }
+
+    private final void center(
+        final File[] inputFiles,
+        final double degrees,
+        final ExecutorService executor,
+        final Quarantine quarantine) throws IOException {
+        if (this.trackStore != null) {
+            this.centerStream(inputFiles, degrees, executor, quarantine);
+            return;
+        }
         try {
-            UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
-        } catch (ClassNotFoundException |
-                 InstantiationException |
-                 IllegalAccessException |
-                 UnsupportedLookAndFeelException e) {
-            e.printStackTrace();
+            this.enter("metadata");
+            // Load all GPS meta datas in sequence and leave out quarantined
+            // photos
+            final JpegImageMetadata[] inputJpegImageMetadatas =
+                this.readMetadata(inputFiles, executor, quarantine);
+            final File[] files = Sequencer.exclude(
+                inputFiles,
+                inputJpegImageMetadatas
+            );
+            final JpegImageMetadata[] jpegImageMetadatas = Sequencer.exclude(
+                inputJpegImageMetadatas,
+                inputJpegImageMetadatas
+            );
+            if (files.length <= 0)
+                return;
+            this.enter("sequence");
+
+            final TiffImageMetadata.GPSInfo gpsInfos[] = new TiffImageMetadata.GPSInfo[jpegImageMetadatas.length];
+            for (int i = jpegImageMetadatas.length - 1; i >= 0; i--)
+                gpsInfos[i] = jpegImageMetadatas[i].getExif().getGPS();
+            final TiffImageMetadata.GPSInfo centerGPSInfo =
+                Sequencer.getAveragePoint(gpsInfos);
+            // Write center point and directions to files, or to the plan
+            try (final Pipeline pipeline = this.options.planFile == null ?
+                    this.newCenterPipeline(executor, quarantine) :
+                    null;
+                final Plan plan = this.options.planFile != null ?
+                    new Plan(this.options.planFile, files, jpegImageMetadatas) :
+                    null) {
+                final Sequencer.PhotoSink sink = pipeline != null ?
+                    this.instrument(pipeline::submit, false) :
+                    this.instrument(plan::submit, true);
+                final Stats.Run run = this.stats.begin(Stats.SEQUENCE);
+                final long submitNanos = this.stats.getNanos(Stats.SUBMIT);
+                for (int i = jpegImageMetadatas.length - 1; i >= 0; i--)
+                    sink.submit(
+                        files[i],
+                        this.getCenteredOutputSet(
+                            jpegImageMetadatas[i],
+                            centerGPSInfo,
+                            degrees + 360.0 / jpegImageMetadatas.length * i
+                        )
+                    );
+                this.enter("write");
+                // Do not account the time spent submitting photos twice
+                run.exclude(this.stats.getNanos(Stats.SUBMIT) - submitNanos);
+                run.end(files.length, 0L);
+                if (pipeline != null)
+                    this.printPipeline(pipeline);
+            }
+        } catch (ImageReadException | ImageWriteException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Centers a sequence whose GPS locations are kept by the track store, as
+     * a stream. The meta data of photos is read in chunks of
+     * {@link #STREAM_CHUNK} photos, first only to leave out quarantined
+     * photos while the center is averaged from the locations kept by the
+     * track store, and then once more to write each chunk, so that memory
+     * does not grow with the length of the sequence. Photos of which the
+     * track store keeps no location are left out of the average. If no photo
+     * has a location, then no photo is written.
+     *
+     * @param inputFiles the photos of the sequence in the order of the track
+     * store
+     * @param degrees the direction of the first photo
+     * @param executor the executor to read meta data and run the pipeline's
+     * stages on, or {@code null} to use platform threads
+     * @param quarantine the quarantine to put failing photos in
+     * @throws IOException if the pipeline has failed or the plan cannot be
+     * written
+     */
+    private final void centerStream(
+        final File[] inputFiles,
+        final double degrees,
+        final ExecutorService executor,
+        final Quarantine quarantine) throws IOException {
+        try {
+            this.enter("metadata");
+            final boolean[] included = new boolean[inputFiles.length];
+            int count = 0, located = 0;
+            double latitude = 0.0, longitude = 0.0;
+            for (int from = 0; from < inputFiles.length; from += Sequencer.STREAM_CHUNK) {
+                final JpegImageMetadata[] chunkJpegImageMetadatas =
+                    this.readMetadata(
+                        Arrays.copyOfRange(
+                            inputFiles,
+                            from,
+                            Math.min(from + Sequencer.STREAM_CHUNK, inputFiles.length)
+                        ),
+                        executor,
+                        quarantine
+                    );
+                for (int i = 0; i < chunkJpegImageMetadatas.length; i++)
+                    if (chunkJpegImageMetadatas[i] != null) {
+                        final double photoLatitude, photoLongitude;
+                        included[from + i] = true;
+                        count++;
+                        if (!Double.isNaN(photoLatitude = this.trackStore.getLatitude(from + i)) &&
+                            !Double.isNaN(photoLongitude = this.trackStore.getLongitude(from + i))) {
+                            latitude += photoLatitude;
+                            longitude += photoLongitude;
+                            located++;
+                        }
+                    }
+            }
+            if (count <= 0)
+                return;
+            // Do not write a center point of no location into all photos
+            if (located <= 0) {
+                this.out.println(Sequencer.m("Sequencer.warning.center.no.location"));
+                return;
+            }
+            this.enter("sequence");
+
+            final TiffImageMetadata.GPSInfo centerGPSInfo =
+                Sequencer.getAveragePoint(latitude, longitude, located);
+            // Write center point and directions to files, or to the plan
+            try (final Pipeline pipeline = this.options.planFile == null ?
+                    this.newCenterPipeline(executor, quarantine) :
+                    null;
+                final Plan plan = this.options.planFile != null ?
+                    new Plan(this.options.planFile) :
+                    null) {
+                final Sequencer.PhotoSink sink = pipeline != null ?
+                    this.instrument(pipeline::submit, false) :
+                    this.instrument(plan::submit, true);
+                final List<File> files = new ArrayList<File>(Sequencer.STREAM_CHUNK);
+                for (int from = 0, index = 0; from < inputFiles.length; from += Sequencer.STREAM_CHUNK) {
+                    files.clear();
+                    for (int i = from, to = Math.min(from + Sequencer.STREAM_CHUNK, inputFiles.length); i < to; i++)
+                        if (included[i])
+                            files.add(inputFiles[i]);
+                    final File[] chunk = files.toArray(new File[files.size()]);
+                    final JpegImageMetadata[] chunkJpegImageMetadatas =
+                        this.readMetadata(chunk, executor, quarantine);
+                    final Stats.Run run = this.stats.begin(Stats.SEQUENCE);
+                    final long submitNanos = this.stats.getNanos(Stats.SUBMIT);
+                    // A photo changed since it has been read is quarantined
+                    // now, and leaves a gap in the directions
+                    for (int i = 0; i < chunk.length; i++, index++)
+                        if (chunkJpegImageMetadatas[i] != null) {
+                            if (plan != null)
+                                plan.add(chunk[i], chunkJpegImageMetadatas[i]);
+                            sink.submit(
+                                chunk[i],
+                                this.getCenteredOutputSet(
+                                    chunkJpegImageMetadatas[i],
+                                    centerGPSInfo,
+                                    degrees + 360.0 / count * index
+                                )
+                            );
+                        }
+                    // Do not account the time spent submitting photos twice
+                    run.exclude(this.stats.getNanos(Stats.SUBMIT) - submitNanos);
+                    run.end(chunk.length, 0L);
+                }
+                this.enter("write");
+                if (pipeline != null)
+                    this.printPipeline(pipeline);
+            }
+        } catch (ImageWriteException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Creates a pipeline writing centered photos, which are neither resized
+     * nor keep their time stamps.
+     *
+     * @param executor the executor to run stages on or {@code null} to run
+     * stages on platform threads
+     * @param quarantine the quarantine to put failing photos in
+     * @return a new pipeline
+     * @throws IOException if the journal cannot be opened
+     */
+    private final Pipeline newCenterPipeline(
+        final ExecutorService executor,
+        final Quarantine quarantine) throws IOException {
+        final Pipeline pipeline = new Pipeline(
+            this.options.outputDir,
+            this.imagingParams,
+            false,
+            this.options.quality,
+            0L,
+            false,
+            executor,
+            this.newJournal(),
+            quarantine,
+            this.stats,
+            this.progress
+        );
+        if (this.monitor != null)
+            this.monitor.setPipeline(pipeline);
+        return pipeline;
+    }
+
+    /**
+     * Creates the EXIF meta data of a centered photo, that is its GPS
+     * directory with the center point and the outward direction, and without
+     * altitude.
+     *
+     * @param jpegImageMetadata the JPEG meta data of the photo
+     * @param centerGPSInfo the center point
+     * @param direction the outward direction in degrees, possibly beyond 360
+     * @return the EXIF meta data to write to the photo
+     * @throws ImageWriteException if GPS data cannot be set
+     */
+    private final TiffOutputSet getCenteredOutputSet(
+        final JpegImageMetadata jpegImageMetadata,
+        final TiffImageMetadata.GPSInfo centerGPSInfo,
+        final double direction) throws ImageWriteException {
+        final TiffOutputDirectory gpsDirectory;
+        // Adjust latitude
+        if ((gpsDirectory = jpegImageMetadata.getExif().getOutputSet().getGPSDirectory()).findField(GpsTagConstants.GPS_TAG_GPS_LATITUDE) != null)
+            gpsDirectory.removeField(GpsTagConstants.GPS_TAG_GPS_LATITUDE);
+        gpsDirectory.add(
+            GpsTagConstants.GPS_TAG_GPS_LATITUDE,
+            centerGPSInfo.latitudeDegrees,
+            centerGPSInfo.latitudeMinutes,
+            centerGPSInfo.latitudeSeconds
+        );
+        // Supply latitude reference
+        if (gpsDirectory.findField(GpsTagConstants.GPS_TAG_GPS_LATITUDE_REF) != null)
+            gpsDirectory.removeField(GpsTagConstants.GPS_TAG_GPS_LATITUDE_REF);
+        gpsDirectory.add(
+            GpsTagConstants.GPS_TAG_GPS_LATITUDE_REF,
+            centerGPSInfo.latitudeRef
+        );
+        // Adjust longitude
+        if (gpsDirectory.findField(GpsTagConstants.GPS_TAG_GPS_LONGITUDE) != null)
+            gpsDirectory.removeField(GpsTagConstants.GPS_TAG_GPS_LONGITUDE);
+        gpsDirectory.add(
+            GpsTagConstants.GPS_TAG_GPS_LONGITUDE,
+            centerGPSInfo.longitudeDegrees,
+            centerGPSInfo.longitudeMinutes,
+            centerGPSInfo.longitudeSeconds
+        );
+        // Supply longitude reference
+        if (gpsDirectory.findField(GpsTagConstants.GPS_TAG_GPS_LONGITUDE_REF) != null)
+            gpsDirectory.removeField(GpsTagConstants.GPS_TAG_GPS_LONGITUDE_REF);
+        gpsDirectory.add(
+            GpsTagConstants.GPS_TAG_GPS_LONGITUDE_REF,
+            centerGPSInfo.longitudeRef
+        );
+        // Set new outward direction
+        if (gpsDirectory.findField(GpsTagConstants.GPS_TAG_GPS_IMG_DIRECTION) != null)
+            gpsDirectory.removeField(GpsTagConstants.GPS_TAG_GPS_IMG_DIRECTION);
+        gpsDirectory.add(
+            GpsTagConstants.GPS_TAG_GPS_IMG_DIRECTION,
+            RationalNumber.valueOf(
+                direction > 360.0 ?
+                    direction - 360.0 :
+                    direction
+            )
+        );
+        if (gpsDirectory.findField(GpsTagConstants.GPS_TAG_GPS_IMG_DIRECTION_REF) != null)
+            gpsDirectory.removeField(GpsTagConstants.GPS_TAG_GPS_IMG_DIRECTION_REF);
+        gpsDirectory.add(
+            GpsTagConstants.GPS_TAG_GPS_IMG_DIRECTION_REF,
+            this.options.degreesRef
+        );
+        // Remove altitude field because it messes up Mapillary transitions
+        gpsDirectory.removeField(GpsTagConstants.GPS_TAG_GPS_ALTITUDE);
+        gpsDirectory.removeField(GpsTagConstants.GPS_TAG_GPS_ALTITUDE_REF);
+        // Create new TiffOutputSet
+        final TiffOutputSet tiffOutputSet;
+        (tiffOutputSet = new TiffOutputSet()).addRootDirectory();
+        tiffOutputSet.addDirectory(gpsDirectory);
+        return tiffOutputSet;
+    }
+
+    /**
+     * Processes a sequence as a stream and writes its photos, or adds them to
+     * the plan. The meta data of photos is read in chunks of
+     * {@link #STREAM_CHUNK} photos, in parallel if an executor is given, and
+     * each chunk is processed by a window sliding over the sequence as soon
+     * as it has been read. The meta data of a photo is released as soon as
+     * the photo has been submitted and is no longer required to smooth
+     * following photos, so that memory does not grow with the length of the
+     * sequence. Linear interpolation spans the whole sequence, and smoothing
+     * over more nodes than a chunk would hold most of the sequence anyway,
+     * thus both fall back to reading all meta data at once.
+     *
+     * @param inputFiles the photos of the sequence in order
+     * @param executor the executor to read meta data and run the pipeline's
+     * stages on, or {@code null} to use platform threads
+     * @param quarantine the quarantine to put failing photos in
+     * @throws IOException if the pipeline has failed or the plan cannot be
+     * written
+     */
+    private final void processFiles(
+        final File[] inputFiles,
+        final ExecutorService executor,
+        final Quarantine quarantine) throws IOException {
+        if (this.options.isOptionSet(Sequencer.Options.LINEAR_INTERPOLATE_OPTION) ||
+            this.options.isOptionSet(Sequencer.Options.SMOOTH_OPTION) &&
+            this.options.nodes > Sequencer.STREAM_CHUNK) {
+            this.processAllFiles(inputFiles, executor, quarantine);
+            return;
         }
-        final JFileChooser fileChooser;
-        (fileChooser = new JFileChooser(
-            System.getProperty("user.dir"))).setAcceptAllFileFilterUsed(false);
-        fileChooser.setMultiSelectionEnabled(false);
-        fileChooser.setDialogTitle(Sequencer.m("Sequencer.save.dialog"));
-        fileChooser.setDialogType(JFileChooser.SAVE_DIALOG);
-        fileChooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
-        fileChooser.setVisible(true);
-        return fileChooser.showSaveDialog(null) == JFileChooser.APPROVE_OPTION ?
-            fileChooser.getSelectedFile() : null;
+        this.enter("sequence");
+        final List<File> files = new ArrayList<File>();
+        final List<JpegImageMetadata> jpegImageMetadatas =
+            new ArrayList<JpegImageMetadata>();
+        int written = 0;
+        try (final Pipeline pipeline = this.options.planFile == null ?
+                this.newPipeline(executor, quarantine) :
+                null;
+            final Plan plan = this.options.planFile != null ?
+                new Plan(this.options.planFile) :
+                null) {
+            final Sequencer.PhotoSink sink = pipeline != null ?
+                this.instrument(pipeline::submit, false) :
+                this.instrument(plan::submit, true);
+            for (int from = 0; from < inputFiles.length; from += Sequencer.STREAM_CHUNK) {
+                // Read the next chunk and leave out quarantined photos
+                final File[] chunk = Arrays.copyOfRange(
+                    inputFiles,
+                    from,
+                    Math.min(from + Sequencer.STREAM_CHUNK, inputFiles.length)
+                );
+                final JpegImageMetadata[] chunkJpegImageMetadatas =
+                    this.readMetadata(chunk, executor, quarantine);
+                for (int i = 0; i < chunk.length; i++)
+                    if (chunkJpegImageMetadatas[i] != null) {
+                        files.add(chunk[i]);
+                        jpegImageMetadatas.add(chunkJpegImageMetadatas[i]);
+                        if (plan != null)
+                            plan.add(chunk[i], chunkJpegImageMetadatas[i]);
+                    }
+                written = this.processWindow(
+                    files,
+                    jpegImageMetadatas,
+                    written,
+                    from + chunk.length >= inputFiles.length,
+                    sink
+                );
+            }
+            this.enter("write");
+            if (pipeline != null)
+                this.printPipeline(pipeline);
+        } catch (ImageReadException | ImageWriteException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Processes the photos of a window sliding over a sequence. Photos are
+     * written as soon as they are followed by enough photos to smooth them
+     * and to normalize their direction, or all at once if the sequence has
+     * ended. Written photos are then dropped from the window, except for
+     * those required to smooth following photos.
+     *
+     * @param files the photos of the window in order
+     * @param jpegImageMetadatas the JPEG meta data of {@code files}
+     * @param written the count of photos at the start of the window which
+     * have been written already
+     * @param ended if {@code true} then no photos follow the window
+     * @param sink the pipeline or plan to submit photos to
+     * @return the count of photos at the start of the window which have been
+     * written
+     * @throws ImageReadException if GPS data cannot be read
+     * @throws ImageWriteException if GPS data cannot be set
+     * @throws IOException if the pipeline has failed or the plan cannot be
+     * written
+     */
+    private final int processWindow(
+        final List<File> files,
+        final List<JpegImageMetadata> jpegImageMetadatas,
+        final int written,
+        final boolean ended,
+        final Sequencer.PhotoSink sink) throws ImageReadException, ImageWriteException, IOException {
+        // Count of written photos to keep for smoothing following photos and
+        // count of following photos required to write a photo
+        final int lead = this.options.isOptionSet(Sequencer.Options.SMOOTH_OPTION) ?
+                this.options.nodes >> 1 :
+                0,
+            trail = this.options.isOptionSet(Sequencer.Options.NORMALIZE_OPTION) ?
+                lead + 1 :
+                lead;
+        final int to = ended ? files.size() : files.size() - trail;
+        if (to <= written)
+            return written;
+        final Stats.Run run = this.stats.begin(Stats.SEQUENCE);
+        final long submitNanos = this.stats.getNanos(Stats.SUBMIT);
+        this.processFiles(
+            files.toArray(new File[files.size()]),
+            jpegImageMetadatas.toArray(
+                new JpegImageMetadata[jpegImageMetadatas.size()]
+            ),
+            written,
+            to,
+            sink
+        );
+        // Do not account the time spent submitting photos twice
+        run.exclude(this.stats.getNanos(Stats.SUBMIT) - submitNanos);
+        run.end(to - written, 0L);
+        // Keep written photos required for smoothing only
+        final int drop = ended ? to : Math.max(to - lead, 0);
+        files.subList(0, drop).clear();
+        jpegImageMetadatas.subList(0, drop).clear();
+        return to - drop;
     }
 
-    private static final void center(
+    /**
+     * Processes a sequence whose processing spans all photos, such as linear
+     * interpolation or smoothing over many nodes. The meta data of all photos is read before any photo is
+     * written.
+     *
+     * @param inputFiles the photos of the sequence in order
+     * @param executor the executor to read meta data and run the pipeline's
+     * stages on, or {@code null} to use platform threads
+     * @param quarantine the quarantine to put failing photos in
+     * @throws IOException if the pipeline has failed or the plan cannot be
+     * written
+     */
+    private final void processAllFiles(
+        final File[] inputFiles,
+        final ExecutorService executor,
+        final Quarantine quarantine) throws IOException {
+        try {
+            this.enter("metadata");
+            // Load all GPS meta datas in sequence and leave out quarantined
+            // photos
+            final JpegImageMetadata[] inputJpegImageMetadatas =
+                this.readMetadata(inputFiles, executor, quarantine);
+            final File[] files = Sequencer.exclude(
+                inputFiles,
+                inputJpegImageMetadatas
+            );
+            final JpegImageMetadata[] jpegImageMetadatas = Sequencer.exclude(
+                inputJpegImageMetadatas,
+                inputJpegImageMetadatas
+            );
+            if (files.length <= 0)
+                return;
+            // Smooth over no more nodes than photos are left after preflight
+            // and quarantine
+            if (this.options.nodes > files.length)
+                this.options.nodes = files.length;
+            this.enter("sequence");
+            try (final Pipeline pipeline = this.options.planFile == null ?
+                    this.newPipeline(executor, quarantine) :
+                    null;
+                final Plan plan = this.options.planFile != null ?
+                    new Plan(this.options.planFile, files, jpegImageMetadatas) :
+                    null) {
+                final Stats.Run run = this.stats.begin(Stats.SEQUENCE);
+                final long submitNanos = this.stats.getNanos(Stats.SUBMIT);
+                this.processFiles(
+                    files,
+                    jpegImageMetadatas,
+                    0,
+                    files.length,
+                    pipeline != null ?
+                        this.instrument(pipeline::submit, false) :
+                        this.instrument(plan::submit, true)
+                );
+                this.enter("write");
+                // Do not account the time spent submitting photos twice
+                run.exclude(this.stats.getNanos(Stats.SUBMIT) - submitNanos);
+                run.end(files.length, 0L);
+                if (pipeline != null)
+                    this.printPipeline(pipeline);
+            }
+        } catch (ImageReadException | ImageWriteException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Scans all photos in parallel before any output is written, quarantines
+     * invalid photos, and prints a summary of what the options will do with
+     * the valid photos.
+     *
+     * @param files the photos to scan
+     * @param quarantine the quarantine to put invalid photos in
+     * @return the valid photos in the order of {@code files}
+     *
+     * @see Sequencer.Options#PREFLIGHT_OPTION
+     */
+    private final File[] preflight(
         final File[] files,
-        final double degrees) throws IOException {
-        // Load all GPS meta datas in sequence
-        final JpegImageMetadata[] jpegImageMetadatas = new JpegImageMetadata[files.length];
+        final Quarantine quarantine) {
+        final Preflight preflight = new Preflight(files, this.imagingParams);
+        final List<File> valid = new ArrayList<File>(files.length);
+        for (final Preflight.Result result : preflight.getResults())
+            if (result.isValid())
+                valid.add(result.getFile());
+            else quarantine.add(result.getFile(), result.toString());
+        this.out.println(
+            Sequencer.m(
+                "Sequencer.preflight",
+                files.length,
+                preflight.getMillis(),
+                files.length - valid.size()
+            )
+        );
+        // Summarize what the options will do
+        if (preflight.count(Preflight.NO_GPS_LOCATION) > 0 &&
+            !this.options.isOptionSet(Sequencer.Options.LINEAR_INTERPOLATE_OPTION))
+            this.out.println(
+                Sequencer.m(
+                    "Sequencer.preflight.no.gps.location",
+                    preflight.count(Preflight.NO_GPS_LOCATION)
+                )
+            );
+        if (preflight.count(Preflight.NO_GPS_TIME) > 0)
+            this.out.println(
+                Sequencer.m(
+                    this.options.isOptionSet(Sequencer.Options.TIME_STAMP_OPTION) ?
+                        "Sequencer.preflight.no.gps.time.add" :
+                        "Sequencer.preflight.no.gps.time",
+                    preflight.count(Preflight.NO_GPS_TIME)
+                )
+            );
+        if (preflight.count(Preflight.NO_TIME_STAMP) > 0)
+            this.out.println(
+                Sequencer.m(
+                    "Sequencer.preflight.no.time.stamp",
+                    preflight.count(Preflight.NO_TIME_STAMP)
+                )
+            );
+        if (this.options.isOptionSet(Sequencer.Options.CENTER_OPTION))
+            this.out.println(
+                Sequencer.m("Sequencer.preflight.center", this.options.degrees)
+            );
+        if (this.options.isOptionSet(Sequencer.Options.SMOOTH_OPTION))
+            this.out.println(
+                Sequencer.m("Sequencer.preflight.smooth", this.options.nodes)
+            );
+        if (this.options.isOptionSet(Sequencer.Options.LINEAR_INTERPOLATE_OPTION))
+            this.out.println(Sequencer.m("Sequencer.preflight.interpolate"));
+        if (this.options.isOptionSet(Sequencer.Options.NORMALIZE_OPTION))
+            this.out.println(Sequencer.m("Sequencer.preflight.normalize"));
+        this.out.println(
+            this.options.isOptionSet(Sequencer.Options.ALTITUDE_OPTION) ?
+                Sequencer.m("Sequencer.preflight.altitude", this.options.altitude) :
+                Sequencer.m("Sequencer.preflight.no.altitude")
+        );
+        if (this.options.isOptionSet(Sequencer.Options.GPS_AREA_INFO_OPTION))
+            this.out.println(
+                Sequencer.m(
+                    "Sequencer.preflight.area",
+                    this.options.gpsAreaInformation
+                )
+            );
+        if (this.options.isOptionSet(Sequencer.Options.RESIZE_OPTION))
+            this.out.println(
+                Sequencer.m(
+                    "Sequencer.preflight.resize",
+                    preflight.countLarger(2048, 1536)
+                )
+            );
+        return valid.toArray(new File[valid.size()]);
+    }
+
+    /**
+     * Creates a pipeline writing photos as specified by the options.
+     *
+     * @param executor the executor to run stages on or {@code null} to run
+     * stages on platform threads
+     * @param quarantine the quarantine to put failing photos in
+     * @return a new pipeline
+     * @throws IOException if the journal cannot be opened
+     */
+    private final Pipeline newPipeline(
+        final ExecutorService executor,
+        final Quarantine quarantine) throws IOException {
+        final Pipeline pipeline = new Pipeline(
+            this.options.outputDir,
+            this.imagingParams,
+            this.options.isOptionSet(Sequencer.Options.RESIZE_OPTION),
+            this.options.quality,
+            this.options.decodeMemory,
+            this.options.isOptionSet(Sequencer.Options.PRESERVE_TIME_STAMP_OPTION),
+            executor,
+            this.newJournal(),
+            quarantine,
+            this.stats,
+            this.progress
+        );
+        if (this.monitor != null)
+            this.monitor.setPipeline(pipeline);
+        return pipeline;
+    }
+
+    /**
+     * Registers the JMX monitor of this job if the {@code --jmx} option is
+     * set. A monitor which cannot be registered is warned about and the job
+     * runs without.
+     *
+     * @param quarantine the quarantine of this job
+     * @return the registered monitor, or {@code null}
+     *
+     * @see Sequencer.Options#JMX_OPTION
+     */
+    private final Monitor newMonitor(final Quarantine quarantine) {
+        if (!this.options.isOptionSet(Sequencer.Options.JMX_OPTION))
+            return null;
+        final Monitor monitor;
         try {
-            for (int i = files.length - 1; i >= 0; i--)
-                jpegImageMetadatas[i] = (JpegImageMetadata)Imaging.getMetadata(files[i]);
+            monitor = new Monitor(
+                this.options.watchDir != null ?
+                    -1 :
+                    this.options.inputFiles.length,
+                this.stats,
+                quarantine
+            );
+        } catch (JMException | RuntimeException e) {
+            this.out.println(
+                Sequencer.m(
+                    "Sequencer.warning.jmx",
+                    e.getLocalizedMessage()
+                )
+            );
+            return null;
+        }
+        this.out.println(
+            Sequencer.m(
+                "Sequencer.jmx",
+                monitor.getObjectName().toString()
+            )
+        );
+        return monitor;
+    }
+
+    /**
+     * Sets the stage this job is in on its JMX monitor, if any.
+     *
+     * @param stage the name of the stage
+     *
+     * @see SequencerMXBean#getStage()
+     */
+    private final void enter(final String stage) {
+        if (this.monitor != null)
+            this.monitor.setStage(stage);
+    }
+
+    /**
+     * Opens the journal of the output directory if the {@code --resume}
+     * option is set. The journal is fingerprinted by all options affecting
+     * the output of photos, and by the count of input files, which affects
+     * smoothing over all photos.
+     *
+     * @return the journal, or {@code null} if the {@code --resume} option is
+     * not set
+     * @throws IOException if the journal cannot be opened
+     *
+     * @see Sequencer.Options#RESUME_OPTION
+     */
+    private final Journal newJournal() throws IOException {
+        return this.options.isOptionSet(Sequencer.Options.RESUME_OPTION) ?
+            new Journal(
+                this.options.outputDir,
+                String.format(
+                    (Locale)null,
+                    "mkseq-journal %08X %s %s %s %s %d %s %s %s %d",
+                    this.options.options & Sequencer.Options.OUTPUT_OPTIONS,
+                    this.options.altitude,
+                    this.options.degrees,
+                    this.options.degreesRef,
+                    this.options.gpsAreaInformation,
+                    this.options.nodes,
+                    this.options.speed,
+                    this.options.speedRef,
+                    this.options.quality,
+                    this.options.inputFiles == null ?
+                        0 :
+                        this.options.inputFiles.length
+                )
+            ) :
+            null;
+    }
+
+    /**
+     * Measures the submission of photos to a sink if the {@code --stats} or
+     * the {@code --jfr} option is set, and records submitted photos in the
+     * progress stream if the {@code --progress} option is set, and counts
+     * planned photos on the JMX monitor if the {@code --jmx} option is set.
+     *
+     * @param sink the pipeline or plan to submit photos to
+     * @param plan if {@code true} then {@code sink} is a plan, and submitted
+     * photos are done
+     * @return a sink measuring and recording each submission, or {@code sink}
+     * itself
+     */
+    private final Sequencer.PhotoSink instrument(
+        final Sequencer.PhotoSink sink,
+        final boolean plan) {
+        final Progress progress = this.progress;
+        final Monitor monitor = plan ? this.monitor : null;
+        if (!this.stats.isEnabled() && progress == null && monitor == null)
+            return sink;
+        return (source, outputSet) -> {
+            if (progress != null)
+                progress.submitted(source, outputSet);
+            final Stats.Run run = this.stats.begin(Stats.SUBMIT);
+            sink.submit(source, outputSet);
+            run.end(source, 1, 0L);
+            if (plan && progress != null)
+                progress.planned(source);
+            if (monitor != null)
+                monitor.planned();
+        };
+    }
+
+    /**
+     * Prints the count of photos skipped by the pipeline and, if verbose, the
+     * state of its queues.
+     *
+     * @param pipeline the pipeline to print
+     */
+    private final void printPipeline(
+        final Pipeline pipeline) throws InterruptedIOException {
+        // Do not overtake any verbose output
+        if (this.verboseLog != null)
+            this.verboseLog.flush();
+        if (pipeline.getSkippedCount() > 0)
+            this.out.println(
+                Sequencer.m("Sequencer.resumed", pipeline.getSkippedCount())
+            );
+        if (this.options.isOptionSet(Sequencer.Options.VERBOSE_OPTION))
+            this.out.println(pipeline.toString());
+    }
 
-            final TiffImageMetadata.GPSInfo gpsInfos[] = new TiffImageMetadata.GPSInfo[jpegImageMetadatas.length];
-            for (int i = jpegImageMetadatas.length - 1; i >= 0; i--)
-                gpsInfos[i] = jpegImageMetadatas[i].getExif().getGPS();
-            final TiffImageMetadata.GPSInfo centerGPSInfo = Sequencer.getAveragePoint(gpsInfos);
-            // Write center point and directions to files
-            for (int i = jpegImageMetadatas.length - 1; i >= 0; i--) {
-                final TiffOutputDirectory gpsDirectory;
-                // Adjust latitude
-                if ((gpsDirectory = jpegImageMetadatas[i].getExif().getOutputSet().getGPSDirectory()).findField(GpsTagConstants.GPS_TAG_GPS_LATITUDE) != null)
+    /**
+     * Processes the photos from index {@code from} (inclusive) to index
+     * {@code to} (exclusive) of a sequence and submits them to a pipeline.
+     * Photos outside of the range are not written but they take part in
+     * smoothing and in normalizing the direction of photos in the range. If
+     * {@code to} is less than the length of the sequence then the photo at
+     * index {@code to} must be final, because it determines the direction of
+     * the last photo in the range.
+     *
+     * @param files the files of the sequence in order
+     * @param jpegImageMetadatas the JPEG meta data of {@code files}
+     * @param from the index of the first photo to write
+     * @param to the index after the last photo to write
+     * @param sink the pipeline or plan to submit photos to
+     * @throws ImageReadException if GPS data cannot be read
+     * @throws ImageWriteException if GPS data cannot be set
+     * @throws IOException if the pipeline has failed or the plan cannot be
+     * written
+     */
+    final void processFiles(
+        final File[] files,
+        final JpegImageMetadata[] jpegImageMetadatas,
+        final int from,
+        final int to,
+        final Sequencer.PhotoSink sink) throws ImageReadException, ImageWriteException, IOException {
+        // Add GPS directory and location if missing in file
+        final TiffImageMetadata.GPSInfo[] gpsInfos = new TiffImageMetadata.GPSInfo[jpegImageMetadatas.length];
+        for (int i = jpegImageMetadatas.length - 1; i >= 0; i--)
+            if ((gpsInfos[i] = jpegImageMetadatas[i].getExif().getGPS()) == null) {
+                gpsInfos[i] = new TiffImageMetadata.GPSInfo(
+                    GpsTagConstants.GPS_TAG_GPS_LATITUDE_REF_VALUE_NORTH,
+                    GpsTagConstants.GPS_TAG_GPS_LONGITUDE_REF_VALUE_EAST,
+                    RationalNumber.valueOf(0.0),
+                    RationalNumber.valueOf(0.0),
+                    RationalNumber.valueOf(0.0),
+                    RationalNumber.valueOf(0.0),
+                    RationalNumber.valueOf(0.0),
+                    RationalNumber.valueOf(0.0)
+                );
+            }
+        final double latitudeInc, longitudeInc;
+        // If linear interpolation (-l) option is set, compute latitude and longitude increment
+        if (this.options.isOptionSet(Sequencer.Options.LINEAR_INTERPOLATE_OPTION)) {
+            latitudeInc = this.computeLatitudeInc(
+                gpsInfos[0],
+                gpsInfos[gpsInfos.length - 1],
+                gpsInfos.length
+            );
+            longitudeInc = this.computeLongitudeInc(
+                gpsInfos[0],
+                gpsInfos[gpsInfos.length - 1],
+                gpsInfos.length
+            );
+        } else latitudeInc = longitudeInc = 0.0;
+        // Go through every photo and process it. Photos are read,
+        // resized, rewritten, and written by the pipeline's stages as soon
+        // as their GPS data is final.
+        TiffImageMetadata.GPSInfo previousGPSInfo = null;
+        TiffOutputSet previousOutputSet = null;
+        for (int i = from; i < gpsInfos.length && i <= to; i++) {
+            // Print verbose
+            if (i < to &&
+                this.options.isOptionSet(Sequencer.Options.VERBOSE_OPTION))
+                this.logMetadata(files[i], jpegImageMetadatas[i]);
+            TiffImageMetadata.GPSInfo currentGPSInfo = gpsInfos[i];
+            final TiffOutputDirectory gpsDirectory =
+                jpegImageMetadatas[i].getExif().getOutputSet().getGPSDirectory() != null ?
+                    jpegImageMetadatas[i].getExif().getOutputSet().getGPSDirectory() :
+                    new TiffOutputDirectory(
+                        TiffDirectoryConstants.DIRECTORY_TYPE_GPS,
+                        ByteOrder.nativeOrder()
+                    );
+            // Smooth sequence
+            if (this.options.isOptionSet(Sequencer.Options.SMOOTH_OPTION)) {
+                // Smooth over no more nodes than photos are at hand, since
+                // a watched burst may be shorter than the window
+                final int nodes = Math.min(this.options.nodes, gpsInfos.length),
+                          k, l;
+                // Keep the window within the photos, so that it is never
+                // padded with nulls
+                currentGPSInfo =
+                    Sequencer.getAveragePoint(
+                        Arrays.copyOfRange(
+                            gpsInfos,
+                            Math.max(
+                                (k = i - (nodes >> 1)) < 0 ?
+                                    0 :
+                                    i + (nodes >> 1) >= gpsInfos.length ?
+                                        i - (gpsInfos.length - i) + 1 :
+                                        k,
+                                0
+                            ),
+                            Math.min(
+                                k < 0 ?
+                                    2 * i + 1 :
+                                    (l = k + nodes) > gpsInfos.length ?
+                                        gpsInfos.length :
+                                        l,
+                                gpsInfos.length
+                            )
+                        )
+                    );
+                // TODO: Compute harmonic average
+                // Set new latitude location
+                if (gpsDirectory.findField(GpsTagConstants.GPS_TAG_GPS_LATITUDE) != null)
                     gpsDirectory.removeField(GpsTagConstants.GPS_TAG_GPS_LATITUDE);
                 gpsDirectory.add(
                     GpsTagConstants.GPS_TAG_GPS_LATITUDE,
-                    centerGPSInfo.latitudeDegrees,
-                    centerGPSInfo.latitudeMinutes,
-                    centerGPSInfo.latitudeSeconds
+                    currentGPSInfo.latitudeDegrees,
+                    currentGPSInfo.latitudeMinutes,
+                    currentGPSInfo.latitudeSeconds
                 );
-                // Supply latitude reference
                 if (gpsDirectory.findField(GpsTagConstants.GPS_TAG_GPS_LATITUDE_REF) != null)
                     gpsDirectory.removeField(GpsTagConstants.GPS_TAG_GPS_LATITUDE_REF);
                 gpsDirectory.add(
                     GpsTagConstants.GPS_TAG_GPS_LATITUDE_REF,
-                    centerGPSInfo.latitudeRef
+                    currentGPSInfo.latitudeRef
                 );
-                // Adjust longitude
+                // Set new longitude location
                 if (gpsDirectory.findField(GpsTagConstants.GPS_TAG_GPS_LONGITUDE) != null)
                     gpsDirectory.removeField(GpsTagConstants.GPS_TAG_GPS_LONGITUDE);
                 gpsDirectory.add(
                     GpsTagConstants.GPS_TAG_GPS_LONGITUDE,
-                    centerGPSInfo.longitudeDegrees,
-                    centerGPSInfo.longitudeMinutes,
-                    centerGPSInfo.longitudeSeconds
+                    currentGPSInfo.longitudeDegrees,
+                    currentGPSInfo.longitudeMinutes,
+                    currentGPSInfo.longitudeSeconds
                 );
-                // Supply longitude reference
                 if (gpsDirectory.findField(GpsTagConstants.GPS_TAG_GPS_LONGITUDE_REF) != null)
                     gpsDirectory.removeField(GpsTagConstants.GPS_TAG_GPS_LONGITUDE_REF);
                 gpsDirectory.add(
                     GpsTagConstants.GPS_TAG_GPS_LONGITUDE_REF,
-                    centerGPSInfo.longitudeRef
+                    currentGPSInfo.longitudeRef
                 );
-                // Set new outward direction
-                if (gpsDirectory.findField(GpsTagConstants.GPS_TAG_GPS_IMG_DIRECTION) != null)
-                    gpsDirectory.removeField(GpsTagConstants.GPS_TAG_GPS_IMG_DIRECTION);
-                {
-                    final double direction;
-                    gpsDirectory.add(
+            }
+            // Linear interpolation
+            if (this.options.isOptionSet(Sequencer.Options.LINEAR_INTERPOLATE_OPTION)) {
+                double latitude, longitude;
+                currentGPSInfo = new TiffImageMetadata.GPSInfo(
+                    GpsTagConstants.GPS_TAG_GPS_LATITUDE_REF_VALUE_NORTH,
+                    GpsTagConstants.GPS_TAG_GPS_LONGITUDE_REF_VALUE_EAST,
+                    RationalNumber.valueOf(Math.floor(latitude = gpsInfos[0].getLatitudeAsDegreesNorth() + latitudeInc * i)),
+                    RationalNumber.valueOf(Math.floor(latitude = (latitude - Math.floor(latitude)) * 60)),
+                    RationalNumber.valueOf((latitude - Math.floor(latitude)) * 60),
+                    RationalNumber.valueOf(Math.floor(longitude = gpsInfos[0].getLongitudeAsDegreesEast() + longitudeInc * i)),
+                    RationalNumber.valueOf(Math.floor(longitude = (longitude - Math.floor(longitude)) * 60)),
+                    RationalNumber.valueOf((longitude - Math.floor(longitude)) * 60)
+                );
+                gpsDirectory.removeField(GpsTagConstants.GPS_TAG_GPS_LATITUDE);
+                gpsDirectory.add(
+                    GpsTagConstants.GPS_TAG_GPS_LATITUDE,
+                    currentGPSInfo.latitudeDegrees,
+                    currentGPSInfo.latitudeMinutes,
+                    currentGPSInfo.latitudeSeconds
+                );
+                gpsDirectory.removeField(GpsTagConstants.GPS_TAG_GPS_LATITUDE_REF);
+                gpsDirectory.add(
+                    GpsTagConstants.GPS_TAG_GPS_LATITUDE_REF,
+                    GpsTagConstants.GPS_TAG_GPS_LATITUDE_REF_VALUE_NORTH
+                );
+                gpsDirectory.removeField(GpsTagConstants.GPS_TAG_GPS_LONGITUDE);
+                gpsDirectory.add(
+                    GpsTagConstants.GPS_TAG_GPS_LONGITUDE,
+                    currentGPSInfo.longitudeDegrees,
+                    currentGPSInfo.longitudeMinutes,
+                    currentGPSInfo.longitudeSeconds
+                );
+                gpsDirectory.removeField(GpsTagConstants.GPS_TAG_GPS_LONGITUDE_REF);
+                gpsDirectory.add(
+                    GpsTagConstants.GPS_TAG_GPS_LONGITUDE_REF,
+                    GpsTagConstants.GPS_TAG_GPS_LONGITUDE_REF_VALUE_EAST
+                );
+            }
+            // Compute normalized direction
+            if (this.options.isOptionSet(Sequencer.Options.NORMALIZE_OPTION)) {
+                // Remove any previous direction
+                gpsDirectory.removeField(GpsTagConstants.GPS_TAG_GPS_IMG_DIRECTION);
+                if (gpsDirectory.findField(GpsTagConstants.GPS_TAG_GPS_IMG_DIRECTION_REF) != null)
+                    gpsDirectory.removeField(GpsTagConstants.GPS_TAG_GPS_IMG_DIRECTION_REF);
+                // Set direction in previous photo
+                if (i > from) {
+                    final RationalNumber lastDirection;
+                    previousOutputSet.getGPSDirectory().add(
                         GpsTagConstants.GPS_TAG_GPS_IMG_DIRECTION,
-                        RationalNumber.valueOf(
-                            (direction = degrees + 360.0 / jpegImageMetadatas.length * i) > 360.0 ?
-                                direction - 360.0 :
-                                direction
+                        lastDirection = RationalNumber.valueOf(
+                            Math.toDegrees(Sequencer.getDirection(
+                                previousGPSInfo, // Previous average GPS location
+                                currentGPSInfo
+                            ))
                         )
                     );
+                    // Set previous direction on last photo
+                    if (i >= gpsInfos.length - 1)
+                        gpsDirectory.add(
+                            GpsTagConstants.GPS_TAG_GPS_IMG_DIRECTION,
+                            lastDirection
+                        );
                 }
-                if (gpsDirectory.findField(GpsTagConstants.GPS_TAG_GPS_IMG_DIRECTION_REF) != null)
-                    gpsDirectory.removeField(GpsTagConstants.GPS_TAG_GPS_IMG_DIRECTION_REF);
                 gpsDirectory.add(
                     GpsTagConstants.GPS_TAG_GPS_IMG_DIRECTION_REF,
-                    Sequencer.OPTIONS.degreesRef
+                    GpsTagConstants.GPS_TAG_GPS_IMG_DIRECTION_REF_VALUE_TRUE_NORTH
                 );
-                // Remove altitude field because it messes up Mapillary transitions
-                gpsDirectory.removeField(GpsTagConstants.GPS_TAG_GPS_ALTITUDE);
-                gpsDirectory.removeField(GpsTagConstants.GPS_TAG_GPS_ALTITUDE_REF);
-                // Create new TiffOutputSet
-                final TiffOutputSet tiffOutputSet;
-                (tiffOutputSet = new TiffOutputSet()).addRootDirectory();
-                tiffOutputSet.addDirectory(gpsDirectory);
-                if (Sequencer.exifRewriter == null)
-                    Sequencer.exifRewriter = new ExifRewriter();
-                try (final FileOutputStream fis = new FileOutputStream(
-                    new File(
-                        Sequencer.OPTIONS.outputDir, files[i].getName()
-                    ))) {
-                    Sequencer.exifRewriter.updateExifMetadataLossy(
-                        files[i],
-                        fis,
-                        tiffOutputSet
-                    );
-                }
             }
-        } catch (ImageReadException | ImageWriteException e) {
-            throw new IOException(e);
-        }
-    }
-
-    private static final void processFiles(
-        final File[] files) throws IOException {
-        try {
-            // Load all GPS meta datas in sequence
-            final JpegImageMetadata[] jpegImageMetadatas = new JpegImageMetadata[files.length];
-            for (int i = jpegImageMetadatas.length - 1; i >= 0; i--)
-                jpegImageMetadatas[i] = (JpegImageMetadata)Imaging.getMetadata(
-                    files[i],
-                    IMAGING_PARAMS
-                );
-            // Add GPS directory and location if missing in file
-            final TiffImageMetadata.GPSInfo[] gpsInfos = new TiffImageMetadata.GPSInfo[jpegImageMetadatas.length];
-            for (int i = jpegImageMetadatas.length - 1; i >= 0; i--)
-                if ((gpsInfos[i] = jpegImageMetadatas[i].getExif().getGPS()) == null) {
-                    gpsInfos[i] = new TiffImageMetadata.GPSInfo(
-                        GpsTagConstants.GPS_TAG_GPS_LATITUDE_REF_VALUE_NORTH,
-                        GpsTagConstants.GPS_TAG_GPS_LONGITUDE_REF_VALUE_EAST,
-                        RationalNumber.valueOf(0.0),
-                        RationalNumber.valueOf(0.0),
-                        RationalNumber.valueOf(0.0),
-                        RationalNumber.valueOf(0.0),
-                        RationalNumber.valueOf(0.0),
-                        RationalNumber.valueOf(0.0)
-                    );
-                }
-            final double latitudeInc, longitudeInc;
-            // If linear interpolation (-l) option is set, compute latitude and longitude increment
-            if (Sequencer.OPTIONS.isOptionSet(Sequencer.Options.LINEAR_INTERPOLATE_OPTION)) {
-                latitudeInc = Sequencer.computeLatitudeInc(
-                    gpsInfos[0],
-                    gpsInfos[gpsInfos.length - 1]
-                );
-                longitudeInc = Sequencer.computeLongitudeInc(
-                    gpsInfos[0],
-                    gpsInfos[gpsInfos.length - 1]
-                );
-            } else latitudeInc = longitudeInc = 0.0;
-            // Go through every photo and process it
-            TiffImageMetadata.GPSInfo previousGPSInfo = null;
-            TiffOutputSet previousOutputSet = null;
-            for (int i = 0; i < gpsInfos.length; i++) {
-                // Print verbose
-                if (Sequencer.OPTIONS.isOptionSet(Sequencer.Options.VERBOSE_OPTION)) {
-                    Sequencer.IMAGING_PARAMS.put(
-                        ImagingConstants.PARAM_KEY_VERBOSE,
-                        Boolean.TRUE
-                    );
-                    Sequencer.printMetadata(files[i], jpegImageMetadatas[i]);
-                }
-                TiffImageMetadata.GPSInfo currentGPSInfo = gpsInfos[i];
-                final TiffOutputDirectory gpsDirectory =
-                    jpegImageMetadatas[i].getExif().getOutputSet().getGPSDirectory() != null ?
-                        jpegImageMetadatas[i].getExif().getOutputSet().getGPSDirectory() :
-                        new TiffOutputDirectory(
-                            TiffDirectoryConstants.DIRECTORY_TYPE_GPS,
-                            ByteOrder.nativeOrder()
-                        );
-                // Smooth sequence
-                if (Sequencer.OPTIONS.isOptionSet(Sequencer.Options.SMOOTH_OPTION)) {
-                    final int k, l;
-                    currentGPSInfo =
-                        Sequencer.getAveragePoint(
-                            Arrays.copyOfRange(
-                                gpsInfos,
-                                (k = i - (Sequencer.OPTIONS.nodes >> 1)) < 0 ?
-                                    0 :
-                                    i + (Sequencer.OPTIONS.nodes >> 1) >= gpsInfos.length ?
-                                        i - (gpsInfos.length - i) + 1 :
-                                        k,
-                                k < 0 ?
-                                    2 * i + 1 :
-                                    (l = k + Sequencer.OPTIONS.nodes) > gpsInfos.length ?
-                                        gpsInfos.length :
-                                        l
-                            )
-                        );
-                    // TODO: Compute harmonic average
-                    // Set new latitude location
-                    if (gpsDirectory.findField(GpsTagConstants.GPS_TAG_GPS_LATITUDE) != null)
-                        gpsDirectory.removeField(GpsTagConstants.GPS_TAG_GPS_LATITUDE);
-                    gpsDirectory.add(
-                        GpsTagConstants.GPS_TAG_GPS_LATITUDE,
-                        currentGPSInfo.latitudeDegrees,
-                        currentGPSInfo.latitudeMinutes,
-                        currentGPSInfo.latitudeSeconds
-                    );
-                    if (gpsDirectory.findField(GpsTagConstants.GPS_TAG_GPS_LATITUDE_REF) != null)
-                        gpsDirectory.removeField(GpsTagConstants.GPS_TAG_GPS_LATITUDE_REF);
+            // Keep or add altitude
+            if ((this.options.options & Sequencer.Options.ALTITUDE_OPTION) != 0) {
+                if (gpsDirectory.findField(GpsTagConstants.GPS_TAG_GPS_ALTITUDE) == null) {
                     gpsDirectory.add(
-                        GpsTagConstants.GPS_TAG_GPS_LATITUDE_REF,
-                        currentGPSInfo.latitudeRef
+                        GpsTagConstants.GPS_TAG_GPS_ALTITUDE,
+                        RationalNumber.valueOf(Math.abs(this.options.altitude))
                     );
-                    // Set new longitude location
-                    if (gpsDirectory.findField(GpsTagConstants.GPS_TAG_GPS_LONGITUDE) != null)
-                        gpsDirectory.removeField(GpsTagConstants.GPS_TAG_GPS_LONGITUDE);
-                    gpsDirectory.add(
-                        GpsTagConstants.GPS_TAG_GPS_LONGITUDE,
-                        currentGPSInfo.longitudeDegrees,
-                        currentGPSInfo.longitudeMinutes,
-                        currentGPSInfo.longitudeSeconds
-                    );
-                    if (gpsDirectory.findField(GpsTagConstants.GPS_TAG_GPS_LONGITUDE_REF) != null)
-                        gpsDirectory.removeField(GpsTagConstants.GPS_TAG_GPS_LONGITUDE_REF);
+                    if (gpsDirectory.findField(GpsTagConstants.GPS_TAG_GPS_ALTITUDE_REF) != null)
+                        gpsDirectory.removeField(GpsTagConstants.GPS_TAG_GPS_ALTITUDE_REF);
                     gpsDirectory.add(
-                        GpsTagConstants.GPS_TAG_GPS_LONGITUDE_REF,
-                        currentGPSInfo.longitudeRef
+                        GpsTagConstants.GPS_TAG_GPS_ALTITUDE_REF,
+                        (byte)(this.options.altitude < 0.0 ?
+                            GpsTagConstants.GPS_TAG_GPS_ALTITUDE_REF_VALUE_BELOW_SEA_LEVEL :
+                            GpsTagConstants.GPS_TAG_GPS_ALTITUDE_REF_VALUE_ABOVE_SEA_LEVEL)
                     );
                 }
-                // Linear interpolation
-                if (Sequencer.OPTIONS.isOptionSet(Sequencer.Options.LINEAR_INTERPOLATE_OPTION)) {
-                    double latitude, longitude;
-                    currentGPSInfo = new TiffImageMetadata.GPSInfo(
-                        GpsTagConstants.GPS_TAG_GPS_LATITUDE_REF_VALUE_NORTH,
-                        GpsTagConstants.GPS_TAG_GPS_LONGITUDE_REF_VALUE_EAST,
-                        RationalNumber.valueOf(Math.floor(latitude = gpsInfos[0].getLatitudeAsDegreesNorth() + latitudeInc * i)),
-                        RationalNumber.valueOf(Math.floor(latitude = (latitude - Math.floor(latitude)) * 60)),
-                        RationalNumber.valueOf((latitude - Math.floor(latitude)) * 60),
-                        RationalNumber.valueOf(Math.floor(longitude = gpsInfos[0].getLongitudeAsDegreesEast() + longitudeInc * i)),
-                        RationalNumber.valueOf(Math.floor(longitude = (longitude - Math.floor(longitude)) * 60)),
-                        RationalNumber.valueOf((longitude - Math.floor(longitude)) * 60)
-                    );
-                    gpsDirectory.removeField(GpsTagConstants.GPS_TAG_GPS_LATITUDE);
-                    gpsDirectory.add(
-                        GpsTagConstants.GPS_TAG_GPS_LATITUDE,
-                        currentGPSInfo.latitudeDegrees,
-                        currentGPSInfo.latitudeMinutes,
-                        currentGPSInfo.latitudeSeconds
-                    );
-                    gpsDirectory.removeField(GpsTagConstants.GPS_TAG_GPS_LATITUDE_REF);
-                    gpsDirectory.add(
-                        GpsTagConstants.GPS_TAG_GPS_LATITUDE_REF,
-                        GpsTagConstants.GPS_TAG_GPS_LATITUDE_REF_VALUE_NORTH
-                    );
-                    gpsDirectory.removeField(GpsTagConstants.GPS_TAG_GPS_LONGITUDE);
+            } else { // Remove altitude data
+                if (gpsDirectory.findField(GpsTagConstants.GPS_TAG_GPS_ALTITUDE) != null)
+                    gpsDirectory.removeField(GpsTagConstants.GPS_TAG_GPS_ALTITUDE);
+                if (gpsDirectory.findField(GpsTagConstants.GPS_TAG_GPS_ALTITUDE_REF) != null)
+                    gpsDirectory.removeField(GpsTagConstants.GPS_TAG_GPS_ALTITUDE_REF);
+            }
+
+            // Add or overwrite GPS date and time stamps from file modification time stamp
+            if (this.options.isOptionSet(Sequencer.Options.TIME_STAMP_OPTION)) {
+                // If missing, add GPS date time stamp from EXIF time stamps
+                // or finally from file's last modification time stamp
+                if (gpsDirectory.findField(GpsTagConstants.GPS_TAG_GPS_DATE_STAMP) == null)
                     gpsDirectory.add(
-                        GpsTagConstants.GPS_TAG_GPS_LONGITUDE,
-                        currentGPSInfo.longitudeDegrees,
-                        currentGPSInfo.longitudeMinutes,
-                        currentGPSInfo.longitudeSeconds
+                        GpsTagConstants.GPS_TAG_GPS_DATE_STAMP,
+                        Sequencer.millisToGPSDate(
+                            ExifDateTimeComparator.getImageFileDate(
+                                files[i],
+                                true
+                            ).getTime()
+                        )
                     );
-                    gpsDirectory.removeField(GpsTagConstants.GPS_TAG_GPS_LONGITUDE_REF);
+                if (gpsDirectory.findField(GpsTagConstants.GPS_TAG_GPS_TIME_STAMP) == null)
                     gpsDirectory.add(
-                        GpsTagConstants.GPS_TAG_GPS_LONGITUDE_REF,
-                        GpsTagConstants.GPS_TAG_GPS_LONGITUDE_REF_VALUE_EAST
+                        GpsTagConstants.GPS_TAG_GPS_TIME_STAMP,
+                        Sequencer.millisToGPSTime(
+                            ExifDateTimeComparator.getImageFileDate(
+                                files[i],
+                                true
+                            ).getTime()
+                        )
                     );
-                }
-                // Compute normalized direction
-                if (Sequencer.OPTIONS.isOptionSet(Sequencer.Options.NORMALIZE_OPTION)) {
-                    // Remove any previous direction
-                    gpsDirectory.removeField(GpsTagConstants.GPS_TAG_GPS_IMG_DIRECTION);
-                    if (gpsDirectory.findField(GpsTagConstants.GPS_TAG_GPS_IMG_DIRECTION_REF) != null)
-                        gpsDirectory.removeField(GpsTagConstants.GPS_TAG_GPS_IMG_DIRECTION_REF);
-                    // Set direction in previous photo
-                    if (i > 0) {
-                        final RationalNumber lastDirection;
-                        previousOutputSet.getGPSDirectory().add(
-                            GpsTagConstants.GPS_TAG_GPS_IMG_DIRECTION,
-                            lastDirection = RationalNumber.valueOf(
-                                Math.toDegrees(Sequencer.getDirection(
-                                    previousGPSInfo, // Previous average GPS location
-                                    currentGPSInfo
-                                ))
-                            )
+                if (this.options.isOptionSet(Sequencer.Options.TIME_STAMP_OVERWRITE_OPTION)) {
+                    final long lastModified;
+                    if (gpsDirectory.findField(GpsTagConstants.GPS_TAG_GPS_DATE_STAMP) != null)
+                        gpsDirectory.removeField(
+                            GpsTagConstants.GPS_TAG_GPS_DATE_STAMP
                         );
-                        // Set previous direction on last photo
-                        if (i >= gpsInfos.length - 1)
-                            gpsDirectory.add(
-                                GpsTagConstants.GPS_TAG_GPS_IMG_DIRECTION,
-                                lastDirection
-                            );
-                    }
                     gpsDirectory.add(
-                        GpsTagConstants.GPS_TAG_GPS_IMG_DIRECTION_REF,
-                        GpsTagConstants.GPS_TAG_GPS_IMG_DIRECTION_REF_VALUE_TRUE_NORTH
+                        GpsTagConstants.GPS_TAG_GPS_DATE_STAMP,
+                        Sequencer.millisToGPSDate(
+                            lastModified = files[i].lastModified()
+                        )
                     );
-                }
-                // Keep or add altitude
-                if ((Sequencer.OPTIONS.options & Sequencer.Options.ALTITUDE_OPTION) != 0) {
-                    if (gpsDirectory.findField(GpsTagConstants.GPS_TAG_GPS_ALTITUDE) == null) {
-                        gpsDirectory.add(
-                            GpsTagConstants.GPS_TAG_GPS_ALTITUDE,
-                            RationalNumber.valueOf(Math.abs(Sequencer.OPTIONS.altitude))
-                        );
-                        if (gpsDirectory.findField(GpsTagConstants.GPS_TAG_GPS_ALTITUDE_REF) != null)
-                            gpsDirectory.removeField(GpsTagConstants.GPS_TAG_GPS_ALTITUDE_REF);
-                        gpsDirectory.add(
-                            GpsTagConstants.GPS_TAG_GPS_ALTITUDE_REF,
-                            (byte)(Sequencer.OPTIONS.altitude < 0.0 ?
-                                GpsTagConstants.GPS_TAG_GPS_ALTITUDE_REF_VALUE_BELOW_SEA_LEVEL :
-                                GpsTagConstants.GPS_TAG_GPS_ALTITUDE_REF_VALUE_ABOVE_SEA_LEVEL)
-                        );
-                    }
-                } else { // Remove altitude data
-                    if (gpsDirectory.findField(GpsTagConstants.GPS_TAG_GPS_ALTITUDE) != null)
-                        gpsDirectory.removeField(GpsTagConstants.GPS_TAG_GPS_ALTITUDE);
-                    if (gpsDirectory.findField(GpsTagConstants.GPS_TAG_GPS_ALTITUDE_REF) != null)
-                        gpsDirectory.removeField(GpsTagConstants.GPS_TAG_GPS_ALTITUDE_REF);
-                }
-
-                // Add or overwrite GPS date and time stamps from file modification time stamp
-                if (Sequencer.OPTIONS.isOptionSet(Sequencer.Options.TIME_STAMP_OPTION)) {
-                    // If missing, add GPS date time stamp from EXIF time stamps
-                    // or finally from file's last modification time stamp
-                    if (gpsDirectory.findField(GpsTagConstants.GPS_TAG_GPS_DATE_STAMP) == null)
-                        gpsDirectory.add(
-                            GpsTagConstants.GPS_TAG_GPS_DATE_STAMP,
-                            Sequencer.millisToGPSDate(
-                                ExifDateTimeComparator.getImageFileDate(
-                                    files[i],
-                                    true
-                                ).getTime()
-                            )
-                        );
-                    if (gpsDirectory.findField(GpsTagConstants.GPS_TAG_GPS_TIME_STAMP) == null)
-                        gpsDirectory.add(
-                            GpsTagConstants.GPS_TAG_GPS_TIME_STAMP,
-                            Sequencer.millisToGPSTime(
-                                ExifDateTimeComparator.getImageFileDate(
-                                    files[i],
-                                    true
-                                ).getTime()
-                            )
-                        );
-                    if (Sequencer.OPTIONS.isOptionSet(Sequencer.Options.TIME_STAMP_OVERWRITE_OPTION)) {
-                        final long lastModified;
-                        if (gpsDirectory.findField(GpsTagConstants.GPS_TAG_GPS_DATE_STAMP) != null)
-                            gpsDirectory.removeField(
-                                GpsTagConstants.GPS_TAG_GPS_DATE_STAMP
-                            );
-                        gpsDirectory.add(
-                            GpsTagConstants.GPS_TAG_GPS_DATE_STAMP,
-                            Sequencer.millisToGPSDate(
-                                lastModified = files[i].lastModified()
-                            )
-                        );
-                        if (gpsDirectory.findField(GpsTagConstants.GPS_TAG_GPS_TIME_STAMP) != null)
-                            gpsDirectory.removeField(
-                                GpsTagConstants.GPS_TAG_GPS_TIME_STAMP
-                            );
-                        gpsDirectory.add(GpsTagConstants.GPS_TAG_GPS_TIME_STAMP,
-                            Sequencer.millisToGPSTime(lastModified)
+                    if (gpsDirectory.findField(GpsTagConstants.GPS_TAG_GPS_TIME_STAMP) != null)
+                        gpsDirectory.removeField(
+                            GpsTagConstants.GPS_TAG_GPS_TIME_STAMP
                         );
-                    }
-                }
-
-                // Resize to Mapillary's thumb-2048 size while preserving the aspect ratio
-                if (Sequencer.OPTIONS.isOptionSet(Sequencer.Options.RESIZE_OPTION)) {
-                    final BufferedImage inputBufferedImage, outputBufferedImage;
-                    inputBufferedImage = Imaging.getBufferedImage(
-                        files[i],
-                        Sequencer.IMAGING_PARAMS
-                    );
-                    final Graphics2D graphics2d;
-                    (graphics2d = (outputBufferedImage =
-                        new BufferedImage(
-                            inputBufferedImage.getColorModel(),
-                            inputBufferedImage.getColorModel().createCompatibleWritableRaster(
-                                2048,
-                                1536
-                            ),
-                            inputBufferedImage.isAlphaPremultiplied(),
-                            null
-                        )).createGraphics()
-                    ).setRenderingHint(
-                        RenderingHints.KEY_INTERPOLATION,
-                        RenderingHints.VALUE_INTERPOLATION_BICUBIC
-                    );
-                    graphics2d.setRenderingHint(
-                        RenderingHints.KEY_DITHERING,
-                        RenderingHints.VALUE_DITHER_DISABLE
-                    );
-                    graphics2d.setRenderingHint(
-                        RenderingHints.KEY_ANTIALIASING,
-                        RenderingHints.VALUE_ANTIALIAS_OFF
+                    gpsDirectory.add(GpsTagConstants.GPS_TAG_GPS_TIME_STAMP,
+                        Sequencer.millisToGPSTime(lastModified)
                     );
-                    graphics2d.drawImage(
-                        inputBufferedImage,
-                        0,
-                        0,
-                        inputBufferedImage.getWidth() > 2048 ? 2048 : inputBufferedImage.getWidth(),
-                        inputBufferedImage.getHeight() > 1536 ? 1536 : inputBufferedImage.getHeight(),
-                        null
-                    );
-                    graphics2d.dispose();
-                    try (final FileImageOutputStream fimos =
-                        new FileImageOutputStream(
-                            File.createTempFile("mkseq-", ".jpg")
-                        )
-                    ) {
-                        final ImageWriter iw;
-                        (iw = ImageIO.getImageWritersByFormatName("JPEG").next()).setOutput(fimos);
-                        final ImageWriteParam imageWriteParam;
-                        (imageWriteParam = iw.getDefaultWriteParam()).setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
-                        imageWriteParam.setCompressionQuality(Sequencer.OPTIONS.quality);
-                        imageWriteParam.setProgressiveMode(ImageWriteParam.MODE_DISABLED);
-                        iw.write(
-                            null,
-                            new IIOImage(outputBufferedImage, null, null),
-                            imageWriteParam
-                        );
-                    }
                 }
+            }
 
-                // Add or overwrite GPS area information
-                if (Sequencer.OPTIONS.isOptionSet(Sequencer.Options.GPS_AREA_INFO_OPTION)) {
-                    if (gpsDirectory.findField(GpsTagConstants.GPS_TAG_GPS_AREA_INFORMATION) != null)
-                        gpsDirectory.removeField(GpsTagConstants.GPS_TAG_GPS_AREA_INFORMATION);
-                    gpsDirectory.add(
-                        GpsTagConstants.GPS_TAG_GPS_AREA_INFORMATION,
-                        Sequencer.OPTIONS.gpsAreaInformation
-                    );
+            // Add or overwrite GPS area information
+            if (this.options.isOptionSet(Sequencer.Options.GPS_AREA_INFO_OPTION)) {
+                if (gpsDirectory.findField(GpsTagConstants.GPS_TAG_GPS_AREA_INFORMATION) != null)
+                    gpsDirectory.removeField(GpsTagConstants.GPS_TAG_GPS_AREA_INFORMATION);
+                gpsDirectory.add(
+                    GpsTagConstants.GPS_TAG_GPS_AREA_INFORMATION,
+                    this.options.gpsAreaInformation
+                );
+            }
+            // Write modified GPS data to file
+            if (i > from) {// As long as not last photo write the previous file
+                previousOutputSet.getGPSDirectory().sortFields();
+                sink.submit(files[i - 1], previousOutputSet);
+            }
+            // The photo after the range is context only
+            if (i >= to)
+                break;
+            if (i >= gpsInfos.length - 1) {// Write last photo
+                TiffOutputSet lastOutputSet;
+                (lastOutputSet = new TiffOutputSet()).addRootDirectory();
+                lastOutputSet.addDirectory(
+                    gpsDirectory // Add GPS directory of current output set
+                );
+                lastOutputSet.getGPSDirectory().sortFields();
+                sink.submit(files[i], lastOutputSet);
+            } else {
+                // Save current GPS location to compute direction on next loop
+                previousGPSInfo = currentGPSInfo;
+                // Create new TiffOutputSet for next photo
+                (previousOutputSet = new TiffOutputSet()).addRootDirectory();
+                previousOutputSet.addDirectory(
+                    gpsDirectory // Add GPS directory of current outputset
+                );
+            }
+        }
+    }
+
+    /**
+     * Watches a directory for arriving photos and processes them
+     * incrementally. A photo is admitted as soon as its size and modification
+     * time have settled, and it is written as soon as enough following photos
+     * have arrived to smooth it and to normalize its direction. A photo is
+     * admitted only once, even if it is touched afterwards. Photos arriving
+     * out of order are sorted among the photos held back but never before
+     * photos already written. If no photos arrive for
+     * {@link #WATCH_IDLE_MILLIS} then all photos held back are written and
+     * the sequence ends. Watching ends when the directory is removed.
+     *
+     * @param dir the directory to watch
+     * @param executor the executor to run the pipeline's stages on or
+     * {@code null} to run stages on platform threads
+     * @param quarantine the quarantine to put failing photos in
+     * @throws IOException if watching the directory fails
+     */
+    private final void watch(
+        final File dir,
+        final ExecutorService executor,
+        final Quarantine quarantine) throws IOException {
+        final List<File> files = new ArrayList<File>();
+        final List<JpegImageMetadata> jpegImageMetadatas =
+            new ArrayList<JpegImageMetadata>();
+        final List<Date> dates = new ArrayList<Date>();
+        // Photos not settled yet, mapped to their last seen length,
+        // modification time, and time when any of them changed
+        final Map<File, long[]> arriving = new HashMap<File, long[]>();
+        // Every photo ever admitted or quarantined, which is not admitted
+        // again when it is touched or rescanned after it has been written
+        final Set<File> admitted = new HashSet<File>();
+        final FilenameFilter filter = new Sequencer.JPEGTIFFFilenameFilter();
+        int written = 0;
+        long lastArrival = System.currentTimeMillis();
+        try (final WatchService watchService =
+                dir.toPath().getFileSystem().newWatchService();
+            final Pipeline pipeline = this.newPipeline(executor, quarantine)) {
+            dir.toPath().register(
+                watchService,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY
+            );
+            // Photos already in the directory arrive first
+            for (final File file : dir.listFiles())
+                arriving.put(file, null);
+            this.out.println(
+                Sequencer.m(
+                    "Sequencer.watching",
+                    Sequencer.Options.getCanonicalPath(dir)
+                )
+            );
+            boolean watching = true;
+            while (watching || !arriving.isEmpty()) {
+                final WatchKey key;
+                if ((key = watchService.poll(
+                        Sequencer.WATCH_SETTLE_MILLIS,
+                        TimeUnit.MILLISECONDS)) != null) {
+                    for (final WatchEvent<?> event : key.pollEvents())
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            // Events have been lost thus rescan
+                            for (final File file : dir.listFiles())
+                                if (!admitted.contains(file))
+                                    arriving.putIfAbsent(file, null);
+                        } else {
+                            final File file;
+                            if (!admitted.contains(
+                                    file = new File(dir, event.context().toString())))
+                                arriving.putIfAbsent(file, null);
+                        }
+                    // If the directory has gone then finish arriving photos
+                    watching = key.reset();
                 }
-                // Write modified GPS data to file
-                if (Sequencer.exifRewriter == null)
-                    Sequencer.exifRewriter = new ExifRewriter();
-                File outputFile = null;
-                if (i > 0) {// As long as not last photo write the previous file
-                    previousOutputSet.getGPSDirectory().sortFields();
-                    try (final FileOutputStream fis = new FileOutputStream(
-                        outputFile = new File(
-                            Sequencer.OPTIONS.outputDir,
-                            files[i - 1].getName()
-                        ))) {
-                        Sequencer.exifRewriter.updateExifMetadataLossy(
-                            files[i - 1],
-                            fis,
-                            previousOutputSet
-                        );
+                final long now = System.currentTimeMillis();
+                // Admit photos whose length and modification time have not
+                // changed for a while
+                final List<File> settled = new ArrayList<File>();
+                for (final Iterator<Map.Entry<File, long[]>> iterator =
+                        arriving.entrySet().iterator(); iterator.hasNext();) {
+                    final Map.Entry<File, long[]> entry = iterator.next();
+                    final File file;
+                    final long[] state;
+                    if (!(file = entry.getKey()).isFile())
+                        iterator.remove();
+                    else if ((state = entry.getValue()) == null ||
+                        state[0] != file.length() ||
+                        state[1] != file.lastModified())
+                        entry.setValue(new long[] {
+                            file.length(),
+                            file.lastModified(),
+                            now
+                        });
+                    else if (now - state[2] >= Sequencer.WATCH_SETTLE_MILLIS ||
+                        !watching) {
+                        iterator.remove();
+                        if (filter.accept(dir, file.getName()) &&
+                            admitted.add(file))
+                            settled.add(file);
                     }
                 }
-                if (i >= gpsInfos.length - 1) {// Write last photo
-                    TiffOutputSet lastOutputSet;
-                    (lastOutputSet = new TiffOutputSet()).addRootDirectory();
-                    lastOutputSet.addDirectory(
-                        gpsDirectory // Add GPS directory of current output set
-                    );
-                    lastOutputSet.getGPSDirectory().sortFields();
-                    try (final FileOutputStream fis = new FileOutputStream(
-                        outputFile = new File(
-                            Sequencer.OPTIONS.outputDir,
-                            files[i].getName())
-                        )) {
-                        Sequencer.exifRewriter.updateExifMetadataLossy(
-                            files[i],
-                            fis,
-                            lastOutputSet
-                        );
+                for (final File file : settled) {
+                    final JpegImageMetadata jpegImageMetadata;
+                    try {
+                        jpegImageMetadata = this.readMetadata(file);
+                    } catch (ImageReadException | IOException | RuntimeException e) {
+                        quarantine.add(file, e);
+                        continue;
                     }
-                } else {
-                    // Save current GPS location to compute direction on next loop
-                    previousGPSInfo = currentGPSInfo;
-                    // Create new TiffOutputSet for next photo
-                    (previousOutputSet = new TiffOutputSet()).addRootDirectory();
-                    previousOutputSet.addDirectory(
-                        gpsDirectory // Add GPS directory of current outputset
-                    );
+                    final Date date =
+                        ExifDateTimeComparator.getImageFileDate(file, true);
+                    // Insert in sequence order but after any written photo
+                    int i;
+                    for (i = files.size();
+                         i > written && dates.get(i - 1).compareTo(date) > 0;
+                         i--);
+                    files.add(i, file);
+                    jpegImageMetadatas.add(i, jpegImageMetadata);
+                    dates.add(i, date);
+                    lastArrival = now;
                 }
-
-                // If -k option is set adjust new output file's modification time stamp
-                if (Sequencer.OPTIONS.isOptionSet(Sequencer.Options.PRESERVE_TIME_STAMP_OPTION) &&
-                    outputFile != null)
-                    outputFile.setLastModified(files[i].lastModified());
+                // Write photos followed by enough photos, or all photos held
+                // back if the sequence has ended
+                final boolean ended = !watching && arriving.isEmpty() ||
+                    now - lastArrival >= Sequencer.WATCH_IDLE_MILLIS;
+                final int size = files.size();
+                written = this.processWindow(
+                    files,
+                    jpegImageMetadatas,
+                    written,
+                    ended,
+                    this.instrument(pipeline::submit, false)
+                );
+                dates.subList(0, size - files.size()).clear();
             }
+            this.printPipeline(pipeline);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(e.getMessage());
         } catch (ImageReadException | ImageWriteException e) {
             throw new IOException(e);
         }
     }
 
-    private static final void printMetadata(
+    /**
+     * Prints the meta data of a photo on the verbose log, or right away if
+     * this job has no verbose log. The meta data is formatted only when it is
+     * printed.
+     *
+     * @param file the photo
+     * @param jpegImageMetadata the meta data of the photo
+     * @throws InterruptedIOException if interrupted while waiting for room in
+     * the verbose log
+     */
+    private final void logMetadata(
+        final File file,
+        final JpegImageMetadata jpegImageMetadata) throws InterruptedIOException {
+        if (this.verboseLog != null)
+            this.verboseLog.log(
+                (out, err) -> this.printMetadata(out, err, file, jpegImageMetadata)
+            );
+        else this.printMetadata(this.out, this.err, file, jpegImageMetadata);
+    }
+
+    private final void printMetadata(
+        final PrintStream out,
+        final PrintStream err,
         final File file,
         final JpegImageMetadata jpegImageMetadata) {
         try {
@@ -859,7 +1857,7 @@ public final class Sequencer {
             final TiffDirectory gpsDirectory;
             RationalNumber[] rationalNumbers;
             final double meters, feet;
-            System.out.println(
+            out.println(
                 new StringBuffer(2048).append(
                     Sequencer.m(
                         "Sequencer.verbose.file",
@@ -964,7 +1962,7 @@ public final class Sequencer {
                         "\n\t" +
                         Sequencer.m(
                             "Sequencer.verbose.datetime",
-                            Sequencer.OPTIONS.dateTimeFormatter.format(
+                            this.options.dateTimeFormatter.format(
                                 Sequencer.gpsDateTimeToDate(
                                     gpsDirectory.getFieldValue(
                                         GpsTagConstants.GPS_TAG_GPS_DATE_STAMP,
@@ -981,7 +1979,7 @@ public final class Sequencer {
                 ).toString()
             );
         } catch (ImageReadException e) {
-            System.err.println(
+            err.println(
                 Sequencer.m(
                     "Sequencer.verbose.error",
                     Sequencer.Options.getCanonicalPath(file),
@@ -1107,7 +2105,17 @@ public final class Sequencer {
         };
     }
 
-    private static final void processCommandLineArguments(final String[] args) {
+    /**
+     * Processes command line arguments into the options of this job. If no
+     * input files or output directory are specified and a graphical
+     * environment is available then they are selected by dialogs.
+     *
+     * @param args the command line arguments
+     * @return {@code true} if the job is ready to be run, {@code false} if the
+     * selection of input files or the output directory has been canceled
+     * @throws IllegalArgumentException if any argument is invalid
+     */
+    final boolean processCommandLineArguments(final String[] args) {
         int smoothOptionIndex = 0;
         try {
             final Pattern OptionPrefixPattern = Pattern.compile(
@@ -1115,18 +2123,32 @@ public final class Sequencer {
                 Pattern.CANON_EQ
             );
             int i;
+            boolean defaultOptions = true;
             // Process arguments as options as long as they are not an existing file
-            for (i = 0; i < args.length && Sequencer.isOption(args[i]); i++) {
-                // If control flow steps into the loop then the first argument
-                // is an option, not a file thus reset default options
-                if (i <= 0) Sequencer.OPTIONS.options = 0;
+            for (i = 0; i < args.length && this.isOption(args[i]); i++) {
                 int subOptionIndex;
-                final String option;
-                switch ((option = OptionPrefixPattern.matcher(args[i].trim().toLowerCase()).replaceAll("")).charAt(subOptionIndex = 0)) {
+                final String option = OptionPrefixPattern.matcher(
+                    args[i].trim().toLowerCase()
+                ).replaceAll("");
+                // Test for long options, which must be prefixed with two
+                // hyphens. Any other option is processed as a short option.
+                final int lastIndex;
+                if (args[i].trim().startsWith("--") &&
+                    (lastIndex = this.processLongOption(option, args, i)) >= 0) {
+                    i = lastIndex;
+                    continue;
+                }
+                // If control flow steps here for the first time then a short
+                // option has been specified thus reset default options
+                if (defaultOptions) {
+                    this.options.options &= Sequencer.Options.LONG_OPTIONS;
+                    defaultOptions = false;
+                }
+                switch (option.charAt(subOptionIndex = 0)) {
                     // Test for -a option
                     case 'a':
                         // If the -a option has been already specified then error out
-                        if (Sequencer.OPTIONS.isOptionSet(Sequencer.Options.ALTITUDE_OPTION))
+                        if (this.options.isOptionSet(Sequencer.Options.ALTITUDE_OPTION))
                             throw new IllegalArgumentException(
                                 Sequencer.m(
                                     "Sequencer.cmdline.error.once",
@@ -1134,14 +2156,14 @@ public final class Sequencer {
                                 )
                             );
                         // Set the altitude option
-                        Sequencer.OPTIONS.options |= Sequencer.Options.ALTITUDE_OPTION;
+                        this.options.options |= Sequencer.Options.ALTITUDE_OPTION;
                         // If the -a option has a height sub-argument then parse and set it
                         // That is, if the next argument is neither a file nor an option then
                         // -a has a sub-argument specified
                         if (i + 1 < args.length &&
-                            !Sequencer.isOption(args[i + 1])) {
+                            !this.isOption(args[i + 1])) {
                             try {
-                                Sequencer.OPTIONS.altitude = NumberFormat.getInstance().parse(
+                                this.options.altitude = NumberFormat.getInstance().parse(
                                     args[i + 1].trim()
                                 ).doubleValue();
                             } catch (ParseException e) {
@@ -1160,7 +2182,7 @@ public final class Sequencer {
                         // Test for -c option
                     case 'c':
                         // If the -c option has been already specified then error out
-                        if (Sequencer.OPTIONS.isOptionSet(Sequencer.Options.CENTER_OPTION))
+                        if (this.options.isOptionSet(Sequencer.Options.CENTER_OPTION))
                             throw new IllegalArgumentException(
                                 Sequencer.m(
                                     "Sequencer.cmdline.error.once",
@@ -1168,7 +2190,7 @@ public final class Sequencer {
                                 )
                             );
                         // If the -l or -s option has been specified then error out
-                        if (Sequencer.OPTIONS.isOptionSet(
+                        if (this.options.isOptionSet(
                                 Sequencer.Options.LINEAR_INTERPOLATE_OPTION |
                                 Sequencer.Options.SMOOTH_OPTION
                             ))
@@ -1176,7 +2198,7 @@ public final class Sequencer {
                                 Sequencer.m(
                                     "Sequencer.cmdline.error.exlusive",
                                     args[i],
-                                    Sequencer.OPTIONS.isOptionSet(
+                                    this.options.isOptionSet(
                                         Sequencer.Options.LINEAR_INTERPOLATE_OPTION
                                     ) ?
                                         "-l" :
@@ -1184,25 +2206,25 @@ public final class Sequencer {
                                 )
                             );
                         // Set the center option
-                        Sequencer.OPTIONS.options |= Sequencer.Options.CENTER_OPTION;
+                        this.options.options |= Sequencer.Options.CENTER_OPTION;
                         // If the -c option has a degrees sub-argument then parse and set it
                         // That is, if the next argument is neither a file nor an option then
                         // -c has a sub-argument specified
                         {
                             final String subArg;
                             if (i + 1 < args.length &&
-                                !Sequencer.isOption(subArg = args[i + 1])) {
+                                !this.isOption(subArg = args[i + 1])) {
                                 final String upperCaseSubArg;
                                 // Test if sub-argument ends with a T
                                 if ((upperCaseSubArg = subArg.toUpperCase()).endsWith(GpsTagConstants.GPS_TAG_GPS_IMG_DIRECTION_REF_VALUE_TRUE_NORTH))
-                                    Sequencer.OPTIONS.degreesRef = GpsTagConstants.GPS_TAG_GPS_IMG_DIRECTION_REF_VALUE_TRUE_NORTH;
+                                    this.options.degreesRef = GpsTagConstants.GPS_TAG_GPS_IMG_DIRECTION_REF_VALUE_TRUE_NORTH;
                                 // Test if sub-argument ends with an M
                                 else if (upperCaseSubArg.endsWith(GpsTagConstants.GPS_TAG_GPS_IMG_DIRECTION_REF_VALUE_MAGNETIC_NORTH))
-                                    Sequencer.OPTIONS.degreesRef = GpsTagConstants.GPS_TAG_GPS_IMG_DIRECTION_REF_VALUE_MAGNETIC_NORTH;
+                                    this.options.degreesRef = GpsTagConstants.GPS_TAG_GPS_IMG_DIRECTION_REF_VALUE_MAGNETIC_NORTH;
                                 // TODO: Throw exception if any other suffix than T or M to the number
                                 try {
                                     // Parse degrees number without reference suffix
-                                    Sequencer.OPTIONS.degrees = NumberFormat.getNumberInstance().parse(
+                                    this.options.degrees = NumberFormat.getNumberInstance().parse(
                                         Pattern.compile(
                                             "[TM]$",
                                             Sequencer.Options.PATTERN_FLAGS
@@ -1225,7 +2247,7 @@ public final class Sequencer {
                         // Test for -d option
                     case 'd':
                         // If the -d option has been already specified then error out
-                        if (Sequencer.OPTIONS.isOptionSet(Sequencer.Options.DROP_OPTION))
+                        if (this.options.isOptionSet(Sequencer.Options.DROP_OPTION))
                             throw new IllegalArgumentException(
                                 Sequencer.m(
                                     "Sequencer.cmdline.error.once",
@@ -1233,12 +2255,12 @@ public final class Sequencer {
                                 )
                             );
                         // Set the drop option
-                        Sequencer.OPTIONS.options |= Sequencer.Options.DROP_OPTION;
+                        this.options.options |= Sequencer.Options.DROP_OPTION;
                         break;
                         // Test for -g option
                     case 'g':
                         // If the -g option has been already specified then error out
-                        if (Sequencer.OPTIONS.isOptionSet(Sequencer.Options.GPX_FILE_OPTION))
+                        if (this.options.isOptionSet(Sequencer.Options.GPX_FILE_OPTION))
                             throw new IllegalArgumentException(
                                 Sequencer.m(
                                     "Sequencer.cmdline.error.once",
@@ -1246,12 +2268,12 @@ public final class Sequencer {
                                 )
                             );
                         // Set the GPX file option
-                        Sequencer.OPTIONS.options |= Sequencer.Options.GPX_FILE_OPTION;
+                        this.options.options |= Sequencer.Options.GPX_FILE_OPTION;
                         break;
                         // Test for -i option
                     case 'i':
                         // If the -i option has been already specified then error out
-                        if (Sequencer.OPTIONS.isOptionSet(Sequencer.Options.ISO_TIME_OPTION))
+                        if (this.options.isOptionSet(Sequencer.Options.ISO_TIME_OPTION))
                             throw new IllegalArgumentException(
                                 Sequencer.m(
                                     "Sequencer.cmdline.error.once",
@@ -1259,9 +2281,9 @@ public final class Sequencer {
                                 )
                             );
                         // Set the iso time stamp option
-                        Sequencer.OPTIONS.options |= Sequencer.Options.ISO_TIME_OPTION;
+                        this.options.options |= Sequencer.Options.ISO_TIME_OPTION;
                         // Set the local time zone ISO DateTimeFormatter
-                        Sequencer.OPTIONS.dateTimeFormatter =
+                        this.options.dateTimeFormatter =
                             DateTimeFormatter.ISO_LOCAL_DATE_TIME.withZone(
                                 ZoneId.systemDefault()
                             );
@@ -1269,7 +2291,7 @@ public final class Sequencer {
                         // Test for -k option
                     case 'k':
                         // If the -k option has been already specified then error out
-                        if (Sequencer.OPTIONS.isOptionSet(Sequencer.Options.PRESERVE_TIME_STAMP_OPTION))
+                        if (this.options.isOptionSet(Sequencer.Options.PRESERVE_TIME_STAMP_OPTION))
                             throw new IllegalArgumentException(
                                 Sequencer.m(
                                     "Sequencer.cmdline.error.once",
@@ -1277,12 +2299,12 @@ public final class Sequencer {
                                 )
                             );
                         // Set the preserve file modification time stamp option
-                        Sequencer.OPTIONS.options |= Sequencer.Options.PRESERVE_TIME_STAMP_OPTION;
+                        this.options.options |= Sequencer.Options.PRESERVE_TIME_STAMP_OPTION;
                         break;
                         // Test for -l option
                     case 'l':
                         // If the -l option has been already specified then error out
-                        if (Sequencer.OPTIONS.isOptionSet(Sequencer.Options.LINEAR_INTERPOLATE_OPTION))
+                        if (this.options.isOptionSet(Sequencer.Options.LINEAR_INTERPOLATE_OPTION))
                             throw new IllegalArgumentException(
                                 Sequencer.m(
                                     "Sequencer.cmdline.error.once",
@@ -1290,7 +2312,7 @@ public final class Sequencer {
                                 )
                             );
                         // If the -c or -s option has been specified then error out
-                        if (Sequencer.OPTIONS.isOptionSet(
+                        if (this.options.isOptionSet(
                                 Sequencer.Options.CENTER_OPTION |
                                 Sequencer.Options.SMOOTH_OPTION
                             ))
@@ -1298,7 +2320,7 @@ public final class Sequencer {
                                 Sequencer.m(
                                     "Sequencer.cmdline.error.exlusive",
                                     args[i],
-                                    Sequencer.OPTIONS.isOptionSet(
+                                    this.options.isOptionSet(
                                         Sequencer.Options.CENTER_OPTION
                                     ) ?
                                         "-c" :
@@ -1306,12 +2328,12 @@ public final class Sequencer {
                                 )
                             );
                         // Set the extrapolate option
-                        Sequencer.OPTIONS.options |= Sequencer.Options.LINEAR_INTERPOLATE_OPTION;
+                        this.options.options |= Sequencer.Options.LINEAR_INTERPOLATE_OPTION;
                         break;
                         // Test for -n option
                     case 'n':
                         // If the -n option has been already specified then error out
-                        if (Sequencer.OPTIONS.isOptionSet(Sequencer.Options.NORMALIZE_OPTION))
+                        if (this.options.isOptionSet(Sequencer.Options.NORMALIZE_OPTION))
                             throw new IllegalArgumentException(
                                 Sequencer.m(
                                     "Sequencer.cmdline.error.once",
@@ -1319,12 +2341,12 @@ public final class Sequencer {
                                 )
                             );
                         // Set the normalize option
-                        Sequencer.OPTIONS.options |= Sequencer.Options.NORMALIZE_OPTION;
+                        this.options.options |= Sequencer.Options.NORMALIZE_OPTION;
                         break;
                         // Test for -p option
                     case 'p':
                         // If the -p option has been already specified then error out
-                        if (Sequencer.OPTIONS.isOptionSet(Sequencer.Options.SPEED_OPTION))
+                        if (this.options.isOptionSet(Sequencer.Options.SPEED_OPTION))
                             throw new IllegalArgumentException(
                                 Sequencer.m(
                                     "Sequencer.cmdline.error.once",
@@ -1332,7 +2354,7 @@ public final class Sequencer {
                                 )
                             );
                         // Set the speed option
-                        Sequencer.OPTIONS.options |= Sequencer.Options.SPEED_OPTION;
+                        this.options.options |= Sequencer.Options.SPEED_OPTION;
                         // Parse the speed sub-argument
                         if (i + 1 >= args.length)
                             throw new IllegalArgumentException(
@@ -1345,17 +2367,17 @@ public final class Sequencer {
                         final String subArg, upperCaseSubArg;
                         // Test if sub-argument ends with a K
                         if ((upperCaseSubArg = (subArg = args[i + 1].trim()).toUpperCase()).endsWith(GpsTagConstants.GPS_TAG_GPS_SPEED_REF_VALUE_KMPH))
-                            Sequencer.OPTIONS.speedRef = GpsTagConstants.GPS_TAG_GPS_SPEED_REF_VALUE_KMPH;
+                            this.options.speedRef = GpsTagConstants.GPS_TAG_GPS_SPEED_REF_VALUE_KMPH;
                         // Test if sub-argument ends with an M
                         else if (upperCaseSubArg.endsWith(GpsTagConstants.GPS_TAG_GPS_SPEED_REF_VALUE_MPH))
-                            Sequencer.OPTIONS.speedRef = GpsTagConstants.GPS_TAG_GPS_SPEED_REF_VALUE_MPH;
+                            this.options.speedRef = GpsTagConstants.GPS_TAG_GPS_SPEED_REF_VALUE_MPH;
                         // Test if sub-argument ends with an N
                         else if (upperCaseSubArg.endsWith(GpsTagConstants.GPS_TAG_GPS_SPEED_REF_VALUE_KNOTS))
-                            Sequencer.OPTIONS.speedRef = GpsTagConstants.GPS_TAG_GPS_SPEED_REF_VALUE_KNOTS;
+                            this.options.speedRef = GpsTagConstants.GPS_TAG_GPS_SPEED_REF_VALUE_KNOTS;
                         // TODO: Throw exception if number ends with any other suffix than K, M, or N
                         try {
                             // Parse speed number without reference (unit of speed) suffix
-                            Sequencer.OPTIONS.speed = NumberFormat.getNumberInstance().parse(
+                            this.options.speed = NumberFormat.getNumberInstance().parse(
                                 Pattern.compile(
                                     "[KMN]$",
                                     Sequencer.Options.PATTERN_FLAGS
@@ -1377,7 +2399,7 @@ public final class Sequencer {
                         // Test for -q option
                     case 'q':
                         // If the -q option has been already specified then error out
-                        if (Sequencer.OPTIONS.isOptionSet(Sequencer.Options.QUALITY_OPTION))
+                        if (this.options.isOptionSet(Sequencer.Options.QUALITY_OPTION))
                             throw new IllegalArgumentException(
                                 Sequencer.m(
                                     "Sequencer.cmdline.error.once",
@@ -1385,7 +2407,7 @@ public final class Sequencer {
                                 )
                             );
                         // Set the quality level option
-                        Sequencer.OPTIONS.options |= Sequencer.Options.QUALITY_OPTION;
+                        this.options.options |= Sequencer.Options.QUALITY_OPTION;
                         // Parse the quality sub-argument
                         if (i + 1 >= args.length)
                             throw new IllegalArgumentException(
@@ -1396,18 +2418,18 @@ public final class Sequencer {
                             );
                         try {
                             // Parse quality level number
-                            if ((Sequencer.OPTIONS.quality = NumberFormat.getIntegerInstance().parse(
+                            if ((this.options.quality = NumberFormat.getIntegerInstance().parse(
                                 args[i + 1].trim()
-                            ).intValue()) < 0 || Sequencer.OPTIONS.quality > 100)
-                                System.out.println(
+                            ).intValue()) < 0 || this.options.quality > 100)
+                                this.out.println(
                                     Sequencer.m(
                                         "Sequencer.cmdline.warning.quality.level",
                                         args[i],
-                                        Sequencer.OPTIONS.quality = Sequencer.OPTIONS.quality < 0 ?
+                                        this.options.quality = this.options.quality < 0 ?
                                             0 :
-                                            Sequencer.OPTIONS.quality > 100 ?
+                                            this.options.quality > 100 ?
                                                 100 :
-                                                Sequencer.OPTIONS.quality
+                                                this.options.quality
                                     )
                                 );
                         } catch (ParseException e) {
@@ -1425,7 +2447,7 @@ public final class Sequencer {
                         // Test for -r option
                     case 'r':
                         // If the -r option has been already specified then error out
-                        if (Sequencer.OPTIONS.isOptionSet(Sequencer.Options.RESIZE_OPTION))
+                        if (this.options.isOptionSet(Sequencer.Options.RESIZE_OPTION))
                             throw new IllegalArgumentException(
                                 Sequencer.m(
                                     "Sequencer.cmdline.error.once",
@@ -1433,12 +2455,12 @@ public final class Sequencer {
                                 )
                             );
                         // Set the resize option
-                        Sequencer.OPTIONS.options |= Sequencer.Options.RESIZE_OPTION;
+                        this.options.options |= Sequencer.Options.RESIZE_OPTION;
                         break;
                         // Test for -s option
                     case 's':
                         // If the -s option has been already specified then error out
-                        if (Sequencer.OPTIONS.isOptionSet(Sequencer.Options.SMOOTH_OPTION))
+                        if (this.options.isOptionSet(Sequencer.Options.SMOOTH_OPTION))
                             throw new IllegalArgumentException(
                                 Sequencer.m(
                                     "Sequencer.cmdline.error.once",
@@ -1446,7 +2468,7 @@ public final class Sequencer {
                                 )
                             );
                         // If the -c or -l option has been specified then error out
-                        if (Sequencer.OPTIONS.isOptionSet(
+                        if (this.options.isOptionSet(
                                 Sequencer.Options.CENTER_OPTION |
                                 Sequencer.Options.LINEAR_INTERPOLATE_OPTION
                             ))
@@ -1454,7 +2476,7 @@ public final class Sequencer {
                                 Sequencer.m(
                                     "Sequencer.cmdline.error.exlusive",
                                     args[i],
-                                    Sequencer.OPTIONS.isOptionSet(
+                                    this.options.isOptionSet(
                                         Sequencer.Options.CENTER_OPTION
                                     ) ?
                                         "-c" :
@@ -1462,13 +2484,13 @@ public final class Sequencer {
                                 )
                             );
                         // Set the smooth option
-                        Sequencer.OPTIONS.options |= Sequencer.Options.SMOOTH_OPTION;
+                        this.options.options |= Sequencer.Options.SMOOTH_OPTION;
                         smoothOptionIndex = i;
                         // Test for sub-options of -s
                         for (subOptionIndex++; subOptionIndex < option.length(); subOptionIndex++)
                             switch (option.charAt(subOptionIndex)) {
                                 case 'a':
-                                    if (Sequencer.OPTIONS.isOptionSet(Sequencer.Options.SMOOTH_ALTITUDE_OPTION))
+                                    if (this.options.isOptionSet(Sequencer.Options.SMOOTH_ALTITUDE_OPTION))
                                         throw new IllegalArgumentException(
                                             Sequencer.m(
                                                 "Sequencer.cmdline.error.suboption.once",
@@ -1476,10 +2498,10 @@ public final class Sequencer {
                                                 option
                                             )
                                         );
-                                    Sequencer.OPTIONS.options |= Sequencer.Options.SMOOTH_ALTITUDE_OPTION;
+                                    this.options.options |= Sequencer.Options.SMOOTH_ALTITUDE_OPTION;
                                     break;
                                 case 'h':
-                                    if (Sequencer.OPTIONS.isOptionSet(Sequencer.Options.SMOOTH_HARMONIC_OPTION))
+                                    if (this.options.isOptionSet(Sequencer.Options.SMOOTH_HARMONIC_OPTION))
                                         throw new IllegalArgumentException(
                                             Sequencer.m(
                                                 "Sequencer.cmdline.error.suboption.once",
@@ -1487,10 +2509,10 @@ public final class Sequencer {
                                                 option
                                             )
                                         );
-                                    Sequencer.OPTIONS.options |= Sequencer.Options.SMOOTH_HARMONIC_OPTION;
+                                    this.options.options |= Sequencer.Options.SMOOTH_HARMONIC_OPTION;
                                     break;
                                 case 's':
-                                    if (Sequencer.OPTIONS.isOptionSet(Sequencer.Options.SMOOTH_SPEED_OPTION))
+                                    if (this.options.isOptionSet(Sequencer.Options.SMOOTH_SPEED_OPTION))
                                         throw new IllegalArgumentException(
                                             Sequencer.m(
                                                 "Sequencer.cmdline.error.suboption.once",
@@ -1498,10 +2520,10 @@ public final class Sequencer {
                                                 option
                                             )
                                         );
-                                    Sequencer.OPTIONS.options |= Sequencer.Options.SMOOTH_SPEED_OPTION;
+                                    this.options.options |= Sequencer.Options.SMOOTH_SPEED_OPTION;
                                     break;
                                 case 't':
-                                    if (Sequencer.OPTIONS.isOptionSet(Sequencer.Options.SMOOTH_TIME_OPTION))
+                                    if (this.options.isOptionSet(Sequencer.Options.SMOOTH_TIME_OPTION))
                                         throw new IllegalArgumentException(
                                             Sequencer.m(
                                                 "Sequencer.cmdline.error.suboption.once",
@@ -1509,7 +2531,7 @@ public final class Sequencer {
                                                 option
                                             )
                                         );
-                                    Sequencer.OPTIONS.options |= Sequencer.Options.SMOOTH_TIME_OPTION;
+                                    this.options.options |= Sequencer.Options.SMOOTH_TIME_OPTION;
                                     break;
                                 default:
                                     throw new IllegalArgumentException(
@@ -1524,12 +2546,12 @@ public final class Sequencer {
                         // That is, if the next argument is neither a file nor an option then
                         // -s has a sub-argument specified
                         if (i + 1 < args.length &&
-                            !Sequencer.isOption(args[i + 1]))
+                            !this.isOption(args[i + 1]))
 //                            !new File(args[i + 1]).exists() &&
 //                            !OPTION_PATTERN.matcher(args[i + 1].trim()).find()) {
                             try {
                                 // Parse nodes number
-                                Sequencer.OPTIONS.nodes = NumberFormat.getIntegerInstance().parse(
+                                this.options.nodes = NumberFormat.getIntegerInstance().parse(
                                     args[i + 1].trim()
                                 ).intValue();
                             } catch (ParseException e) {
@@ -1547,7 +2569,7 @@ public final class Sequencer {
                         break;
                     case 't':
                         // If the -t option has been already specified then error out
-                        if (Sequencer.OPTIONS.isOptionSet(Sequencer.Options.TIME_STAMP_OPTION))
+                        if (this.options.isOptionSet(Sequencer.Options.TIME_STAMP_OPTION))
                             throw new IllegalArgumentException(
                                 Sequencer.m(
                                     "Sequencer.cmdline.error.once",
@@ -1555,12 +2577,12 @@ public final class Sequencer {
                                 )
                             );
                         // Set the time stamp from file option
-                        Sequencer.OPTIONS.options |= Sequencer.Options.TIME_STAMP_OPTION;
+                        this.options.options |= Sequencer.Options.TIME_STAMP_OPTION;
                         // Test for sub-options of -t
                         for (subOptionIndex++; subOptionIndex < option.length(); subOptionIndex++)
                             switch (option.charAt(subOptionIndex)) {
                                 case 'o':
-                                    if (Sequencer.OPTIONS.isOptionSet(Sequencer.Options.TIME_STAMP_OVERWRITE_OPTION))
+                                    if (this.options.isOptionSet(Sequencer.Options.TIME_STAMP_OVERWRITE_OPTION))
                                         throw new IllegalArgumentException(
                                             Sequencer.m(
                                                 "Sequencer.cmdline.error.suboption.once",
@@ -1568,7 +2590,7 @@ public final class Sequencer {
                                                 option
                                             )
                                         );
-                                    Sequencer.OPTIONS.options |= Sequencer.Options.TIME_STAMP_OVERWRITE_OPTION;
+                                    this.options.options |= Sequencer.Options.TIME_STAMP_OVERWRITE_OPTION;
                                     break;
                                 default:
                                     throw new IllegalArgumentException(
@@ -1583,7 +2605,7 @@ public final class Sequencer {
                         // Test for -u option
                     case 'u':
                         // If the -u option has been already specified then error out
-                        if (Sequencer.OPTIONS.isOptionSet(Sequencer.Options.UTC_TIME_ZONE_OPTION))
+                        if (this.options.isOptionSet(Sequencer.Options.UTC_TIME_ZONE_OPTION))
                             throw new IllegalArgumentException(
                                 Sequencer.m(
                                     "Sequencer.cmdline.error.once",
@@ -1591,18 +2613,18 @@ public final class Sequencer {
                                 )
                             );
                         // Set the utc time zone option
-                        Sequencer.OPTIONS.options |= Sequencer.Options.UTC_TIME_ZONE_OPTION;
+                        this.options.options |= Sequencer.Options.UTC_TIME_ZONE_OPTION;
                         // If ISO and UTC requested then use predefined DateTimeFormatter.ISO_INSTANT
-                        if (Sequencer.OPTIONS.isOptionSet(Sequencer.Options.ISO_TIME_OPTION))
-                            Sequencer.OPTIONS.dateTimeFormatter = DateTimeFormatter.ISO_INSTANT;
+                        if (this.options.isOptionSet(Sequencer.Options.ISO_TIME_OPTION))
+                            this.options.dateTimeFormatter = DateTimeFormatter.ISO_INSTANT;
                         else { // Format date time stamps in UTC time zone with time zone field since they are not local
-                            Sequencer.OPTIONS.dateTimeFormatter =
+                            this.options.dateTimeFormatter =
                                 DateTimeFormatter.ofLocalizedDateTime(
                                     FormatStyle.MEDIUM,
                                     FormatStyle.LONG
                                 );
-                            Sequencer.OPTIONS.dateTimeFormatter =
-                                Sequencer.OPTIONS.dateTimeFormatter.withZone(
+                            this.options.dateTimeFormatter =
+                                this.options.dateTimeFormatter.withZone(
                                     ZoneId.of("UTC")
                                 );
                         }
@@ -1610,7 +2632,7 @@ public final class Sequencer {
                         // Test for -v option
                     case 'v':
                         // If the -v option has been already specified then error out
-                        if (Sequencer.OPTIONS.isOptionSet(Sequencer.Options.VERBOSE_OPTION))
+                        if (this.options.isOptionSet(Sequencer.Options.VERBOSE_OPTION))
                             throw new IllegalArgumentException(
                                 Sequencer.m(
                                     "Sequencer.cmdline.error.once",
@@ -1618,12 +2640,12 @@ public final class Sequencer {
                                 )
                             );
                         // Set the verbose option
-                        Sequencer.OPTIONS.options |= Sequencer.Options.VERBOSE_OPTION;
+                        this.options.options |= Sequencer.Options.VERBOSE_OPTION;
                         break;
                         // Test for -x option
                     case 'x':
                         // If the -x option has been already specified then error out
-                        if (Sequencer.OPTIONS.isOptionSet(Sequencer.Options.GPS_AREA_INFO_OPTION))
+                        if (this.options.isOptionSet(Sequencer.Options.GPS_AREA_INFO_OPTION))
                             throw new IllegalArgumentException(
                                 Sequencer.m(
                                     "Sequencer.cmdline.error.once",
@@ -1637,9 +2659,9 @@ public final class Sequencer {
                                     args[i]
                                 )
                             );
-                        Sequencer.OPTIONS.gpsAreaInformation = args[i += 1];
+                        this.options.gpsAreaInformation = args[i += 1];
                         // Set the GPS area information option
-                        Sequencer.OPTIONS.options |= Sequencer.Options.GPS_AREA_INFO_OPTION;
+                        this.options.options |= Sequencer.Options.GPS_AREA_INFO_OPTION;
                         break;
                     default:
                         throw new IllegalArgumentException(
@@ -1651,27 +2673,48 @@ public final class Sequencer {
                 }
             }
             // All options processed
+            if (this.options.isOptionSet(Sequencer.Options.WATCH_OPTION)) {
+                // Photos cannot be centered, interpolated, or stored in
+                // sequence order before all of them have arrived
+                if (this.options.isOptionSet(
+                        Sequencer.Options.CENTER_OPTION |
+                        Sequencer.Options.LINEAR_INTERPOLATE_OPTION |
+                        Sequencer.Options.PLAN_OPTION |
+                        Sequencer.Options.TRACK_STORE_OPTION))
+                    throw new IllegalArgumentException(
+                        Sequencer.m("Sequencer.cmdline.error.watch", "--watch")
+                    );
+                // If watching then args[i] must be the watch directory
+                if (i >= args.length ||
+                    !(this.options.watchDir = this.toFile(args[i++])).isDirectory())
+                    throw new IllegalArgumentException(
+                        Sequencer.m(
+                            "Sequencer.cmdline.error.watch.dir",
+                            Sequencer.Options.getCanonicalPath(this.options.watchDir)
+                        )
+                    );
+            }
             if (i < args.length) {
                 // If args[i] is a file then process input files until no left or args[i] is a directory
                 File inputFile;
-                if ((inputFile = new File(args[i])).exists()) {
+                if ((inputFile = this.toFile(args[i])).exists()) {
                     final List<File> fileList = new LinkedList<File>();
                     for (; i < args.length &&
-                           (inputFile = new File(args[i])).exists() &&
+                           (inputFile = this.toFile(args[i])).exists() &&
                            !inputFile.isDirectory(); i++)
                         fileList.add(inputFile);
                     fileList.toArray(
-                        Sequencer.OPTIONS.inputFiles = new File[fileList.size()]
+                        this.options.inputFiles = new File[fileList.size()]
                     );
                 }
                 // If args[i] is a directory then store output directory
                 if (inputFile.isDirectory())
-                    Sequencer.OPTIONS.outputDir = inputFile;
+                    this.options.outputDir = inputFile;
                 // If args[i] is the last argument and a directory can be created
                 else if (args.length - 1 == i && inputFile.mkdirs())
-                    Sequencer.OPTIONS.outputDir = inputFile;
+                    this.options.outputDir = inputFile;
                 else if (!inputFile.exists()) {
-                    if (args.length - 1 == i && GraphicsEnvironment.isHeadless())
+                    if (args.length - 1 == i && this.isHeadless())
                     throw new IllegalArgumentException(
                         Sequencer.m(
                             "Sequencer.cmdline.error.directory",
@@ -1687,70 +2730,216 @@ public final class Sequencer {
                 }
             }
             // If still no input files have been specified or selected then error out
-            if (Sequencer.OPTIONS.inputFiles == null ||
-                Sequencer.OPTIONS.inputFiles.length <= 0)
-                if (GraphicsEnvironment.isHeadless())
+            if (this.options.watchDir == null &&
+                (this.options.inputFiles == null ||
+                 this.options.inputFiles.length <= 0))
+                if (this.isHeadless())
                     throw new IllegalArgumentException(Sequencer.m(
                         "Sequencer.cmdline.error.input.files")
                     );
-                else if ((Sequencer.OPTIONS.inputFiles = Sequencer.getInputFilesByDialog()).length <= 0)
-                    System.exit(0);
+                else if ((this.options.inputFiles = Dialogs.getInputFiles()).length <= 0)
+                    return false;
+            // A plan does not write photos but any quarantine report goes
+            // next to the plan file
+            if (this.options.outputDir == null && this.options.planFile != null)
+                this.options.outputDir =
+                    this.options.planFile.getAbsoluteFile().getParentFile();
             // If still no output directory has been specified or selected then error out
-            if (Sequencer.OPTIONS.outputDir == null)
-                if (GraphicsEnvironment.isHeadless())
+            if (this.options.outputDir == null)
+                if (this.isHeadless())
                     throw new IllegalArgumentException(Sequencer.m(
                         "Sequencer.cmdline.error.output.dir")
                     );
-                else if ((Sequencer.OPTIONS.outputDir = Sequencer.getOutputDirectoryByDialog()) == null)
-                    System.exit(0);
+                else if ((this.options.outputDir = Dialogs.getOutputDirectory()) == null)
+                    return false;
+            // Photos written into the watch directory would be watched again
+            if (this.options.watchDir != null &&
+                Sequencer.Options.getCanonicalPath(this.options.watchDir).equals(
+                    Sequencer.Options.getCanonicalPath(this.options.outputDir)))
+                throw new IllegalArgumentException(
+                    Sequencer.m(
+                        "Sequencer.cmdline.error.watch.dir",
+                        Sequencer.Options.getCanonicalPath(this.options.watchDir)
+                    )
+                );
         } catch (IllegalArgumentException e) {
-            System.out.println(Sequencer.m("Sequencer.usage"));
+            this.out.println(Sequencer.m("Sequencer.usage"));
             throw e;
         }
         // If smooth option specified adjust nodes limits
-        if (Sequencer.OPTIONS.isOptionSet(Sequencer.Options.SMOOTH_OPTION)) {
-            if (Sequencer.OPTIONS.nodes == 0) {
-                Sequencer.OPTIONS.nodes = Sequencer.OPTIONS.inputFiles.length;
-                return;
+        if (this.options.isOptionSet(Sequencer.Options.SMOOTH_OPTION)) {
+            // Photos keep arriving when watching thus smoothing over all of
+            // them is not possible
+            if (this.options.nodes == 0 && this.options.watchDir != null)
+                this.out.println(
+                    Sequencer.m(
+                        "Sequencer.cmdline.warning.watch.nodes",
+                        this.options.nodes = Sequencer.Options.WATCH_NODES
+                    )
+                );
+            if (this.options.nodes == 0) {
+                this.options.nodes = this.options.inputFiles.length;
+                return true;
             }
-            if (Sequencer.OPTIONS.nodes < 0)
-                System.out.println(
+            if (this.options.nodes < 0)
+                this.out.println(
                     Sequencer.m(
                         "Sequencer.cmdline.warning.nodes.too.low",
                         args[smoothOptionIndex],
-                        Sequencer.OPTIONS.nodes = 0
+                        this.options.nodes = 0
                     )
                 );
             // If nodes is smaller than 2 then effectively do not smooth
-            if (Sequencer.OPTIONS.nodes < 2) {
-                System.out.println(
+            if (this.options.nodes < 2) {
+                this.out.println(
                     Sequencer.m(
                         "Sequencer.cmdline.warning.nodes.off",
-                        Sequencer.OPTIONS.nodes,
+                        this.options.nodes,
                         args[smoothOptionIndex]
                     )
                 );
-                Sequencer.OPTIONS.nodes = 0;
-                Sequencer.OPTIONS.options ^= Sequencer.Options.SMOOTH_OPTION |
+                this.options.nodes = 0;
+                this.options.options ^= Sequencer.Options.SMOOTH_OPTION |
                     Sequencer.Options.SMOOTH_ALTITUDE_OPTION |
                     Sequencer.Options.SMOOTH_HARMONIC_OPTION |
                     Sequencer.Options.SMOOTH_SPEED_OPTION |
                     Sequencer.Options.SMOOTH_TIME_OPTION;
-                return;
+                return true;
             }
             // Set the
             final int inputFileCount;
-            if (Sequencer.OPTIONS.nodes > (inputFileCount = Sequencer.OPTIONS.inputFiles.length)) {
-                System.out.println(
+            if (this.options.watchDir == null &&
+                this.options.nodes > (inputFileCount = this.options.inputFiles.length)) {
+                this.out.println(
                     Sequencer.m(
                         "Sequencer.cmdline.warning.nodes.too.great",
                         args[smoothOptionIndex],
                         inputFileCount
                     )
                 );
-                Sequencer.OPTIONS.nodes = inputFileCount;
+                this.options.nodes = inputFileCount;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Processes a long option and its sub-argument, if it takes any.
+     *
+     * @param option the long option without prefix in lower case
+     * @param args command line arguments
+     * @param i the index of the long option in {@code args}
+     * @return the index of the last argument processed, or {@code -1} if
+     * {@code option} is not a long option
+     * @throws IllegalArgumentException if the long option has been already
+     * specified or its sub-argument is missing
+     */
+    private final int processLongOption(
+        final String option,
+        final String[] args,
+        int i) {
+        final int longOption;
+        switch (option) {
+            case "virtual-threads":
+                longOption = Sequencer.Options.VIRTUAL_THREADS_OPTION;
+                break;
+            case "watch":
+                longOption = Sequencer.Options.WATCH_OPTION;
+                break;
+            case "resume":
+                longOption = Sequencer.Options.RESUME_OPTION;
+                break;
+            case "preflight":
+                longOption = Sequencer.Options.PREFLIGHT_OPTION;
+                break;
+            case "plan":
+                longOption = Sequencer.Options.PLAN_OPTION;
+                break;
+            case "stats":
+                longOption = Sequencer.Options.STATS_OPTION;
+                break;
+            case "jfr":
+                longOption = Sequencer.Options.JFR_OPTION;
+                break;
+            case "progress":
+                longOption = Sequencer.Options.PROGRESS_OPTION;
+                break;
+            case "jmx":
+                longOption = Sequencer.Options.JMX_OPTION;
+                break;
+            case "track-store":
+                longOption = Sequencer.Options.TRACK_STORE_OPTION;
+                break;
+            case "decode-memory":
+                longOption = Sequencer.Options.DECODE_MEMORY_OPTION;
+                break;
+            default:
+                return -1;
+        }
+        // If the long option has been already specified then error out
+        if (this.options.isOptionSet(longOption))
+            throw new IllegalArgumentException(
+                Sequencer.m(
+                    "Sequencer.cmdline.error.once",
+                    args[i]
+                )
+            );
+        if (longOption == Sequencer.Options.PLAN_OPTION) {
+            if (i + 1 >= args.length)
+                throw new IllegalArgumentException(
+                    Sequencer.m(
+                        "Sequencer.cmdline.error.plan",
+                        args[i]
+                    )
+                );
+            this.options.planFile = this.toFile(args[i += 1]);
+        } else if (longOption == Sequencer.Options.PROGRESS_OPTION) {
+            if (i + 1 >= args.length)
+                throw new IllegalArgumentException(
+                    Sequencer.m(
+                        "Sequencer.cmdline.error.progress",
+                        args[i]
+                    )
+                );
+            this.options.progressFile = this.toFile(args[i += 1]);
+        } else if (longOption == Sequencer.Options.TRACK_STORE_OPTION) {
+            if (i + 1 >= args.length)
+                throw new IllegalArgumentException(
+                    Sequencer.m(
+                        "Sequencer.cmdline.error.track.store",
+                        args[i]
+                    )
+                );
+            this.options.trackStoreFile = this.toFile(args[i += 1]);
+        } else if (longOption == Sequencer.Options.DECODE_MEMORY_OPTION) {
+            // Parse the budget in megabytes
+            final long megabytes;
+            try {
+                if (i + 1 >= args.length ||
+                    (megabytes = NumberFormat.getIntegerInstance().parse(
+                        args[i + 1].trim()
+                    ).longValue()) <= 0L ||
+                    megabytes > Long.MAX_VALUE >> 20)
+                    throw new IllegalArgumentException(
+                        Sequencer.m(
+                            "Sequencer.cmdline.error.decode.memory",
+                            args[i]
+                        )
+                    );
+            } catch (ParseException e) {
+                throw new IllegalArgumentException(
+                    Sequencer.m(
+                        "Sequencer.cmdline.error.decode.memory",
+                        args[i]
+                    ),
+                    e
+                );
             }
+            this.options.decodeMemory = megabytes << 20;
+            i++;
         }
+        this.options.options |= longOption;
+        return i;
     }
 
     /**
@@ -1768,11 +2957,7 @@ public final class Sequencer {
         final String messageKey,
         final Object... args) {
         return MessageFormat.format(
-            Sequencer.bundle == null ?
-                (Sequencer.bundle = ResourceBundle.getBundle(
-                    "data/lang/Sequencer"
-                )).getString(messageKey) :
-                Sequencer.bundle.getString(messageKey),
+            Sequencer.Messages.BUNDLE.getString(messageKey),
             args);
     }
 
@@ -1783,23 +2968,178 @@ public final class Sequencer {
      * output directory cannot be accessed.
      */
     public static final void main(final String[] args) throws IOException {
-        Sequencer.processCommandLineArguments(args);
+        final int status;
+        if ((status = new Sequencer().run(args)) != Sequencer.EXIT_SUCCESS)
+            System.exit(status);
+    }
+
+    /**
+     * Runs this job. Processes the command line arguments into the options of
+     * this job, sorts the input files into sequence, and writes the processed
+     * photos to the output directory.
+     *
+     * @param args command line arguments
+     * @return {@link #EXIT_SUCCESS} if all photos have been written, or
+     * {@link #EXIT_QUARANTINE} if any photo has failed and has been
+     * quarantined
+     * @throws java.io.IOException if any of the input files, the output
+     * directory specified on the command line, or output file written to the
+     * output directory cannot be accessed.
+     * @throws IllegalArgumentException if any command line argument is
+     * invalid
+     */
+    public final int run(final String[] args) throws IOException {
+        if (!this.processCommandLineArguments(args))
+            return Sequencer.EXIT_SUCCESS;
+        // Record stages to the flight recorder if requested and available
+        final boolean recording;
+        if (!(recording = this.options.isOptionSet(Sequencer.Options.JFR_OPTION) &&
+                Stats.isFlightRecorderAvailable()) &&
+            this.options.isOptionSet(Sequencer.Options.JFR_OPTION))
+            this.out.println(Sequencer.m("Sequencer.warning.jfr"));
+        // The JMX monitor reads per stage throughput from the statistics
+        if (recording ||
+            this.options.isOptionSet(Sequencer.Options.STATS_OPTION |
+                                     Sequencer.Options.JMX_OPTION))
+            this.stats = new Stats(
+                this.options.isOptionSet(Sequencer.Options.STATS_OPTION |
+                                         Sequencer.Options.JMX_OPTION),
+                recording
+            );
         // Sort input files by GPS date time stamp or fallback to files' last
         // modification time (sort into sequence).
-        System.out.println(Sequencer.OPTIONS.toString());
-        // Sort files by GPS date and time stamp, optionally by an EXIF time
-        // stamp, or finally the file's file system time stamp
-        Arrays.<File>sort(
-            Sequencer.OPTIONS.inputFiles,
-            new ExifDateTimeComparator(true)
+        this.out.println(this.options.toString());
+        // Run reading and writing of photos on virtual threads if requested
+        // and available, otherwise fall back to platform threads
+        final ExecutorService executor;
+        if ((executor = this.options.isOptionSet(Sequencer.Options.VIRTUAL_THREADS_OPTION) ?
+                Pipeline.newVirtualThreadExecutor() :
+                null) == null &&
+            this.options.isOptionSet(Sequencer.Options.VIRTUAL_THREADS_OPTION))
+            this.out.println(
+                Sequencer.m("Sequencer.warning.virtual.threads")
+            );
+        try (final Progress progress = this.options.progressFile != null ?
+                new Progress(
+                    this.options.progressFile,
+                    this.options.watchDir != null ?
+                        -1 :
+                        this.options.inputFiles.length
+                ) :
+                null;
+            final Quarantine quarantine = new Quarantine(
+                this.options.outputDir,
+                this.err,
+                progress);
+            final Monitor monitor = this.newMonitor(quarantine);
+            final VerboseLog verboseLog = this.options.isOptionSet(Sequencer.Options.VERBOSE_OPTION) ?
+                new VerboseLog(this.out, this.err) :
+                null) {
+            this.progress = progress;
+            this.monitor = monitor;
+            this.verboseLog = verboseLog;
+            if (this.options.watchDir != null) {
+                this.enter("watch");
+                this.watch(this.options.watchDir, executor, quarantine);
+            } else {
+                // Validate all photos before any output is written
+                if (this.options.isOptionSet(Sequencer.Options.PREFLIGHT_OPTION))
+                    this.options.inputFiles = this.preflight(
+                        this.options.inputFiles,
+                        quarantine
+                    );
+                // Sort files by GPS date and time stamp, optionally by an
+                // EXIF time stamp, or finally the file's file system time
+                // stamp
+                this.enter("sort");
+                final Stats.Run run = this.stats.begin(Stats.SORT);
+                // A track store sorts photos by the time stamps it keeps,
+                // reading only photos not stored by a previous run
+                try (final TrackStore trackStore = this.options.trackStoreFile != null ?
+                        new TrackStore(
+                            this.options.trackStoreFile,
+                            this.options.inputFiles,
+                            true,
+                            quarantine
+                        ) :
+                        null) {
+                    if ((this.trackStore = trackStore) != null) {
+                        trackStore.sort(this.options.inputFiles);
+                        this.out.println(
+                            Sequencer.m(
+                                "Sequencer.track.store",
+                                trackStore.getReusedCount(),
+                                trackStore.size(),
+                                Sequencer.Options.getCanonicalPath(this.options.trackStoreFile)
+                            )
+                        );
+                    } else ExifDateTimeComparator.sort(this.options.inputFiles, true);
+                    run.end(this.options.inputFiles.length, 0L);
+                    if (this.options.isOptionSet(Sequencer.Options.CENTER_OPTION))
+                        this.center(
+                            this.options.inputFiles,
+                            this.options.degrees,
+                            executor,
+                            quarantine
+                        );
+                    else this.processFiles(
+                        this.options.inputFiles,
+                        executor,
+                        quarantine
+                    );
+                } finally {
+                    this.trackStore = null;
+                }
+            }
+            this.enter("done");
+            if (verboseLog != null)
+                verboseLog.flush();
+            if (this.options.isOptionSet(Sequencer.Options.STATS_OPTION))
+                this.stats.print(this.out);
+            // Summarize any failed photos
+            if (quarantine.size() <= 0)
+                return Sequencer.EXIT_SUCCESS;
+            this.err.println(
+                Sequencer.m(
+                    "Sequencer.error.quarantine",
+                    quarantine.size(),
+                    quarantine.getFile().getPath()
+                )
+            );
+            return Sequencer.EXIT_QUARANTINE;
+        } finally {
+            if (executor != null)
+                executor.shutdown();
+        }
+    }
+
+    /**
+     * Receives processed photos with their final EXIF meta data, either to
+     * write them or to {@linkplain Plan plan} them.
+     *
+     * @see Pipeline#submit(File, TiffOutputSet)
+     * @see Plan#submit(File, TiffOutputSet)
+     */
+    @FunctionalInterface
+    static interface PhotoSink {
+        void submit(File source, TiffOutputSet outputSet) throws IOException;
+    }
+
+    /**
+     * Holds the message bundle, which is loaded on first use. The Java VM
+     * guarantees that the bundle is loaded only once, even if messages are
+     * requested by multiple jobs concurrently.
+     */
+    private static final class Messages {
+        private static final ResourceBundle BUNDLE = ResourceBundle.getBundle(
+            "data/lang/Sequencer"
         );
-        if (Sequencer.OPTIONS.isOptionSet(Sequencer.Options.CENTER_OPTION))
-            Sequencer.center(Sequencer.OPTIONS.inputFiles, Sequencer.OPTIONS.degrees);
-        else Sequencer.processFiles(Sequencer.OPTIONS.inputFiles);
+
+        private Messages() {}
     }
 
-    private static final class JPEGTIFFFilenameFilter implements FilenameFilter {
-        private JPEGTIFFFilenameFilter() {}
+    static final class JPEGTIFFFilenameFilter implements FilenameFilter {
+        JPEGTIFFFilenameFilter() {}
 
         @Override
         public final boolean accept(final File dir, final String name) {
@@ -1816,9 +3156,9 @@ public final class Sequencer {
     }
 
     /**
-     * Representation of globally set options and any pertaining values.
+     * Representation of the options of a job and any pertaining values.
      *
-     * @see Sequencer#OPTIONS
+     * @see Sequencer#getOptions()
      */
     public static final class Options {
         private Options() {}
@@ -1843,7 +3183,54 @@ public final class Sequencer {
                                 TIME_STAMP_OVERWRITE_OPTION  = 0x00020000,
                                 UTC_TIME_ZONE_OPTION         = 0x00040000,
                                 VERBOSE_OPTION               = 0x00080000,
-                                GPS_AREA_INFO_OPTION         = 0x00100000;
+                                GPS_AREA_INFO_OPTION         = 0x00100000,
+                                VIRTUAL_THREADS_OPTION       = 0x00200000,
+                                WATCH_OPTION                 = 0x00400000,
+                                RESUME_OPTION                = 0x00800000,
+                                PREFLIGHT_OPTION             = 0x01000000,
+                                PLAN_OPTION                  = 0x02000000,
+                                STATS_OPTION                 = 0x04000000,
+                                JFR_OPTION                   = 0x08000000,
+                                PROGRESS_OPTION              = 0x10000000,
+                                JMX_OPTION                   = 0x20000000,
+                                TRACK_STORE_OPTION           = 0x40000000,
+                                DECODE_MEMORY_OPTION         = 0x80000000;
+        /**
+         * Combination of all options which can be set by long options only.
+         * Long options do not reset the default options.
+         */
+        private static final int LONG_OPTIONS = Sequencer.Options.VIRTUAL_THREADS_OPTION |
+                                                Sequencer.Options.WATCH_OPTION |
+                                                Sequencer.Options.RESUME_OPTION |
+                                                Sequencer.Options.PREFLIGHT_OPTION |
+                                                Sequencer.Options.PLAN_OPTION |
+                                                Sequencer.Options.STATS_OPTION |
+                                                Sequencer.Options.JFR_OPTION |
+                                                Sequencer.Options.PROGRESS_OPTION |
+                                                Sequencer.Options.JMX_OPTION |
+                                                Sequencer.Options.TRACK_STORE_OPTION |
+                                                Sequencer.Options.DECODE_MEMORY_OPTION;
+        /**
+         * Combination of all options which affect the output of photos.
+         */
+        private static final int OUTPUT_OPTIONS = ~(Sequencer.Options.ISO_TIME_OPTION |
+                                                    Sequencer.Options.UTC_TIME_ZONE_OPTION |
+                                                    Sequencer.Options.VERBOSE_OPTION |
+                                                    Sequencer.Options.VIRTUAL_THREADS_OPTION |
+                                                    Sequencer.Options.RESUME_OPTION |
+                                                    Sequencer.Options.PREFLIGHT_OPTION |
+                                                    Sequencer.Options.PLAN_OPTION |
+                                                    Sequencer.Options.STATS_OPTION |
+                                                    Sequencer.Options.JFR_OPTION |
+                                                    Sequencer.Options.PROGRESS_OPTION |
+                                                    Sequencer.Options.JMX_OPTION |
+                                                    Sequencer.Options.TRACK_STORE_OPTION |
+                                                    Sequencer.Options.DECODE_MEMORY_OPTION);
+        /**
+         * The number of nodes to smooth over when watching a directory and no
+         * number of nodes has been specified.
+         */
+        private static final int WATCH_NODES = 5;
         private static final int PATTERN_FLAGS = Pattern.CANON_EQ |
                                                  Pattern.CASE_INSENSITIVE |
                                                  Pattern.UNICODE_CASE;
@@ -1862,6 +3249,7 @@ public final class Sequencer {
         private String speedRef =
             GpsTagConstants.GPS_TAG_GPS_SPEED_REF_VALUE_KMPH;
         private float quality = 0.9F;
+        private long decodeMemory;
         private DateTimeFormatter dateTimeFormatter =
             DateTimeFormatter.ofLocalizedDateTime(
                 FormatStyle.MEDIUM,
@@ -1869,6 +3257,10 @@ public final class Sequencer {
             ).withZone(ZoneId.systemDefault());
         private File[] inputFiles;
         private File outputDir;
+        private File watchDir;
+        private File planFile;
+        private File progressFile;
+        private File trackStoreFile;
 
         /**
          * Gets the current {@link DateTimeFormatter}.
@@ -1923,6 +3315,17 @@ public final class Sequencer {
          * @see #TIME_STAMP_OVERWRITE_OPTION
          * @see #UTC_TIME_ZONE_OPTION
          * @see #VERBOSE_OPTION
+         * @see #VIRTUAL_THREADS_OPTION
+         * @see #WATCH_OPTION
+         * @see #RESUME_OPTION
+         * @see #PREFLIGHT_OPTION
+         * @see #PLAN_OPTION
+         * @see #STATS_OPTION
+         * @see #JFR_OPTION
+         * @see #PROGRESS_OPTION
+         * @see #JMX_OPTION
+         * @see #TRACK_STORE_OPTION
+         * @see #DECODE_MEMORY_OPTION
          */
         public final int getOptions() {
             return this.options;
@@ -1952,6 +3355,17 @@ public final class Sequencer {
          * @see #TIME_STAMP_OVERWRITE_OPTION
          * @see #UTC_TIME_ZONE_OPTION
          * @see #VERBOSE_OPTION
+         * @see #VIRTUAL_THREADS_OPTION
+         * @see #WATCH_OPTION
+         * @see #RESUME_OPTION
+         * @see #PREFLIGHT_OPTION
+         * @see #PLAN_OPTION
+         * @see #STATS_OPTION
+         * @see #JFR_OPTION
+         * @see #PROGRESS_OPTION
+         * @see #JMX_OPTION
+         * @see #TRACK_STORE_OPTION
+         * @see #DECODE_MEMORY_OPTION
          */
         public final boolean isOptionSet(final int option) {
             return (this.options & option) != 0;
@@ -1969,7 +3383,12 @@ public final class Sequencer {
                 "speed: %,f\n" +
                 "speedRef: %s\n" +
                 "quality: %,f\n" +
-                "outputDir: %s",
+                "decodeMemory: %,d\n" +
+                "outputDir: %s\n" +
+                "watchDir: %s\n" +
+                "planFile: %s\n" +
+                "progressFile: %s\n" +
+                "trackStoreFile: %s",
                 this.options,
                 this.altitude,
                 this.degrees,
@@ -1980,7 +3399,12 @@ public final class Sequencer {
                 this.speed,
                 this.speedRef,
                 this.quality,
-                Sequencer.Options.getCanonicalPath(this.outputDir)
+                this.decodeMemory,
+                Sequencer.Options.getCanonicalPath(this.outputDir),
+                Sequencer.Options.getCanonicalPath(this.watchDir),
+                Sequencer.Options.getCanonicalPath(this.planFile),
+                Sequencer.Options.getCanonicalPath(this.progressFile),
+                Sequencer.Options.getCanonicalPath(this.trackStoreFile)
             );
         }
 
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2016 Mapillary AB, Sweden
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mapillary;
+
+import java.util.Map;
+
+/**
+ * The live progress of a running job, registered as
+ * {@code com.mapillary:type=Sequencer,name=job-}<i>n</i> in the platform
+ * MBean server if the {@code --jmx} option is set. All attributes are read
+ * only and reflect the moment they are read.
+ *
+ * @author <a href="mailto:Jacob%20Wisor%20&lt;GITNE@noreply.users.github.com&gt;?subject=[com.mapillary.SequencerMXBean]%20mkseq">Jacob Wisor</a>
+ *
+ * @see Sequencer.Options#JMX_OPTION
+ */
+public interface SequencerMXBean {
+    /**
+     * Gets the stage the job is in, one of {@code preflight}, {@code sort},
+     * {@code metadata}, {@code sequence}, {@code write}, {@code watch}, or
+     * {@code done}.
+     *
+     * @return the current stage
+     */
+    String getStage();
+
+    /**
+     * Gets the count of photos of the job.
+     *
+     * @return the count of input photos, or {@code -1} if unknown because a
+     * directory is watched
+     */
+    int getTotalPhotos();
+
+    /**
+     * Gets the count of photos written, planned, skipped, or failed.
+     *
+     * @return the count of photos done
+     */
+    int getDonePhotos();
+
+    /**
+     * Gets the count of photos not done yet.
+     *
+     * @return the count of remaining photos, or {@code -1} if unknown
+     */
+    int getRemainingPhotos();
+
+    /**
+     * Gets the count of photos written to the output directory.
+     *
+     * @return the count of written photos
+     */
+    int getWrittenPhotos();
+
+    /**
+     * Gets the count of photos added to the plan.
+     *
+     * @return the count of planned photos
+     */
+    int getPlannedPhotos();
+
+    /**
+     * Gets the count of photos skipped, because they have been written by a
+     * previous run.
+     *
+     * @return the count of skipped photos
+     */
+    int getSkippedPhotos();
+
+    /**
+     * Gets the count of photos which have failed and have been quarantined.
+     *
+     * @return the count of failed photos
+     */
+    int getFailedPhotos();
+
+    /**
+     * Gets the bytes written to the output directory.
+     *
+     * @return the bytes written
+     */
+    long getBytesWritten();
+
+    /**
+     * Gets the wall clock time since the job has started.
+     *
+     * @return the elapsed time in milliseconds
+     */
+    long getElapsedMillis();
+
+    /**
+     * Gets the time since the count of photos done has last changed, as
+     * observed by reads of this or any other attribute. A growing value while
+     * photos remain denotes a stalled job.
+     *
+     * @return the time in milliseconds since the last observed progress
+     */
+    long getMillisSinceProgress();
+
+    /**
+     * Gets the rate of photos done since the job has started.
+     *
+     * @return the rate in photos per second
+     */
+    double getPhotosPerSecond();
+
+    /**
+     * Gets the count of photos submitted to the pipeline but not read yet.
+     *
+     * @return the count of pending photos, or {@code 0} without a pipeline
+     */
+    int getPendingQueueDepth();
+
+    /**
+     * Gets the count of photos read but not transformed yet.
+     *
+     * @return the depth of the read queue, or {@code 0} without a pipeline
+     */
+    int getReadQueueDepth();
+
+    /**
+     * Gets the bytes of photos read but not transformed yet.
+     *
+     * @return the bytes in the read queue, or {@code -1} if unknown
+     */
+    long getReadQueueBytes();
+
+    /**
+     * Gets the count of photos transformed but not written yet.
+     *
+     * @return the depth of the write queue, or {@code 0} without a pipeline
+     */
+    int getWriteQueueDepth();
+
+    /**
+     * Gets the bytes of photos transformed but not written yet.
+     *
+     * @return the bytes in the write queue, or {@code -1} if unknown
+     */
+    long getWriteQueueBytes();
+
+    /**
+     * Gets the count of runs of each stage which has run.
+     *
+     * @return the count of runs by stage name
+     */
+    Map<String, Long> getStageRuns();
+
+    /**
+     * Gets the throughput of each stage which has run, per thread.
+     *
+     * @return the photos per second by stage name
+     */
+    Map<String, Double> getStagePhotosPerSecond();
+
+    /**
+     * Gets the mean latency of a run of each stage which has run.
+     *
+     * @return the mean time of a run in milliseconds by stage name
+     */
+    Map<String, Double> getStageMeanMillis();
+}
@@ -0,0 +1,539 @@
+/*
+ * Copyright 2016 Mapillary AB, Sweden
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mapillary;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Timing and throughput statistics of the stages of a job. Each stage
+ * accumulates the count of its runs, the photos, the wall clock time, the
+ * bytes, and the heap allocations of its runs, and keeps the times of up
+ * to 65536 of its runs, sampled uniformly, for latency percentiles. A run of a stage is {@linkplain #begin(int)
+ * begun} before and {@linkplain Stats.Run#end(File, int, long) ended} after
+ * the stage's work. If recording is enabled then each run is also emitted as
+ * a {@link Stats.Event} to the Java Flight Recorder.<br>
+ * A disabled instance neither measures nor records anything, so that stages
+ * can be instrumented unconditionally at the cost of a branch per run.
+ * Allocations are measured by the {@code com.sun.management.ThreadMXBean}
+ * where supported, and not at all on virtual threads.
+ *
+ * @author <a href="mailto:Jacob%20Wisor%20&lt;GITNE@noreply.users.github.com&gt;?subject=[com.mapillary.Stats]%20mkseq">Jacob Wisor</a>
+ *
+ * @see Sequencer.Options#STATS_OPTION
+ * @see Sequencer.Options#JFR_OPTION
+ */
+final class Stats {
+    /**
+     * Sorting the input files into sequence.
+     */
+    static final int SORT     = 0;
+    /**
+     * Reading and parsing the meta data of a photo.
+     */
+    static final int METADATA = 1;
+    /**
+     * Smoothing, interpolating, or centering a sequence, excluding the time
+     * spent submitting photos.
+     */
+    static final int SEQUENCE = 2;
+    /**
+     * Submitting a photo to the pipeline or plan, including any time spent
+     * waiting for room in the pipeline.
+     */
+    static final int SUBMIT   = 3;
+    /**
+     * Reading the source bytes of a photo.
+     */
+    static final int READ     = 4;
+    /**
+     * Decoding the image of a photo.
+     */
+    static final int DECODE   = 5;
+    /**
+     * Scaling the decoded image of a photo.
+     */
+    static final int RESIZE   = 6;
+    /**
+     * Encoding the scaled image of a photo.
+     */
+    static final int ENCODE   = 7;
+    /**
+     * Rewriting the EXIF meta data of a photo.
+     */
+    static final int REWRITE  = 8;
+    /**
+     * Writing a photo to the output directory.
+     */
+    static final int WRITE    = 9;
+
+    private static final String[] STAGE_NAMES = {
+        "sort",
+        "metadata",
+        "sequence",
+        "submit",
+        "read",
+        "decode",
+        "resize",
+        "encode",
+        "rewrite",
+        "write"
+    };
+
+    /**
+     * Statistics which neither measure nor record anything.
+     */
+    static final Stats DISABLED = new Stats(false, false);
+
+    private final boolean enabled, recording;
+    private final com.sun.management.ThreadMXBean threadMXBean;
+    private final Stats.Stage[] stages;
+    private final long startNanos;
+
+    /**
+     * Constructs statistics, which start measuring the wall clock time of the
+     * job if enabled.
+     *
+     * @param enabled if {@code true} measure stages
+     * @param recording if {@code true} record stages to the Java Flight
+     * Recorder, which must be {@linkplain #isFlightRecorderAvailable()
+     * available}
+     */
+    Stats(final boolean enabled, final boolean recording) {
+        this.recording = recording;
+        this.startNanos = (this.enabled = enabled) ? System.nanoTime() : 0L;
+        if (!enabled) {
+            this.threadMXBean = null;
+            this.stages = null;
+            return;
+        }
+        this.threadMXBean = Stats.getThreadMXBean();
+        this.stages = new Stats.Stage[Stats.STAGE_NAMES.length];
+        for (int i = this.stages.length - 1; i >= 0; i--)
+            this.stages[i] = new Stats.Stage();
+    }
+
+    private static final com.sun.management.ThreadMXBean getThreadMXBean() {
+        final java.lang.management.ThreadMXBean threadMXBean;
+        if (!((threadMXBean = ManagementFactory.getThreadMXBean()) instanceof
+                com.sun.management.ThreadMXBean) ||
+            !((com.sun.management.ThreadMXBean)threadMXBean).isThreadAllocatedMemorySupported())
+            return null;
+        try {
+            ((com.sun.management.ThreadMXBean)threadMXBean).setThreadAllocatedMemoryEnabled(true);
+        } catch (SecurityException e) {
+            return null;
+        }
+        return (com.sun.management.ThreadMXBean)threadMXBean;
+    }
+
+    /**
+     * Looks up the recorder of stage events. It is available only if it has
+     * been compiled by Java 11 or later, and if this Java VM has the Java
+     * Flight Recorder API.
+     *
+     * @return the recorder, or {@code null} if it is not available
+     */
+    private static final Stats.Recorder loadRecorder() {
+        try {
+            // Fails if the event's superclass is missing
+            Class.forName("com.mapillary.StageEvent");
+            return (Stats.Recorder)Class.forName(
+                "com.mapillary.StageEvent$Recorder"
+            ).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    /**
+     * Tests whether the Java Flight Recorder is available on this Java VM.
+     * It is available on Java 11 or later, if {@code mkseq} has been built
+     * by Java 11 or later.
+     *
+     * @return {@code true} if events can be recorded
+     */
+    static final boolean isFlightRecorderAvailable() {
+        return Stats.Recording.RECORDER != null;
+    }
+
+    /**
+     * Tests whether these statistics measure or record anything.
+     *
+     * @return {@code true} if enabled or recording
+     */
+    final boolean isEnabled() {
+        return this.enabled || this.recording;
+    }
+
+    /**
+     * Begins a run of a stage.
+     *
+     * @param stage the stage
+     * @return the run to end when the stage's work is done
+     */
+    final Stats.Run begin(final int stage) {
+        return this.enabled || this.recording ?
+            new Stats.Run(this, stage) :
+            Stats.Run.NONE;
+    }
+
+    /**
+     * Gets the bytes allocated by the current thread so far.
+     *
+     * @return the bytes allocated by the current thread, or {@code -1} if
+     * disabled or not supported
+     */
+    private final long allocated() {
+        return this.threadMXBean != null ?
+            this.threadMXBean.getThreadAllocatedBytes(
+                Thread.currentThread().getId()
+            ) :
+            -1L;
+    }
+
+    /**
+     * Gets the total wall clock time of all runs of a stage so far.
+     *
+     * @param stage the stage
+     * @return the total time in nanoseconds, or {@code 0} if disabled
+     */
+    final long getNanos(final int stage) {
+        return this.enabled ? this.stages[stage].getNanos() : 0L;
+    }
+
+    /**
+     * Gets the count of runs of each stage which has run so far.
+     *
+     * @return the count of runs by stage name in order of stages, empty if
+     * disabled
+     */
+    final Map<String, Long> getRuns() {
+        final Map<String, Long> runs = new LinkedHashMap<String, Long>();
+        if (this.enabled)
+            for (int i = 0; i < this.stages.length; i++) {
+                final Stats.Stage stage = this.stages[i];
+                synchronized (stage) {
+                    if (stage.count > 0)
+                        runs.put(Stats.STAGE_NAMES[i], (long)stage.count);
+                }
+            }
+        return runs;
+    }
+
+    /**
+     * Gets the rate of photos of each stage which has run so far, per thread.
+     *
+     * @return the photos per second by stage name in order of stages, empty
+     * if disabled
+     */
+    final Map<String, Double> getPhotosPerSecond() {
+        final Map<String, Double> rates = new LinkedHashMap<String, Double>();
+        if (this.enabled)
+            for (int i = 0; i < this.stages.length; i++) {
+                final Stats.Stage stage = this.stages[i];
+                synchronized (stage) {
+                    if (stage.count > 0)
+                        rates.put(
+                            Stats.STAGE_NAMES[i],
+                            stage.nanos > 0L ? stage.photos / (stage.nanos / 1e9) : 0.0
+                        );
+                }
+            }
+        return rates;
+    }
+
+    /**
+     * Gets the mean time of a run of each stage which has run so far.
+     *
+     * @return the mean time of a run in milliseconds by stage name in order
+     * of stages, empty if disabled
+     */
+    final Map<String, Double> getMeanMillis() {
+        final Map<String, Double> means = new LinkedHashMap<String, Double>();
+        if (this.enabled)
+            for (int i = 0; i < this.stages.length; i++) {
+                final Stats.Stage stage = this.stages[i];
+                synchronized (stage) {
+                    if (stage.count > 0)
+                        means.put(
+                            Stats.STAGE_NAMES[i],
+                            stage.nanos / 1e6 / stage.count
+                        );
+                }
+            }
+        return means;
+    }
+
+    /**
+     * Prints a summary of the job and a table of all stages which have run.
+     * Rates of a stage are per thread, that is photos or bytes divided by the
+     * total time of its runs. Latency percentiles are over single runs.
+     *
+     * @param out the stream to print to
+     */
+    final void print(final PrintStream out) {
+        if (!this.enabled)
+            return;
+        final double seconds = (System.nanoTime() - this.startNanos) / 1e9;
+        final int photos = Math.max(
+            this.stages[Stats.SUBMIT].photos,
+            this.stages[Stats.SEQUENCE].photos
+        );
+        out.println(
+            Sequencer.m(
+                "Sequencer.stats",
+                photos,
+                seconds,
+                photos / seconds,
+                this.stages[Stats.READ].bytes / 1e6,
+                this.stages[Stats.WRITE].bytes / 1e6,
+                (this.stages[Stats.READ].bytes + this.stages[Stats.WRITE].bytes) / 1e6 / seconds
+            )
+        );
+        out.println(Sequencer.m("Sequencer.stats.header"));
+        for (int i = 0; i < this.stages.length; i++) {
+            final Stats.Stage stage = this.stages[i];
+            synchronized (stage) {
+                if (stage.count <= 0)
+                    continue;
+                final long[] latencies = Arrays.copyOf(
+                    stage.latencies,
+                    Math.min(stage.count, Stats.Stage.MAX_LATENCIES)
+                );
+                Arrays.sort(latencies);
+                final double stageSeconds = stage.nanos / 1e9;
+                out.println(String.format(
+                    (Locale)null,
+                    "%-9s %8d %10.1f %9.1f %8s %8.2f %8.2f %8.2f %8.2f %9s",
+                    Stats.STAGE_NAMES[i],
+                    stage.count,
+                    stage.nanos / 1e6,
+                    stageSeconds > 0.0 ? stage.photos / stageSeconds : 0.0,
+                    stage.bytes > 0L && stageSeconds > 0.0 ?
+                        String.format((Locale)null, "%.1f", stage.bytes / 1e6 / stageSeconds) :
+                        "-",
+                    Stats.percentile(latencies, 0.50) / 1e6,
+                    Stats.percentile(latencies, 0.90) / 1e6,
+                    Stats.percentile(latencies, 0.99) / 1e6,
+                    stage.maxNanos / 1e6,
+                    stage.allocated >= 0L ?
+                        String.format((Locale)null, "%.1f", stage.allocated / 1e6) :
+                        "-"
+                ));
+            }
+        }
+    }
+
+    /**
+     * Gets a percentile by the nearest rank method.
+     *
+     * @param sorted the sorted values, at least one
+     * @param p the percentile between 0 and 1
+     * @return the percentile
+     */
+    private static final long percentile(final long[] sorted, final double p) {
+        return sorted[Math.max(0, (int)Math.ceil(p * sorted.length) - 1)];
+    }
+
+    /**
+     * A run of a stage, begun by {@link Stats#begin(int)}.
+     */
+    static final class Run {
+        /**
+         * A run which measures and records nothing.
+         */
+        private static final Stats.Run NONE = new Stats.Run();
+
+        private final Stats stats;
+        private final int stage;
+        private final long startNanos, startAllocated;
+        private final Stats.Event event;
+        private long excludedNanos;
+
+        private Run() {
+            this.stats = null;
+            this.stage = 0;
+            this.startNanos = this.startAllocated = 0L;
+            this.event = null;
+        }
+
+        private Run(final Stats stats, final int stage) {
+            this.stats = stats;
+            this.stage = stage;
+            this.event = stats.recording ? Stats.Recording.RECORDER.begin() : null;
+            this.startAllocated = stats.allocated();
+            this.startNanos = System.nanoTime();
+        }
+
+        /**
+         * Excludes time spent in nested runs of other stages from the time of
+         * this run. Excluded time is still part of the recorded event.
+         *
+         * @param nanos the time to exclude in nanoseconds
+         */
+        final void exclude(final long nanos) {
+            this.excludedNanos += nanos;
+        }
+
+        /**
+         * Ends this run.
+         *
+         * @param photos the count of photos of this run
+         * @param bytes the count of bytes read or written by this run
+         */
+        final void end(final int photos, final long bytes) {
+            this.end(null, photos, bytes);
+        }
+
+        /**
+         * Ends this run.
+         *
+         * @param file the photo of this run, or {@code null} if this run is
+         * for more than one photo
+         * @param photos the count of photos of this run
+         * @param bytes the count of bytes read or written by this run
+         */
+        final void end(final File file, final int photos, final long bytes) {
+            final Stats stats;
+            if ((stats = this.stats) == null)
+                return;
+            if (stats.enabled) {
+                final long nanos = System.nanoTime() - this.startNanos,
+                           allocated;
+                stats.stages[this.stage].add(
+                    nanos - this.excludedNanos,
+                    photos,
+                    bytes,
+                    this.startAllocated >= 0L &&
+                    (allocated = stats.allocated()) >= this.startAllocated ?
+                        allocated - this.startAllocated :
+                        -1L
+                );
+            }
+            if (this.event != null)
+                this.event.finish(
+                    Stats.STAGE_NAMES[this.stage],
+                    file,
+                    photos,
+                    bytes
+                );
+        }
+    }
+
+    /**
+     * Holds the recorder of stage events, which is looked up only when
+     * recording is requested, so that jobs without the {@code --jfr} option
+     * do not load any flight recorder class.
+     */
+    private static final class Recording {
+        /**
+         * The recorder of stage events, or {@code null} if the Java Flight
+         * Recorder is not available on this Java VM.
+         */
+        private static final Stats.Recorder RECORDER = Stats.loadRecorder();
+    }
+
+    /**
+     * A begun event of a run of a stage, recorded to the Java Flight
+     * Recorder.
+     */
+    static interface Event {
+        /**
+         * Ends and commits this event, unless it is not recorded or below the
+         * recording's duration threshold.
+         *
+         * @param stage the name of the stage
+         * @param file the photo, or {@code null}
+         * @param photos the count of photos
+         * @param bytes the bytes read or written
+         */
+        void finish(String stage, File file, int photos, long bytes);
+    }
+
+    /**
+     * Begins events of runs of stages.
+     */
+    @FunctionalInterface
+    static interface Recorder {
+        /**
+         * Creates and begins an event.
+         *
+         * @return the begun event
+         */
+        Stats.Event begin();
+    }
+
+    /**
+     * The accumulated runs of a stage. Stages of a pipeline run on several
+     * threads, thus runs are added under the stage's lock.
+     */
+    private static final class Stage {
+        /**
+         * The most run times kept for latency percentiles.
+         */
+        private static final int MAX_LATENCIES = 1 << 16;
+
+        private int count, photos;
+        private long nanos, maxNanos, bytes, allocated;
+        private long[] latencies = new long[64];
+
+        /**
+         * Adds a run. Once {@link #MAX_LATENCIES} run times are kept, each
+         * further run time replaces a kept one at random, so that the kept
+         * run times remain a uniform sample of all runs of a long job.
+         */
+        private final synchronized void add(
+            final long nanos,
+            final int photos,
+            final long bytes,
+            final long allocated) {
+            final int index;
+            if ((index = this.count++) < Stats.Stage.MAX_LATENCIES) {
+                if (index >= this.latencies.length)
+                    this.latencies = Arrays.copyOf(
+                        this.latencies,
+                        this.latencies.length << 1
+                    );
+                this.latencies[index] = nanos;
+            } else {
+                final int sample;
+                if ((sample = ThreadLocalRandom.current().nextInt(this.count)) < Stats.Stage.MAX_LATENCIES)
+                    this.latencies[sample] = nanos;
+            }
+            if (nanos > this.maxNanos)
+                this.maxNanos = nanos;
+            this.photos += photos;
+            this.nanos += nanos;
+            this.bytes += bytes;
+            // Allocations are unknown as soon as any run's are
+            if (this.allocated >= 0L)
+                this.allocated = allocated >= 0L ?
+                    this.allocated + allocated :
+                    -1L;
+        }
+
+        private final synchronized long getNanos() {
+            return this.nanos;
+        }
+    }
+}
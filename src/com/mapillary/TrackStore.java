@@ -0,0 +1,523 @@
+/*
+ * Copyright 2016 Mapillary AB, Sweden
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mapillary;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.IntStream;
+import org.apache.commons.imaging.ImageReadException;
+import org.apache.commons.imaging.Imaging;
+import org.apache.commons.imaging.common.ImageMetadata;
+import org.apache.commons.imaging.common.RationalNumber;
+import org.apache.commons.imaging.formats.jpeg.JpegImageMetadata;
+import org.apache.commons.imaging.formats.tiff.TiffImageMetadata;
+import org.apache.commons.imaging.formats.tiff.constants.GpsTagConstants;
+
+/**
+ * A memory mapped store of the numeric state of each photo of a sequence,
+ * that is its date time stamp, GPS location, altitude, direction, and speed.
+ * The state is kept in columns of primitive values in a file outside of the
+ * Java heap, rather than in objects of each photo, so that the heap does not
+ * grow with the length of a sequence, and the operating system pages in only
+ * the columns read.<br>
+ * Photos are stored in sequence order. Each photo is recorded by the index
+ * of its file in the input files, a hash of the file's absolute path, and the
+ * file's length and modification time. A store reopened with the same input
+ * files sorts them without reading any photo, and only photos which have
+ * changed since are read again. Any other store is rebuilt. Values which a
+ * photo does not have are stored as {@link Double#NaN}.
+ *
+ * @author <a href="mailto:Jacob%20Wisor%20&lt;GITNE@noreply.users.github.com&gt;?subject=[com.mapillary.TrackStore]%20mkseq">Jacob Wisor</a>
+ *
+ * @see Sequencer.Options#TRACK_STORE_OPTION
+ */
+final class TrackStore implements Closeable {
+    /**
+     * The magic number of store files, {@code "MKSQTRK1"}.
+     */
+    private static final long MAGIC = 0x4D4B535154524B31L;
+
+    /**
+     * The size of the file header in bytes, that is the magic number, the
+     * count of photos, and reserved space.
+     */
+    private static final int HEADER_SIZE = 64;
+
+    /**
+     * The size of a photo's values in all columns in bytes.
+     */
+    private static final int RECORD_SIZE = 9 * Long.BYTES + Integer.BYTES;
+
+    private final FileChannel channel;
+    private final TrackStore.Columns columns;
+    private final int count;
+    private final int reused;
+
+    /**
+     * Opens or builds the store of a sequence. Photos not recorded by the
+     * store file, or changed since, are read in parallel on all processors.
+     *
+     * @param file the store file
+     * @param files the photo files of the sequence in any order
+     * @param fallback if {@code true}, fall back to {@code DateTimeOriginal},
+     * {@code DateTimeDigitized}, {@code DateTime}, and finally a file's last
+     * modification time stamp for photos without a GPS date time stamp
+     * @param quarantine the quarantine to put photos in whose meta data
+     * cannot be read
+     * @throws IOException if the store file cannot be read or written
+     *
+     * @see ExifDateTimeComparator#sort(File[], boolean)
+     */
+    TrackStore(
+        final File file,
+        final File[] files,
+        final boolean fallback,
+        final Quarantine quarantine) throws IOException {
+        this.count = files.length;
+        this.channel = FileChannel.open(
+            file.toPath(),
+            StandardOpenOption.CREATE,
+            StandardOpenOption.READ,
+            StandardOpenOption.WRITE
+        );
+        try {
+            final long[] pathHashes = new long[files.length];
+            for (int i = files.length - 1; i >= 0; i--)
+                pathHashes[i] = TrackStore.hash(files[i].getAbsolutePath());
+            // Map the recorded photos of a previous run to the input files
+            final int[] previous = new int[files.length];
+            Arrays.fill(previous, -1);
+            final TrackStore.Columns recorded;
+            int unchanged = 0;
+            if ((recorded = this.open()) != null)
+                for (int r = this.count - 1; r >= 0; r--) {
+                    final int id;
+                    if ((id = recorded.fileId.get(r)) >= 0 &&
+                        id < files.length &&
+                        previous[id] < 0 &&
+                        recorded.pathHash.get(r) == pathHashes[id] &&
+                        recorded.length.get(r) == files[id].length() &&
+                        recorded.lastModified.get(r) == files[id].lastModified()) {
+                        previous[id] = r;
+                        unchanged++;
+                    }
+                }
+            this.reused = unchanged;
+            if (unchanged == files.length) {
+                this.columns = recorded;
+                return;
+            }
+            this.columns = this.build(
+                file,
+                files,
+                pathHashes,
+                recorded,
+                previous,
+                fallback,
+                quarantine
+            );
+        } catch (IOException | RuntimeException e) {
+            this.channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Maps the columns of the store file, if it is complete and holds as many
+     * photos as the sequence.
+     *
+     * @return the columns of the store file, or {@code null} if the store
+     * file cannot be reused
+     * @throws IOException if the store file cannot be read
+     */
+    private final TrackStore.Columns open() throws IOException {
+        if (this.channel.size() < TrackStore.HEADER_SIZE +
+                (long)TrackStore.RECORD_SIZE * this.count)
+            return null;
+        final ByteBuffer header = ByteBuffer.allocate(TrackStore.HEADER_SIZE);
+        while (header.hasRemaining() &&
+               this.channel.read(header, header.position()) >= 0);
+        return header.getLong(0) == TrackStore.MAGIC &&
+            header.getInt(Long.BYTES) == this.count ?
+                new TrackStore.Columns(this.channel, this.count) :
+                null;
+    }
+
+    /**
+     * Rebuilds the store file. The values of all photos are first gathered in
+     * the order of the input files in a scratch file, from the previous
+     * columns for unchanged photos or else by reading the photo, and then
+     * written to the store file in sequence order. The magic number is
+     * written last, so that an incomplete store file is never reused.
+     *
+     * @param file the store file
+     * @param files the photo files of the sequence in any order
+     * @param pathHashes the hashes of the absolute paths of {@code files}
+     * @param recorded the columns of the previous store file, or {@code null}
+     * @param previous the index of each photo in {@code recorded}, or
+     * {@code -1} if it has changed or is not recorded
+     * @param fallback if {@code true}, fall back to other time stamps for
+     * photos without a GPS date time stamp
+     * @param quarantine the quarantine to put photos in whose meta data
+     * cannot be read
+     * @return the columns of the rebuilt store file
+     * @throws IOException if the store file cannot be written
+     */
+    private final TrackStore.Columns build(
+        final File file,
+        final File[] files,
+        final long[] pathHashes,
+        final TrackStore.Columns recorded,
+        final int[] previous,
+        final boolean fallback,
+        final Quarantine quarantine) throws IOException {
+        final File scratch = File.createTempFile(
+            "mkseq-track",
+            ".tmp",
+            file.getAbsoluteFile().getParentFile()
+        );
+        scratch.deleteOnExit();
+        try (final FileChannel scratchChannel = FileChannel.open(
+                scratch.toPath(),
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            final TrackStore.Columns unsorted =
+                new TrackStore.Columns(scratchChannel, files.length);
+            IntStream.range(0, files.length).parallel().forEach(i -> {
+                if (previous[i] >= 0)
+                    recorded.copy(previous[i], unsorted, i);
+                else unsorted.read(i, files[i], pathHashes[i], fallback, quarantine);
+            });
+            // Invalidate the previous store before overwriting any of it
+            this.writeHeader(0L);
+            final TrackStore.Columns sorted =
+                new TrackStore.Columns(this.channel, files.length);
+            final int[] order = TrackStore.sort(unsorted.millis, files.length);
+            for (int r = files.length - 1; r >= 0; r--)
+                unsorted.copy(order[r], sorted, r);
+            sorted.force();
+            this.writeHeader(TrackStore.MAGIC);
+            this.channel.force(false);
+            return sorted;
+        } finally {
+            scratch.delete();
+        }
+    }
+
+    private final void writeHeader(final long magic) throws IOException {
+        final ByteBuffer header = ByteBuffer.allocate(TrackStore.HEADER_SIZE)
+            .putLong(0, magic)
+            .putInt(Long.BYTES, this.count);
+        while (header.hasRemaining())
+            this.channel.write(header, header.position());
+    }
+
+    /**
+     * Gets the indexes of photos in order of their date time stamps. The sort
+     * is stable, so that photos taken at the same time remain in the order of
+     * the input files, as by {@link ExifDateTimeComparator#sort(File[], boolean)}.
+     *
+     * @param millis the date time stamps of photos
+     * @param count the count of photos
+     * @return the indexes of photos in order
+     */
+    private static final int[] sort(final LongBuffer millis, final int count) {
+        int[] order = new int[count], merged = new int[count];
+        for (int i = count - 1; i >= 0; i--)
+            order[i] = i;
+        // Bottom up merge sort of indexes by the mapped column
+        for (int width = 1; width < count; width <<= 1) {
+            for (int lo = 0; lo < count; lo += width << 1) {
+                final int mid = Math.min(lo + width, count),
+                          hi = Math.min(lo + (width << 1), count);
+                for (int i = lo, a = lo, b = mid; i < hi; i++)
+                    merged[i] = b >= hi ||
+                        a < mid && millis.get(order[a]) <= millis.get(order[b]) ?
+                            order[a++] :
+                            order[b++];
+            }
+            final int[] swap = order;
+            order = merged;
+            merged = swap;
+        }
+        return order;
+    }
+
+    /**
+     * Hashes a path by the 64 bit FNV-1a hash of its characters.
+     *
+     * @param path the path to hash
+     * @return the hash of {@code path}
+     */
+    private static final long hash(final String path) {
+        long hash = 0xCBF29CE484222325L;
+        for (int i = 0; i < path.length(); i++)
+            hash = (hash ^ path.charAt(i)) * 0x100000001B3L;
+        return hash;
+    }
+
+    /**
+     * Sorts the input files into the sequence order of this store.
+     *
+     * @param files the photo files this store has been opened with, sorted in
+     * place
+     */
+    final void sort(final File[] files) {
+        final File[] unsorted = files.clone();
+        for (int r = this.count - 1; r >= 0; r--)
+            files[r] = unsorted[this.columns.fileId.get(r)];
+    }
+
+    /**
+     * Gets the count of photos whose values have been reused from a previous
+     * run, rather than read from the photo.
+     *
+     * @return the count of unchanged photos
+     */
+    final int getReusedCount() {
+        return this.reused;
+    }
+
+    /**
+     * Gets the count of photos of this store.
+     *
+     * @return the count of photos
+     */
+    final int size() {
+        return this.count;
+    }
+
+    final long getMillis(final int index) {
+        return this.columns.millis.get(index);
+    }
+
+    final double getLatitude(final int index) {
+        return this.columns.latitude.get(index);
+    }
+
+    final double getLongitude(final int index) {
+        return this.columns.longitude.get(index);
+    }
+
+    final double getAltitude(final int index) {
+        return this.columns.altitude.get(index);
+    }
+
+    final double getDirection(final int index) {
+        return this.columns.direction.get(index);
+    }
+
+    final double getSpeed(final int index) {
+        return this.columns.speed.get(index);
+    }
+
+    /**
+     * Closes the store file. The mapped columns are released by the garbage
+     * collector, thus no values must be read after closing.
+     *
+     * @throws IOException if the store file cannot be closed
+     */
+    @Override
+    public final void close() throws IOException {
+        this.channel.close();
+    }
+
+    /**
+     * The mapped columns of a store file. Values of different photos may be
+     * written concurrently, because each photo is written by absolute
+     * index.
+     */
+    private static final class Columns {
+        private final List<MappedByteBuffer> buffers =
+            new ArrayList<MappedByteBuffer>(10);
+        private final LongBuffer millis, length, lastModified, pathHash;
+        private final DoubleBuffer latitude, longitude, altitude, direction, speed;
+        private final IntBuffer fileId;
+        private long offset = TrackStore.HEADER_SIZE;
+
+        /**
+         * Maps the columns of a file after its header, growing the file as
+         * required.
+         *
+         * @param channel the channel of the file
+         * @param count the count of photos
+         * @throws IOException if the file cannot be mapped
+         */
+        private Columns(
+            final FileChannel channel,
+            final int count) throws IOException {
+            this.millis = this.map(channel, count, Long.BYTES).asLongBuffer();
+            this.latitude = this.map(channel, count, Double.BYTES).asDoubleBuffer();
+            this.longitude = this.map(channel, count, Double.BYTES).asDoubleBuffer();
+            this.altitude = this.map(channel, count, Double.BYTES).asDoubleBuffer();
+            this.direction = this.map(channel, count, Double.BYTES).asDoubleBuffer();
+            this.speed = this.map(channel, count, Double.BYTES).asDoubleBuffer();
+            this.length = this.map(channel, count, Long.BYTES).asLongBuffer();
+            this.lastModified = this.map(channel, count, Long.BYTES).asLongBuffer();
+            this.pathHash = this.map(channel, count, Long.BYTES).asLongBuffer();
+            this.fileId = this.map(channel, count, Integer.BYTES).asIntBuffer();
+        }
+
+        private final MappedByteBuffer map(
+            final FileChannel channel,
+            final int count,
+            final int bytes) throws IOException {
+            final long size = (long)count * bytes;
+            if (size > Integer.MAX_VALUE)
+                throw new IOException(String.format(
+                    (Locale)null,
+                    "Cannot map %,d photos",
+                    count
+                ));
+            final MappedByteBuffer buffer = channel.map(
+                FileChannel.MapMode.READ_WRITE,
+                this.offset,
+                size
+            );
+            this.offset += size;
+            this.buffers.add(buffer);
+            return buffer;
+        }
+
+        /**
+         * Reads the values of a photo from its EXIF meta data. A photo whose
+         * meta data cannot be read is quarantined, and stored with the latest
+         * time stamp possible, as it is sorted by
+         * {@link ExifDateTimeComparator}, and without any other value. A
+         * photo without any time stamp is stored with the latest one too.
+         *
+         * @param index the index of the photo in these columns
+         * @param file the photo file
+         * @param pathHash the hash of the absolute path of {@code file}
+         * @param fallback if {@code true}, fall back to other time stamps for
+         * photos without a GPS date time stamp
+         * @param quarantine the quarantine to put the photo in if its meta
+         * data cannot be read
+         */
+        private final void read(
+            final int index,
+            final File file,
+            final long pathHash,
+            final boolean fallback,
+            final Quarantine quarantine) {
+            long millis = Long.MAX_VALUE;
+            double latitude = Double.NaN, longitude = Double.NaN,
+                   altitude = Double.NaN, direction = Double.NaN,
+                   speed = Double.NaN;
+            try {
+                final ImageMetadata imageMetadata;
+                if (!((imageMetadata = Imaging.getMetadata(file)) instanceof JpegImageMetadata) ||
+                    ((JpegImageMetadata)imageMetadata).getExif() == null)
+                    throw new ImageReadException(
+                        Sequencer.m("Sequencer.error.no.exif", file.getPath())
+                    );
+                final TiffImageMetadata tiffImageMetadata =
+                    ((JpegImageMetadata)imageMetadata).getExif();
+                final Date date;
+                if ((date = ExifDateTimeComparator.getImageFileDate(
+                        file,
+                        tiffImageMetadata,
+                        fallback)) != null)
+                    millis = date.getTime();
+                final TiffImageMetadata.GPSInfo gpsInfo;
+                if ((gpsInfo = tiffImageMetadata.getGPS()) != null) {
+                    latitude = gpsInfo.getLatitudeAsDegreesNorth();
+                    longitude = gpsInfo.getLongitudeAsDegreesEast();
+                }
+                final RationalNumber rationalNumber;
+                final byte[] ref;
+                if ((rationalNumber = tiffImageMetadata.getFieldValue(GpsTagConstants.GPS_TAG_GPS_ALTITUDE)) != null)
+                    altitude = (ref = tiffImageMetadata.getFieldValue(GpsTagConstants.GPS_TAG_GPS_ALTITUDE_REF)) != null &&
+                        ref.length > 0 &&
+                        ref[0] == GpsTagConstants.GPS_TAG_GPS_ALTITUDE_REF_VALUE_BELOW_SEA_LEVEL ?
+                            -rationalNumber.doubleValue() :
+                            rationalNumber.doubleValue();
+                direction = TrackStore.Columns.toDouble(
+                    tiffImageMetadata.getFieldValue(GpsTagConstants.GPS_TAG_GPS_IMG_DIRECTION)
+                );
+                speed = TrackStore.Columns.toDouble(
+                    tiffImageMetadata.getFieldValue(GpsTagConstants.GPS_TAG_GPS_SPEED)
+                );
+            } catch (IOException | ImageReadException | RuntimeException e) {
+                // Runs on the common pool, thus must not abort the stream
+                millis = Long.MAX_VALUE;
+                latitude = longitude = altitude = direction = speed = Double.NaN;
+                quarantine.add(file, e);
+            }
+            this.millis.put(index, millis);
+            this.latitude.put(index, latitude);
+            this.longitude.put(index, longitude);
+            this.altitude.put(index, altitude);
+            this.direction.put(index, direction);
+            this.speed.put(index, speed);
+            this.length.put(index, file.length());
+            this.lastModified.put(index, file.lastModified());
+            this.pathHash.put(index, pathHash);
+            this.fileId.put(index, index);
+        }
+
+        private static final double toDouble(
+            final RationalNumber rationalNumber) {
+            return rationalNumber != null ?
+                rationalNumber.doubleValue() :
+                Double.NaN;
+        }
+
+        /**
+         * Copies the values of a photo.
+         *
+         * @param from the index of the photo in these columns
+         * @param to the columns to copy to
+         * @param index the index of the photo in {@code to}
+         */
+        private final void copy(
+            final int from,
+            final TrackStore.Columns to,
+            final int index) {
+            to.millis.put(index, this.millis.get(from));
+            to.latitude.put(index, this.latitude.get(from));
+            to.longitude.put(index, this.longitude.get(from));
+            to.altitude.put(index, this.altitude.get(from));
+            to.direction.put(index, this.direction.get(from));
+            to.speed.put(index, this.speed.get(from));
+            to.length.put(index, this.length.get(from));
+            to.lastModified.put(index, this.lastModified.get(from));
+            to.pathHash.put(index, this.pathHash.get(from));
+            to.fileId.put(index, this.fileId.get(from));
+        }
+
+        /**
+         * Writes all values to the file.
+         */
+        private final void force() {
+            for (final MappedByteBuffer buffer : this.buffers)
+                buffer.force();
+        }
+    }
+}
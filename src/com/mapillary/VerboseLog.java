@@ -0,0 +1,175 @@
+/*
+ * Copyright 2016 Mapillary AB, Sweden
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mapillary;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.InterruptedIOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * The verbose output of a job, printed by a background thread. Entries are
+ * queued unformatted and formatted only by the background thread, which
+ * prints all queued entries at once into a buffer and flushes the buffer
+ * whenever the queue has run empty, so that the processing thread neither
+ * formats nor waits for the console. The queue is bounded, thus a job whose
+ * console cannot keep up is slowed down rather than holding the meta data of
+ * ever more photos.<br>
+ * Entries are printed in the order they have been logged. Anything else
+ * printed to the same stream should be printed only after the log has been
+ * {@linkplain #flush() flushed}, so that it does not overtake entries.
+ *
+ * @author <a href="mailto:Jacob%20Wisor%20&lt;GITNE@noreply.users.github.com&gt;?subject=[com.mapillary.VerboseLog]%20mkseq">Jacob Wisor</a>
+ *
+ * @see Sequencer.Options#VERBOSE_OPTION
+ */
+final class VerboseLog implements Closeable {
+    /**
+     * The capacity of the queue in entries.
+     */
+    private static final int CAPACITY = 1024;
+
+    /**
+     * The size of the output buffer in bytes.
+     */
+    private static final int BUFFER_SIZE = 64 << 10;
+
+    private static final VerboseLog.Entry END = (out, err) -> {};
+
+    private final PrintStream out, err;
+    private final BlockingQueue<VerboseLog.Entry> entries =
+        new ArrayBlockingQueue<VerboseLog.Entry>(VerboseLog.CAPACITY);
+    private final Thread thread;
+
+    /**
+     * Constructs a log and starts printing it.
+     *
+     * @param out the stream to print entries to
+     * @param err the stream to print any errors of entries to
+     */
+    VerboseLog(final PrintStream out, final PrintStream err) {
+        this.out = out;
+        this.err = err;
+        (this.thread = new Thread(this::run, "mkseq-verbose")).setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Queues an entry, blocking while the queue is full.
+     *
+     * @param entry the entry to print
+     * @throws InterruptedIOException if interrupted while waiting for room
+     * in the queue
+     */
+    final void log(final VerboseLog.Entry entry) throws InterruptedIOException {
+        try {
+            this.entries.put(entry);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(e.getMessage());
+        }
+    }
+
+    /**
+     * Waits until all entries queued so far have been printed.
+     *
+     * @throws InterruptedIOException if interrupted while waiting
+     */
+    final void flush() throws InterruptedIOException {
+        final CountDownLatch printed = new CountDownLatch(1);
+        this.log((out, err) -> {
+            try {
+                out.flush();
+            } finally {
+                printed.countDown();
+            }
+        });
+        try {
+            printed.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(e.getMessage());
+        }
+    }
+
+    /**
+     * Prints all queued entries and stops printing.
+     *
+     * @throws InterruptedIOException if interrupted while waiting for the
+     * entries to be printed
+     */
+    @Override
+    public final void close() throws InterruptedIOException {
+        this.log(VerboseLog.END);
+        try {
+            this.thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(e.getMessage());
+        }
+    }
+
+    private final void run() {
+        final PrintStream buffer = new PrintStream(
+            new BufferedOutputStream(this.out, VerboseLog.BUFFER_SIZE),
+            false
+        );
+        final List<VerboseLog.Entry> batch =
+            new ArrayList<VerboseLog.Entry>(VerboseLog.CAPACITY);
+        try {
+            for (;;) {
+                batch.add(this.entries.take());
+                this.entries.drainTo(batch);
+                for (final VerboseLog.Entry entry : batch) {
+                    if (entry == VerboseLog.END) {
+                        buffer.flush();
+                        return;
+                    }
+                    // Keep printing, since nothing else empties the queue
+                    try {
+                        entry.print(buffer, this.err);
+                    } catch (Throwable t) {
+                        this.err.println(t.getLocalizedMessage());
+                    }
+                }
+                batch.clear();
+                buffer.flush();
+            }
+        } catch (InterruptedException e) {
+            buffer.flush();
+        }
+    }
+
+    /**
+     * An entry of a log, formatted and printed by the log's background
+     * thread.
+     */
+    @FunctionalInterface
+    static interface Entry {
+        /**
+         * Formats and prints this entry.
+         *
+         * @param out the buffered stream to print this entry to
+         * @param err the stream to print any error to
+         */
+        void print(PrintStream out, PrintStream err);
+    }
+}